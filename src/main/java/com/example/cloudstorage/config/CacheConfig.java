@@ -0,0 +1,28 @@
+package com.example.cloudstorage.config;
+
+import com.example.cloudstorage.service.MetadataCache;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * Subscribes the metadata cache to invalidations published by other instances.
+ * Only needed when the cache is shared through Redis (storage.cache.redis-enabled).
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "storage.cache", name = {"enabled", "redis-enabled"},
+        havingValue = "true", matchIfMissing = true)
+public class CacheConfig {
+
+    @Bean
+    public RedisMessageListenerContainer metadataCacheListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       MetadataCache metadataCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(metadataCache, new ChannelTopic(MetadataCache.INVALIDATION_CHANNEL));
+        return container;
+    }
+}
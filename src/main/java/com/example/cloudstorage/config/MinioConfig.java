@@ -1,14 +1,27 @@
 package com.example.cloudstorage.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.minio.BucketExistsArgs;
 import io.minio.MakeBucketArgs;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 @Slf4j
 @Configuration
 @RequiredArgsConstructor
@@ -17,8 +30,59 @@ public class MinioConfig {
 
     private final MinioProperties minioProperties;
 
+    private final ExecutorService httpExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * HTTP client shared by the blocking and the asynchronous MinIO client.
+     * Both send every call through the OkHttp dispatcher, so its limits bound
+     * the concurrency towards MinIO; calls run on virtual threads.
+     * Pool and dispatcher state is exported as minio.http.* gauges.
+     */
     @Bean
-    public MinioClient minioClient() {
+    public OkHttpClient minioHttpClient(MeterRegistry meterRegistry) {
+        MinioProperties.Http http = minioProperties.getHttp();
+
+        Dispatcher dispatcher = new Dispatcher(httpExecutor);
+        dispatcher.setMaxRequests(http.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(http.getMaxRequestsPerHost());
+
+        ConnectionPool connectionPool = new ConnectionPool(
+                http.getMaxIdleConnections(), http.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .connectTimeout(http.getConnectTimeout())
+                .readTimeout(http.getReadTimeout())
+                .writeTimeout(http.getWriteTimeout())
+                .protocols(http.isHttp2() ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+                .build();
+
+        Gauge.builder("minio.http.connections", connectionPool, pool -> pool.connectionCount() - pool.idleConnectionCount())
+                .tag("state", "active")
+                .description("Connections to MinIO currently carrying a call")
+                .register(meterRegistry);
+        Gauge.builder("minio.http.connections", connectionPool, ConnectionPool::idleConnectionCount)
+                .tag("state", "idle")
+                .description("Idle keep-alive connections to MinIO")
+                .register(meterRegistry);
+        Gauge.builder("minio.http.calls", dispatcher, Dispatcher::runningCallsCount)
+                .tag("state", "running")
+                .description("MinIO calls in flight")
+                .register(meterRegistry);
+        Gauge.builder("minio.http.calls", dispatcher, Dispatcher::queuedCallsCount)
+                .tag("state", "queued")
+                .description("MinIO calls waiting for a dispatcher slot")
+                .register(meterRegistry);
+
+        log.info("MinIO HTTP client: pool={} idle/{} keep-alive, max requests={} ({} per host), http2={}",
+                http.getMaxIdleConnections(), http.getKeepAlive(), http.getMaxRequests(),
+                http.getMaxRequestsPerHost(), http.isHttp2());
+        return client;
+    }
+
+    @Bean
+    public MinioClient minioClient(OkHttpClient minioHttpClient) {
         try {
             log.info("Initializing MinIO client: url={}, bucket={}", 
                      minioProperties.getUrl(), 
@@ -27,6 +91,7 @@ public class MinioConfig {
             MinioClient client = MinioClient.builder()
                     .endpoint(minioProperties.getUrl())
                     .credentials(minioProperties.getAccessKey(), minioProperties.getSecretKey())
+                    .httpClient(minioHttpClient)
                     .build();
 
             log.info("Testing MinIO connection...");
@@ -48,6 +113,24 @@ public class MinioConfig {
         }
     }
 
+    /**
+     * Asynchronous client used for the low-level multipart upload API,
+     * which the blocking {@link MinioClient} does not expose.
+     */
+    @Bean
+    public MinioAsyncClient minioAsyncClient(OkHttpClient minioHttpClient) {
+        return MinioAsyncClient.builder()
+                .endpoint(minioProperties.getUrl())
+                .credentials(minioProperties.getAccessKey(), minioProperties.getSecretKey())
+                .httpClient(minioHttpClient)
+                .build();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        httpExecutor.shutdown();
+    }
+
     private void ensureBucketExists(MinioClient client) throws Exception {
         String bucketName = minioProperties.getBucketName();
         
@@ -1,6 +1,9 @@
 package com.example.cloudstorage.config;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Pattern;
 import lombok.Getter;
 import lombok.Setter;
@@ -8,6 +11,8 @@ import lombok.ToString;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
+
 @Getter
 @Setter
 @ToString(exclude = {"accessKey", "secretKey"})
@@ -34,4 +39,54 @@ public class MinioProperties {
         message = "Bucket name must be 3-63 characters, lowercase letters, numbers, and hyphens only"
     )
     private String bucketName;
+
+    @Valid
+    private final Http http = new Http();
+
+    /**
+     * Transport settings of the OkHttp client shared by the MinIO clients.
+     */
+    @Getter
+    @Setter
+    @ToString
+    public static class Http {
+
+        /**
+         * Idle keep-alive connections kept in the pool; should cover the usual number of concurrent MinIO calls.
+         */
+        @Min(value = 1, message = "MinIO max idle connections must be positive (minio.http.max-idle-connections)")
+        private int maxIdleConnections = 64;
+
+        /**
+         * How long an idle connection stays in the pool.
+         */
+        @NotNull(message = "MinIO keep-alive is required (minio.http.keep-alive)")
+        private Duration keepAlive = Duration.ofMinutes(5);
+
+        /**
+         * Calls in flight at once; further calls wait in the dispatcher queue.
+         */
+        @Min(value = 1, message = "MinIO max requests must be positive (minio.http.max-requests)")
+        private int maxRequests = 512;
+
+        /**
+         * Calls in flight at once to the MinIO host. OkHttp's default of 5 serializes a busy application.
+         */
+        @Min(value = 1, message = "MinIO max requests per host must be positive (minio.http.max-requests-per-host)")
+        private int maxRequestsPerHost = 256;
+
+        @NotNull(message = "MinIO connect timeout is required (minio.http.connect-timeout)")
+        private Duration connectTimeout = Duration.ofSeconds(10);
+
+        @NotNull(message = "MinIO read timeout is required (minio.http.read-timeout)")
+        private Duration readTimeout = Duration.ofMinutes(5);
+
+        @NotNull(message = "MinIO write timeout is required (minio.http.write-timeout)")
+        private Duration writeTimeout = Duration.ofMinutes(5);
+
+        /**
+         * Offer HTTP/2 via ALPN. Only takes effect for https endpoints; plain http always uses HTTP/1.1.
+         */
+        private boolean http2 = true;
+    }
 }
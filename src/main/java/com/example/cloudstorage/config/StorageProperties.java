@@ -0,0 +1,464 @@
+package com.example.cloudstorage.config;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Pattern;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@ToString
+@Validated
+@ConfigurationProperties(prefix = "storage")
+public class StorageProperties {
+
+    @Valid
+    private final Metadata metadata = new Metadata();
+
+    @Valid
+    private final Upload upload = new Upload();
+
+    @Valid
+    private final Presign presign = new Presign();
+
+    @Valid
+    private final Archive archive = new Archive();
+
+    @Valid
+    private final Move move = new Move();
+
+    @Valid
+    private final Jobs jobs = new Jobs();
+
+    @Valid
+    private final Diagnostics diagnostics = new Diagnostics();
+
+    @Valid
+    private final Cache cache = new Cache();
+
+    @Valid
+    private final Quota quota = new Quota();
+
+    @Valid
+    private final Dedup dedup = new Dedup();
+
+    @Valid
+    private final Layout layout = new Layout();
+
+    @Valid
+    private final Trash trash = new Trash();
+
+    @Valid
+    private final Integrity integrity = new Integrity();
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Metadata {
+
+        /**
+         * Whether the scheduled catalog-vs-bucket reconciliation runs.
+         */
+        private boolean reconcileEnabled = true;
+
+        /**
+         * Entries changed more recently than this are left alone by reconciliation,
+         * so in-flight uploads and deletes are not "repaired" mid-operation.
+         */
+        @NotNull(message = "Reconcile grace period is required (storage.metadata.reconcile-grace-period)")
+        private Duration reconcileGracePeriod = Duration.ofMinutes(5);
+
+        @Min(value = 1, message = "Reconcile batch size must be positive (storage.metadata.reconcile-batch-size)")
+        private int reconcileBatchSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Upload {
+
+        /**
+         * Part size suggested to clients when a chunked upload is initiated.
+         */
+        @NotNull(message = "Upload part size is required (storage.upload.part-size)")
+        private DataSize partSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Largest part accepted by the part upload endpoint.
+         * Parts are buffered by the MinIO client, so this bounds memory per in-flight part.
+         */
+        @NotNull(message = "Upload max part size is required (storage.upload.max-part-size)")
+        private DataSize maxPartSize = DataSize.ofMegabytes(128);
+
+        /**
+         * Sessions without activity for this long are aborted and removed.
+         */
+        @NotNull(message = "Upload session TTL is required (storage.upload.session-ttl)")
+        private Duration sessionTtl = Duration.ofHours(24);
+
+        /**
+         * Files of one multipart upload request that are sent to MinIO at the same time.
+         */
+        @Min(value = 1, message = "Upload parallelism must be positive (storage.upload.parallelism)")
+        private int parallelism = 8;
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Presign {
+
+        /**
+         * When enabled, file downloads answer with a redirect to a presigned MinIO URL
+         * instead of streaming the bytes through the application.
+         */
+        private boolean downloadRedirect = false;
+
+        /**
+         * Lifetime of presigned download and upload URLs.
+         */
+        @NotNull(message = "Presigned URL expiry is required (storage.presign.expiry)")
+        private Duration expiry = Duration.ofMinutes(5);
+
+        /**
+         * MinIO endpoint as reachable by clients. Signatures cover the host,
+         * so this must be set when clients see MinIO under a different address. Defaults to minio.url.
+         */
+        @Pattern(regexp = "^$|^https?://.*", message = "Presign endpoint must start with http:// or https://")
+        private String endpoint;
+
+        /**
+         * Region used for signing, so no region lookup is needed against the public endpoint.
+         */
+        @NotBlank(message = "Presign region is required (storage.presign.region)")
+        private String region = "us-east-1";
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Archive {
+
+        /**
+         * Number of objects fetched ahead of the entry currently written to a ZIP archive.
+         */
+        @Min(value = 1, message = "Archive read-ahead must be positive (storage.archive.read-ahead)")
+        private int readAhead = 16;
+
+        /**
+         * Memory shared by all archive downloads for prefetched object contents.
+         */
+        @NotNull(message = "Archive prefetch budget is required (storage.archive.prefetch-budget)")
+        private DataSize prefetchBudget = DataSize.ofMegabytes(64);
+
+        /**
+         * Objects up to this size are read into memory ahead of time; larger objects
+         * are only opened ahead of time and streamed when their entry is written.
+         */
+        @NotNull(message = "Archive max buffered entry size is required (storage.archive.max-buffered-entry-size)")
+        private DataSize maxBufferedEntrySize = DataSize.ofMegabytes(4);
+
+        /**
+         * DEFLATE level (1-9) for compressible entries.
+         */
+        @Min(value = 1, message = "Archive deflate level must be between 1 and 9 (storage.archive.deflate-level)")
+        @Max(value = 9, message = "Archive deflate level must be between 1 and 9 (storage.archive.deflate-level)")
+        private int deflateLevel = 6;
+
+        /**
+         * File extensions of already compressed formats, which are not recompressed.
+         */
+        private List<String> storedExtensions = new ArrayList<>(List.of(
+                "jpg", "jpeg", "png", "gif", "webp", "avif", "heic",
+                "mp4", "m4v", "mov", "mkv", "webm", "avi",
+                "mp3", "m4a", "aac", "ogg", "opus", "flac",
+                "zip", "gz", "tgz", "bz2", "xz", "zst", "7z", "rar", "jar",
+                "docx", "xlsx", "pptx", "odt", "ods", "epub"
+        ));
+
+        /**
+         * Content types (or type prefixes ending with '/') of already compressed data.
+         */
+        private List<String> storedContentTypes = new ArrayList<>(List.of(
+                "image/jpeg", "image/png", "image/gif", "image/webp", "image/avif", "image/heic",
+                "video/", "audio/mpeg", "audio/mp4", "audio/aac", "audio/ogg", "audio/flac",
+                "application/zip", "application/gzip", "application/x-7z-compressed",
+                "application/x-rar-compressed", "application/zstd"
+        ));
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Move {
+
+        /**
+         * Number of server-side copies in flight while a directory is moved.
+         */
+        @Min(value = 1, message = "Move copy concurrency must be positive (storage.move.copy-concurrency)")
+        private int copyConcurrency = 16;
+
+        /**
+         * Copied source objects are deleted in batches of this size while the move is still copying.
+         * S3 accepts at most 1000 keys per multi-object delete.
+         */
+        @Min(value = 1, message = "Move delete batch size must be between 1 and 1000 (storage.move.delete-batch-size)")
+        @Max(value = 1000, message = "Move delete batch size must be between 1 and 1000 (storage.move.delete-batch-size)")
+        private int deleteBatchSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Jobs {
+
+        /**
+         * Directory deletes, moves and downloads with at least this many catalog entries
+         * run as background jobs instead of within the request.
+         */
+        @Min(value = 1, message = "Job async threshold must be positive (storage.jobs.async-threshold)")
+        private int asyncThreshold = 1000;
+
+        /**
+         * Jobs executed concurrently by this instance.
+         */
+        @Min(value = 1, message = "Job workers must be positive (storage.jobs.workers)")
+        private int workers = 4;
+
+        /**
+         * Running jobs without a progress update for this long are considered
+         * abandoned (e.g. the instance was stopped) and marked as failed.
+         */
+        @NotNull(message = "Job stale timeout is required (storage.jobs.stale-after)")
+        private Duration staleAfter = Duration.ofMinutes(10);
+
+        /**
+         * Finished jobs and their archive results are removed after this period.
+         */
+        @NotNull(message = "Job retention is required (storage.jobs.retention)")
+        private Duration retention = Duration.ofHours(24);
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Diagnostics {
+
+        /**
+         * Whether virtual threads pinned to their carrier are reported (only with virtual threads enabled).
+         */
+        private boolean pinnedThreadsEnabled = true;
+
+        /**
+         * Pinnings shorter than this are ignored.
+         */
+        @NotNull(message = "Pinned thread threshold is required (storage.diagnostics.pinned-threshold)")
+        private Duration pinnedThreshold = Duration.ofMillis(20);
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Cache {
+
+        /**
+         * Whether catalog lookups by path (resource info, existence checks) are cached.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Whether Redis is used as a second level shared by all instances.
+         * Local caches of other instances are invalidated through Redis pub/sub.
+         */
+        private boolean redisEnabled = true;
+
+        /**
+         * Number of entries kept in the local cache.
+         */
+        @Min(value = 1, message = "Cache maximum size must be positive (storage.cache.maximum-size)")
+        private long maximumSize = 10_000;
+
+        /**
+         * How long an existing resource is cached.
+         */
+        @NotNull(message = "Cache TTL is required (storage.cache.ttl)")
+        private Duration ttl = Duration.ofMinutes(1);
+
+        /**
+         * How long an absent path is cached. Kept short, as another instance may create it
+         * without its invalidation having arrived yet.
+         */
+        @NotNull(message = "Cache negative TTL is required (storage.cache.negative-ttl)")
+        private Duration negativeTtl = Duration.ofSeconds(5);
+
+        /**
+         * Whether the contents of small files are kept in memory for repeated downloads.
+         */
+        private boolean contentEnabled = true;
+
+        /**
+         * Largest file whose content is cached.
+         */
+        @NotNull(message = "Content cache max object size is required (storage.cache.content-max-object-size)")
+        private DataSize contentMaxObjectSize = DataSize.ofKilobytes(256);
+
+        /**
+         * Heap available to cached file contents; the least valuable entries are evicted beyond it.
+         */
+        @NotNull(message = "Content cache budget is required (storage.cache.content-budget)")
+        private DataSize contentBudget = DataSize.ofMegabytes(64);
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Quota {
+
+        /**
+         * Whether uploads are checked against the per-user quotas.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Bytes a user may store, unless the user has an own quota in user_storage_usage.
+         */
+        @NotNull(message = "Quota max bytes is required (storage.quota.max-bytes)")
+        private DataSize maxBytes = DataSize.ofGigabytes(10);
+
+        /**
+         * Files and folders a user may store, unless the user has an own quota in user_storage_usage.
+         */
+        @Min(value = 1, message = "Quota max objects must be positive (storage.quota.max-objects)")
+        private long maxObjects = 1_000_000;
+
+        /**
+         * Reservations not renewed for this long are assumed to be left behind by an
+         * interrupted upload and cleared. Must exceed the duration of the slowest upload.
+         */
+        @NotNull(message = "Quota reservation TTL is required (storage.quota.reservation-ttl)")
+        private Duration reservationTtl = Duration.ofHours(6);
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Dedup {
+
+        /**
+         * Whether uploaded file bodies are stored once per content hash and shared between paths and users.
+         * Existing files are not converted; both kinds of files can be mixed.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Unreferenced blobs are kept for this long before they are removed, so an upload that
+         * has found an existing blob can still reference it.
+         */
+        @NotNull(message = "Dedup GC grace period is required (storage.dedup.gc-grace-period)")
+        private Duration gcGracePeriod = Duration.ofHours(1);
+
+        @Min(value = 1, message = "Dedup GC batch size must be positive (storage.dedup.gc-batch-size)")
+        private int gcBatchSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Layout {
+
+        /**
+         * Whether new files are stored under a stable object id (objects/<uuid>) instead of their path,
+         * and folders without marker objects. Such files and folders are moved and renamed in the catalog only.
+         * Both kinds of files can be mixed; path-keyed files are converted by the migration.
+         */
+        private boolean objectIds = false;
+
+        /**
+         * Whether existing path-keyed files are converted to object ids in the background
+         * (only with object ids enabled).
+         */
+        private boolean migrateExisting = false;
+
+        /**
+         * Files changed more recently than this are left for the next migration run,
+         * so the migration does not race uploads and moves in flight.
+         */
+        @NotNull(message = "Layout migration grace period is required (storage.layout.migration-grace-period)")
+        private Duration migrationGracePeriod = Duration.ofMinutes(5);
+
+        @Min(value = 1, message = "Layout migration batch size must be positive (storage.layout.migration-batch-size)")
+        private int migrationBatchSize = 1000;
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Trash {
+
+        /**
+         * Whether deleting a folder moves it into the trash instead of removing its objects.
+         * Files are still deleted immediately.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How long a trashed folder can be restored before it is purged.
+         */
+        @NotNull(message = "Trash retention is required (storage.trash.retention)")
+        private Duration retention = Duration.ofDays(7);
+
+        /**
+         * Objects removed per batch while purging; S3 accepts at most 1000 keys per multi-object delete.
+         */
+        @Min(value = 1, message = "Trash purge batch size must be between 1 and 1000 (storage.trash.purge-batch-size)")
+        @Max(value = 1000, message = "Trash purge batch size must be between 1 and 1000 (storage.trash.purge-batch-size)")
+        private int purgeBatchSize = 1000;
+
+        /**
+         * Pause between two purge batches, which limits the delete rate against MinIO.
+         */
+        @NotNull(message = "Trash purge batch delay is required (storage.trash.purge-batch-delay)")
+        private Duration purgeBatchDelay = Duration.ofMillis(200);
+    }
+
+    @Getter
+    @Setter
+    @ToString
+    public static class Integrity {
+
+        /**
+         * Whether stored objects are read back in the background and compared with their recorded checksum.
+         */
+        private boolean scrubEnabled = false;
+
+        /**
+         * A file is verified again once its last verification is older than this.
+         */
+        @NotNull(message = "Scrub re-verification interval is required (storage.integrity.reverify-after)")
+        private Duration reverifyAfter = Duration.ofDays(30);
+
+        /**
+         * Files verified per scrub run.
+         */
+        @Min(value = 1, message = "Scrub batch size must be positive (storage.integrity.scrub-batch-size)")
+        private int scrubBatchSize = 1000;
+
+        /**
+         * Bytes read from MinIO per second while scrubbing, so verification does not compete with users.
+         */
+        @NotNull(message = "Scrub rate is required (storage.integrity.scrub-rate)")
+        private DataSize scrubRate = DataSize.ofMegabytes(20);
+    }
+}
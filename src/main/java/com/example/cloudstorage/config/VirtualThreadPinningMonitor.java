@@ -0,0 +1,103 @@
+package com.example.cloudstorage.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Reports virtual threads that stay pinned to their carrier thread, e.g. because they block
+ * inside a synchronized block or a native frame, using the JFR event {@code jdk.VirtualThreadPinned}.
+ *
+ * Every pinning longer than {@code storage.diagnostics.pinned-threshold} is counted in the
+ * {@code jvm.threads.virtual.pinned} timer, tagged with the first application frame of the stack
+ * ("external" when the pinning happens entirely in library code). The full stack is logged once per site.
+ * Only active when virtual threads are enabled (spring.threads.virtual.enabled).
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+
+    private final StorageProperties storageProperties;
+    private final MeterRegistry meterRegistry;
+
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+    private RecordingStream recording;
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String APPLICATION_PACKAGE = "com.example.cloudstorage.";
+    private static final int LOGGED_FRAMES = 16;
+
+    @PostConstruct
+    void start() {
+        StorageProperties.Diagnostics diagnostics = storageProperties.getDiagnostics();
+        if (!diagnostics.isPinnedThreadsEnabled()) {
+            return;
+        }
+
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT)
+                .withThreshold(diagnostics.getPinnedThreshold())
+                .withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::onPinned);
+        recording.startAsync();
+        log.info("Reporting virtual threads pinned for more than {}", diagnostics.getPinnedThreshold());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames = event.getStackTrace() != null
+                ? event.getStackTrace().getFrames()
+                : List.of();
+        String site = frames.stream()
+                .filter(frame -> frame.isJavaFrame()
+                        && frame.getMethod().getType().getName().startsWith(APPLICATION_PACKAGE))
+                .findFirst()
+                .map(VirtualThreadPinningMonitor::describe)
+                .orElse("external");
+
+        meterRegistry.timer("jvm.threads.virtual.pinned", "site", site)
+                .record(event.getDuration().toNanos(), TimeUnit.NANOSECONDS);
+
+        if (reportedSites.add(site)) {
+            log.warn("Virtual thread pinned for {} ms at {}:\n{}",
+                    event.getDuration().toMillis(), site, format(event.getStackTrace()));
+        }
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+    }
+
+    private static String format(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "\t(no stack trace)";
+        }
+        return stackTrace.getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(frame -> "\tat " + describe(frame) + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n"));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.cloudstorage.controller;
+
+import com.example.cloudstorage.dto.JobInfo;
+import com.example.cloudstorage.security.CustomUserDetails;
+import com.example.cloudstorage.service.StorageService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+@Tag(name = "Jobs", description = "Progress and cancellation of background operations on large folders")
+@RestController
+@RequestMapping("/api/jobs")
+@RequiredArgsConstructor
+public class JobController {
+
+    private final StorageService storageService;
+
+    @Operation(
+            summary = "List jobs",
+            description = "Lists background jobs of the user, newest first. Finished jobs are kept for a limited time."
+    )
+    @GetMapping
+    public ResponseEntity<List<JobInfo>> listJobs(
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.listJobs(userDetails));
+    }
+
+    @Operation(
+            summary = "Get job progress",
+            description = "Returns status and progress (objects done/total, bytes) of a background job.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Job state",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = JobInfo.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Job not found",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Not Found Example",
+                                            value = "{\"message\": \"Job not found: 7d0c5a8e-2f4b-4d8a-9a51-3c8e1f6b2a90\"}"
+                                    )
+                            )
+                    )
+            }
+    )
+    @GetMapping("/{jobId}")
+    public ResponseEntity<JobInfo> getJob(
+            @PathVariable UUID jobId,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.getJob(userDetails, jobId));
+    }
+
+    @Operation(
+            summary = "Cancel job",
+            description = "Cancels a queued job, or asks a running job to stop. " +
+                    "Objects already deleted or moved by a running job stay deleted or moved.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Job state after the cancellation request",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = JobInfo.class)
+                            )
+                    ),
+                    @ApiResponse(responseCode = "404", description = "Job not found")
+            }
+    )
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<JobInfo> cancelJob(
+            @PathVariable UUID jobId,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.cancelJob(userDetails, jobId));
+    }
+
+    @Operation(
+            summary = "Download job result",
+            description = "Downloads the ZIP archive built by a finished archive job.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "ZIP archive",
+                            content = @Content(mediaType = "application/octet-stream")
+                    ),
+                    @ApiResponse(responseCode = "404", description = "Job not found or not finished")
+            }
+    )
+    @GetMapping("/{jobId}/result")
+    public ResponseEntity<StreamingResponseBody> downloadResult(
+            @PathVariable UUID jobId,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        JobInfo job = storageService.getJob(userDetails, jobId);
+        InputStream content = storageService.openJobResult(userDetails, jobId);
+        Path folder = Path.of(job.getSourcePath()).getFileName();
+        String name = (folder != null ? folder.toString() : "files") + ".zip";
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "\"")
+                .body(out -> {
+                    try (InputStream is = content) {
+                        is.transferTo(out);
+                    }
+                });
+    }
+}
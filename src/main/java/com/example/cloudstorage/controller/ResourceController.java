@@ -1,8 +1,17 @@
 package com.example.cloudstorage.controller;
 
+import com.example.cloudstorage.dto.FileUploadResult;
+import com.example.cloudstorage.dto.JobInfo;
 import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.entity.JobType;
+import com.example.cloudstorage.entity.ResourceMetadata;
 import com.example.cloudstorage.exception.InvalidPathException;
+import com.example.cloudstorage.exception.ResourceAlreadyExistsException;
 import com.example.cloudstorage.security.CustomUserDetails;
+import com.example.cloudstorage.service.Checksums;
+import com.example.cloudstorage.service.DirectoryService;
+import com.example.cloudstorage.service.FileOperationsService;
+import com.example.cloudstorage.service.SearchService;
 import com.example.cloudstorage.service.StorageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -10,22 +19,38 @@ import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotEmpty;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Tag(name = "Resource Management", description = "Operations related to files and folders")
 @RestController
@@ -36,9 +61,15 @@ public class ResourceController {
 
     private final StorageService storageService;
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final String CONTENT_DIGEST = "Content-Digest";
+    private static final String REPR_DIGEST = "Repr-Digest";
+    private static final String DIGEST = "Digest";
+
     @Operation(
             summary = "Upload files",
-            description = "Uploads one or more files to the specified path. " +
+            description = "Uploads one or more files to the specified path. Files are uploaded concurrently; " +
+                    "if only some of them fail, the response is 207 with the status of each file in request order. " +
                     "To test 'Malformed multipart request' error, use Postman (raw mode) or curl " +
                     "with invalid Content-Type/body - Swagger UI cannot send malformed requests.",
             responses = {
@@ -64,6 +95,22 @@ public class ResourceController {
                                     }
                             )
                     ),
+                    @ApiResponse(
+                            responseCode = "207",
+                            description = "Some files were uploaded and some failed",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = FileUploadResult.class),
+                                    examples = @ExampleObject(
+                                            name = "Partial Upload",
+                                            value = "[{\"name\": \"file1.txt\", \"status\": 201, " +
+                                                    "\"resource\": {\"path\": \"folder1/\", \"name\": \"file1.txt\", " +
+                                                    "\"size\": 1024, \"type\": \"FILE\"}}, " +
+                                                    "{\"name\": \"file2.pdf\", \"status\": 409, " +
+                                                    "\"message\": \"File already exists: folder1/file2.pdf\"}]"
+                                    )
+                            )
+                    ),
                     @ApiResponse(
                             responseCode = "400",
                             description = "Invalid request body or validation error",
@@ -117,6 +164,18 @@ public class ResourceController {
                                     )
                             )
                     ),
+                    @ApiResponse(
+                            responseCode = "413",
+                            description = "The files do not fit into the user's storage quota",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Quota Exceeded Example",
+                                            value = "{\"message\": \"Storage quota exceeded: the upload of " +
+                                                    "2048 bytes in 2 files does not fit into the remaining space\"}"
+                                    )
+                            )
+                    ),
                     @ApiResponse(
                             responseCode = "500",
                             description = "Unknown server error",
@@ -132,7 +191,7 @@ public class ResourceController {
             }
     )
     @PostMapping(value = "/resource", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<List<ResourceInfo>> uploadResource(
+    public ResponseEntity<?> uploadResource(
             @RequestParam("path") String path,
             @RequestPart("object") 
             @NotEmpty(message = "At least one file must be selected for upload") 
@@ -150,7 +209,103 @@ public class ResourceController {
             throw new InvalidPathException(message);
         }
 
-        List<ResourceInfo> uploaded = storageService.upload(userDetails, path, files);
+        List<FileOperationsService.UploadOutcome> outcomes = storageService.uploadEach(userDetails, path, files);
+        List<FileOperationsService.UploadOutcome> failed = outcomes.stream()
+                .filter(outcome -> !outcome.succeeded())
+                .toList();
+
+        if (failed.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(outcomes.stream().map(FileOperationsService.UploadOutcome::resource).toList());
+        }
+        // Nothing was stored: answer like a single failed upload
+        if (failed.size() == outcomes.size()) {
+            throw failed.getFirst().error();
+        }
+        return ResponseEntity.status(HttpStatus.MULTI_STATUS)
+                .body(outcomes.stream().map(ResourceController::toUploadResult).toList());
+    }
+
+    private static FileUploadResult toUploadResult(FileOperationsService.UploadOutcome outcome) {
+        if (outcome.succeeded()) {
+            return FileUploadResult.builder()
+                    .name(outcome.name())
+                    .status(HttpStatus.CREATED.value())
+                    .resource(outcome.resource())
+                    .build();
+        }
+
+        RuntimeException error = outcome.error();
+        HttpStatus status = switch (error) {
+            case ResourceAlreadyExistsException ignored -> HttpStatus.CONFLICT;
+            case InvalidPathException ignored -> HttpStatus.BAD_REQUEST;
+            default -> HttpStatus.INTERNAL_SERVER_ERROR;
+        };
+        return FileUploadResult.builder()
+                .name(outcome.name())
+                .status(status.value())
+                .message(status == HttpStatus.INTERNAL_SERVER_ERROR
+                        ? "An internal server error occurred."
+                        : error.getMessage())
+                .build();
+    }
+
+    @Operation(
+            summary = "Upload file as a stream",
+            description = "Uploads one file sent as the raw request body. The body is piped into storage " +
+                    "while it is received, without temporary files, so it is suited to large files. " +
+                    "Content-Length is optional (chunked transfer encoding is accepted); " +
+                    "Content-Type becomes the type of the file. A SHA-256 sent as Content-Digest, " +
+                    "Repr-Digest or Digest header is verified and a mismatching file is rejected.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "201",
+                            description = "File successfully uploaded",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = ResourceInfo.class),
+                                    examples = @ExampleObject(
+                                            name = "Streamed Upload",
+                                            value = "{\"path\": \"folder1/\", \"name\": \"video.mp4\", " +
+                                                    "\"size\": 734003200, \"type\": \"FILE\"}"
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Invalid path or a folder path",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Folder Path",
+                                            value = "{\"message\": \"Upload path must point to a file, not a directory\"}"
+                                    )
+                            )
+                    ),
+                    @ApiResponse(responseCode = "400", description = "Content does not match its SHA-256 digest"),
+                    @ApiResponse(responseCode = "409", description = "Conflict: File already exists"),
+                    @ApiResponse(responseCode = "413", description = "Storage quota exceeded")
+            }
+    )
+    @PutMapping(value = "/resource", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<ResourceInfo> uploadResourceStream(
+            @RequestParam
+            @NotBlank(message = "The 'path' parameter cannot be empty")
+            String path,
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, defaultValue = "-1") long contentLength,
+            @RequestHeader(value = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            @RequestHeader(value = CONTENT_DIGEST, required = false) String contentDigest,
+            @RequestHeader(value = REPR_DIGEST, required = false) String reprDigest,
+            @RequestHeader(value = DIGEST, required = false) String digest,
+            HttpServletRequest request,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) throws IOException {
+        // Without a Content-Encoding, the content and representation digests are the same
+        String expectedChecksum = Optional.ofNullable(Checksums.fromDigestHeader(contentDigest))
+                .or(() -> Optional.ofNullable(Checksums.fromDigestHeader(reprDigest)))
+                .orElseGet(() -> Checksums.fromDigestHeader(digest));
+        ResourceInfo uploaded = storageService.uploadStream(
+                userDetails, path, request.getInputStream(), contentLength, contentType, expectedChecksum);
         return ResponseEntity.status(HttpStatus.CREATED).body(uploaded);
     }
 
@@ -254,6 +409,14 @@ public class ResourceController {
                             responseCode = "204",
                             description = "Resource successfully deleted"
                     ),
+                    @ApiResponse(
+                            responseCode = "202",
+                            description = "Large folder: deletion queued as a background job (see Location header)",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = JobInfo.class)
+                            )
+                    ),
                     @ApiResponse(
                             responseCode = "400",
                             description = "Invalid or missing path",
@@ -311,16 +474,23 @@ public class ResourceController {
             }
     )
     @DeleteMapping("/resource")
-    public ResponseEntity<Void> deleteResource(
+    public CompletableFuture<ResponseEntity<JobInfo>> deleteResource(
             @RequestParam @NotBlank(message = "The 'path' parameter cannot be empty") String path,
             @AuthenticationPrincipal CustomUserDetails userDetails) {
-        storageService.deleteResource(userDetails, path);
-        return ResponseEntity.noContent().build();
+        Optional<JobInfo> job = storageService.submitJobIfLarge(userDetails, JobType.DELETE, path, null);
+        if (job.isPresent()) {
+            return CompletableFuture.completedFuture(accepted(job.get()));
+        }
+        return storageService.deleteResourceAsync(userDetails, path)
+                .thenApply(ignored -> ResponseEntity.noContent().build());
     }
 
     @Operation(
             summary = "Download resource",
             description = "Downloads a file or folder (as ZIP archive) from the specified path. " +
+                    "File downloads support single and multiple byte ranges (Range, If-Range) and " +
+                    "conditional requests (If-None-Match, If-Modified-Since) using the ETag and Last-Modified headers. " +
+                    "Files with a recorded SHA-256 carry it in the Repr-Digest and Digest headers. " +
                     "Note: To test the 'empty path' error in Swagger UI, use a space character " +
                     "or test via external client (curl/Postman).",
             responses = {
@@ -336,6 +506,32 @@ public class ResourceController {
                                     )
                             )
                     ),
+                    @ApiResponse(
+                            responseCode = "202",
+                            description = "Large folder: the ZIP is built by a background job and downloaded from /api/jobs/{id}/result",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = JobInfo.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "206",
+                            description = "Partial content for a Range request " +
+                                    "(multipart/byteranges when several ranges are requested)"
+                    ),
+                    @ApiResponse(
+                            responseCode = "302",
+                            description = "Redirect to a short-lived presigned storage URL " +
+                                    "(only when storage.presign.download-redirect is enabled)"
+                    ),
+                    @ApiResponse(
+                            responseCode = "304",
+                            description = "Not modified: If-None-Match or If-Modified-Since matched"
+                    ),
+                    @ApiResponse(
+                            responseCode = "416",
+                            description = "Requested range not satisfiable"
+                    ),
                     @ApiResponse(
                             responseCode = "400",
                             description = "Invalid or missing path",
@@ -393,32 +589,169 @@ public class ResourceController {
             }
     )
     @GetMapping("/resource/download")
-    public ResponseEntity<StreamingResponseBody> downloadResource(
+    public CompletableFuture<ResponseEntity<?>> downloadResource(
             @RequestParam @NotBlank(message = "The 'path' parameter cannot be empty") String path,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            ServletWebRequest webRequest,
             @AuthenticationPrincipal CustomUserDetails user
     ) {
-
-        Object body = storageService.downloadResource(user, path);
-
         String name = Path.of(path).getFileName().toString();
-        if (body instanceof StreamingResponseBody stream) {
-            return ResponseEntity.ok()
+        if (path.endsWith("/")) {
+            Optional<JobInfo> job = storageService.submitJobIfLarge(user, JobType.ARCHIVE, path, null);
+            if (job.isPresent()) {
+                return CompletableFuture.completedFuture(accepted(job.get()));
+            }
+            StreamingResponseBody stream = (StreamingResponseBody) storageService.downloadResource(user, path);
+            return CompletableFuture.completedFuture(ResponseEntity.ok()
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + ".zip" + "\"")
-                    .body(stream);
+                    .body(stream));
         }
 
-        return ResponseEntity.ok()
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .header(HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"" + name + "\"")
-                .body(out -> {
-                    try (InputStream is = (InputStream) body) {
-                        is.transferTo(out);
+        if (storageService.isDownloadRedirectEnabled()) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.FOUND)
+                    .location(URI.create(storageService.presignDownload(user, path)))
+                    .build());
+        }
+
+        ResourceMetadata file = storageService.getFileMetadata(user, path);
+        String etag = "\"" + file.getEtag() + "\"";
+        long lastModified = file.getUpdatedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long size = file.getSize();
+        String checksum = file.getChecksumSha256();
+
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            // 304 or 412; the validator headers are already set on the response
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(webRequest.getResponse().getStatus()).build());
+        }
+
+        if (range == null || !ifRangeMatches(ifRange, etag, lastModified)) {
+            return storageService.downloadFileAsync(user, path)
+                    .thenApply(content -> fileResponse(HttpStatus.OK, name, etag, lastModified, checksum)
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .contentLength(size)
+                            .body(transfer(content)));
+        }
+
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(range);
+            ranges.forEach(r -> r.getRangeStart(size));
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                    .build());
+        }
+
+        ResponseEntity.BodyBuilder response = fileResponse(HttpStatus.PARTIAL_CONTENT, name, etag, lastModified,
+                checksum);
+        if (ranges.size() == 1) {
+            long start = ranges.getFirst().getRangeStart(size);
+            long end = ranges.getFirst().getRangeEnd(size);
+            return storageService.downloadFileRangeAsync(user, path, start, end - start + 1)
+                    .thenApply(content -> response
+                            .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                            .contentLength(end - start + 1)
+                            .header(HttpHeaders.CONTENT_RANGE, contentRange(start, end, size))
+                            .body(transfer(content)));
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        return CompletableFuture.completedFuture(response
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .body((StreamingResponseBody) out -> {
+                    for (HttpRange r : ranges) {
+                        long start = r.getRangeStart(size);
+                        long end = r.getRangeEnd(size);
+                        out.write(("\r\n--" + boundary + "\r\n"
+                                + HttpHeaders.CONTENT_TYPE + ": " + MediaType.APPLICATION_OCTET_STREAM_VALUE + "\r\n"
+                                + HttpHeaders.CONTENT_RANGE + ": " + contentRange(start, end, size) + "\r\n\r\n")
+                                .getBytes(StandardCharsets.US_ASCII));
+                        try (InputStream is = storageService.downloadFileRange(user, path, start, end - start + 1)) {
+                            is.transferTo(out);
+                        }
                     }
-                });
+                    out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+                }));
     }
 
+    private ResponseEntity.BodyBuilder fileResponse(HttpStatus status, String name, String etag, long lastModified,
+                                                    String checksum) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(status)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + name + "\"")
+                .eTag(etag)
+                .lastModified(lastModified);
+        // Digests of the whole file, so clients can verify a download assembled from ranges too
+        if (checksum != null) {
+            response.header(REPR_DIGEST, Checksums.toStructuredDigest(checksum))
+                    .header(DIGEST, Checksums.toLegacyDigest(checksum));
+        }
+        return response;
+    }
+
+    /**
+     * A Range request is only honoured if If-Range is absent or still matches the file;
+     * otherwise the whole, changed file is sent.
+     */
+    private boolean ifRangeMatches(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag);
+        }
+        try {
+            long since = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return lastModified / 1000 == since / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private String contentRange(long start, long end, long size) {
+        return "bytes " + start + "-" + end + "/" + size;
+    }
+
+    private StreamingResponseBody transfer(InputStream content) {
+        return out -> {
+            try (InputStream is = content) {
+                is.transferTo(out);
+            }
+        };
+    }
+
+    /**
+     * NDJSON is only streamed when asked for explicitly; a wildcard Accept keeps the JSON array.
+     */
+    private boolean acceptsNdjson(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        try {
+            return MediaType.parseMediaTypes(accept).stream()
+                    .anyMatch(type -> type.equalsTypeAndSubtype(MediaType.APPLICATION_NDJSON));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
+    private ResponseEntity<StreamingResponseBody> ndjson(StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * 202 Accepted for an operation queued as a background job; Location points to its progress.
+     */
+    private ResponseEntity<JobInfo> accepted(JobInfo job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/jobs/" + job.getId()))
+                .body(job);
+    }
 
     @Operation(
             summary = "Move or rename resource",
@@ -446,6 +779,14 @@ public class ResourceController {
                                     }
                             )
                     ),
+                    @ApiResponse(
+                            responseCode = "202",
+                            description = "Large folder: move queued as a background job (see Location header)",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = JobInfo.class)
+                            )
+                    ),
                     @ApiResponse(
                             responseCode = "400",
                             description = "Invalid or missing path",
@@ -526,7 +867,7 @@ public class ResourceController {
             }
     )
     @GetMapping("/resource/move")
-    public ResponseEntity<ResourceInfo> moveOrRenameResource(
+    public CompletableFuture<ResponseEntity<?>> moveOrRenameResource(
             @RequestParam 
             @NotBlank(message = "Source path cannot be empty") 
             String from,
@@ -535,13 +876,19 @@ public class ResourceController {
             String to,
             @AuthenticationPrincipal CustomUserDetails userDetails
     ) {
-        ResourceInfo result = storageService.moveOrRenameResource(userDetails, from, to);
-        return ResponseEntity.ok(result);
+        Optional<JobInfo> job = storageService.submitJobIfLarge(userDetails, JobType.MOVE, from, to);
+        if (job.isPresent()) {
+            return CompletableFuture.completedFuture(accepted(job.get()));
+        }
+        return storageService.moveOrRenameResourceAsync(userDetails, from, to)
+                .thenApply(ResponseEntity::ok);
     }
 
     @Operation(
             summary = "Search resources",
             description = "Searches for files and folders matching the query string. " +
+                    "Results are ranked (exact name, then prefix, then similarity) and paginated " +
+                    "with the zero-based 'page' and 'size' parameters. " +
                     "Note: To test the 'empty query' error in Swagger UI, use a space character " +
                     "or test via external client (curl/Postman).",
             responses = {
@@ -605,13 +952,25 @@ public class ResourceController {
             }
     )
     @GetMapping("/resource/search")
-    public ResponseEntity<List<ResourceInfo>> searchResources(
+    public ResponseEntity<?> searchResources(
             @RequestParam 
             @NotBlank(message = "Search query cannot be empty") 
             String query,
+            @RequestParam(defaultValue = "0")
+            @Min(value = 0, message = "Page must not be negative")
+            int page,
+            @RequestParam(defaultValue = "" + SearchService.DEFAULT_PAGE_SIZE)
+            @Min(value = 1, message = "Page size must be positive")
+            @Max(value = SearchService.MAX_PAGE_SIZE, message = "Page size must not exceed " + SearchService.MAX_PAGE_SIZE)
+            int size,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
             @AuthenticationPrincipal CustomUserDetails userDetails
     ) {
-        List<ResourceInfo> results = storageService.searchUserFiles(userDetails, query);
+        if (acceptsNdjson(accept)) {
+            return ndjson(storageService.streamSearch(userDetails, query));
+        }
+
+        List<ResourceInfo> results = storageService.searchUserFiles(userDetails, query, page, size);
         return ResponseEntity.ok(results);
     }
 
@@ -719,7 +1078,10 @@ public class ResourceController {
 
     @Operation(
             summary = "List directory contents",
-            description = "Returns a list of files and folders in the specified directory. " +
+            description = "Returns a list of files and folders in the specified directory, ordered by path. " +
+                    "With 'limit' (or 'cursor') the listing is paginated: the response holds at most 'limit' " +
+                    "entries, and the X-Next-Cursor header carries the opaque cursor for the next page " +
+                    "(absent on the last page). Without them the whole directory is returned. " +
                     "Note: Empty path (?path=) returns root directory (200 OK). " +
                     "To test 'Missing Path Parameter' error (400), use external client (curl/Postman) " +
                     "because Swagger UI requires path parameter.",
@@ -749,7 +1111,7 @@ public class ResourceController {
                     ),
                     @ApiResponse(
                             responseCode = "400",
-                            description = "Invalid or missing path",
+                            description = "Invalid or missing path, or invalid cursor",
                             content = @Content(
                                     mediaType = "application/json",
                                     schema = @Schema(implementation = ResourceInfo.class),
@@ -762,6 +1124,10 @@ public class ResourceController {
                                             @ExampleObject(
                                                     name = "Invalid Characters",
                                                     value = "{\"message\": \"Invalid characters in path: folder<name>/\"}"
+                                            ),
+                                            @ExampleObject(
+                                                    name = "Invalid Cursor",
+                                                    value = "{\"message\": \"Cursor does not belong to directory: /folder1/\"}"
                                             )
                                     }
                             )
@@ -805,15 +1171,35 @@ public class ResourceController {
             }
     )
     @GetMapping("/directory")
-    public ResponseEntity<List<ResourceInfo>> listDirectory(
+    public ResponseEntity<?> listDirectory(
             @RequestParam String path,
+            @RequestParam(required = false)
+            @Min(value = 1, message = "Limit must be at least 1")
+            @Max(value = DirectoryService.MAX_PAGE_SIZE, message = "Limit must not exceed " + DirectoryService.MAX_PAGE_SIZE)
+            Integer limit,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
             @AuthenticationPrincipal CustomUserDetails userDetails
     ) {
         if (path == null || path.isEmpty()) {
             path = "/";
         }
 
-        List<ResourceInfo> content = storageService.listDirectory(userDetails, path);
-        return ResponseEntity.ok(content);
+        if (acceptsNdjson(accept) && limit == null && cursor == null) {
+            return ndjson(storageService.streamDirectory(userDetails, path));
+        }
+
+        if (limit == null && cursor == null) {
+            List<ResourceInfo> content = storageService.listDirectory(userDetails, path);
+            return ResponseEntity.ok(content);
+        }
+
+        DirectoryService.ListingPage page = storageService.listDirectory(userDetails, path, cursor,
+                limit != null ? limit : DirectoryService.DEFAULT_PAGE_SIZE);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
     }
 }
@@ -0,0 +1,91 @@
+package com.example.cloudstorage.controller;
+
+import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.dto.TrashEntryInfo;
+import com.example.cloudstorage.security.CustomUserDetails;
+import com.example.cloudstorage.service.StorageService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.UUID;
+
+@Tag(name = "Trash", description = "Restoring and purging deleted folders")
+@RestController
+@RequestMapping("/api/trash")
+@RequiredArgsConstructor
+public class TrashController {
+
+    private final StorageService storageService;
+
+    @Operation(
+            summary = "List trash",
+            description = "Lists deleted folders that can still be restored, newest first. " +
+                    "Folders are only moved to the trash when it is enabled."
+    )
+    @GetMapping
+    public ResponseEntity<List<TrashEntryInfo>> listTrash(
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.listTrash(userDetails));
+    }
+
+    @Operation(
+            summary = "Restore folder",
+            description = "Restores a deleted folder with all its contents to its original path. " +
+                    "The parent folder must exist.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Folder restored",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = ResourceInfo.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Trash entry not found or expired, or parent folder missing",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Not Found Example",
+                                            value = "{\"message\": \"Trash entry not found: 7d0c5a8e-2f4b-4d8a-9a51-3c8e1f6b2a90\"}"
+                                    )
+                            )
+                    )
+            }
+    )
+    @PostMapping("/{trashId}/restore")
+    public ResponseEntity<ResourceInfo> restore(
+            @PathVariable UUID trashId,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.restoreFromTrash(userDetails, trashId));
+    }
+
+    @Operation(
+            summary = "Purge folder",
+            description = "Removes a deleted folder permanently with the next background collection.",
+            responses = {
+                    @ApiResponse(responseCode = "204", description = "Folder scheduled for removal"),
+                    @ApiResponse(responseCode = "404", description = "Trash entry not found or already expired")
+            }
+    )
+    @DeleteMapping("/{trashId}")
+    public ResponseEntity<Void> purge(
+            @PathVariable UUID trashId,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        storageService.purgeTrash(userDetails, trashId);
+        return ResponseEntity.noContent().build();
+    }
+}
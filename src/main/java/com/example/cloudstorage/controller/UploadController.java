@@ -0,0 +1,276 @@
+package com.example.cloudstorage.controller;
+
+import com.example.cloudstorage.dto.PresignedUpload;
+import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.dto.UploadPartInfo;
+import com.example.cloudstorage.dto.UploadSessionInfo;
+import com.example.cloudstorage.security.CustomUserDetails;
+import com.example.cloudstorage.service.StorageService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.ExampleObject;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+
+@Tag(name = "Uploads", description = "Resumable chunked uploads and direct uploads through presigned URLs")
+@RestController
+@RequestMapping("/api/upload")
+@RequiredArgsConstructor
+@Validated
+public class UploadController {
+
+    private final StorageService storageService;
+
+    @Operation(
+            summary = "Initiate chunked upload",
+            description = "Starts a resumable upload for the file at the given path. " +
+                    "The response contains the session id and the recommended part size.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "201",
+                            description = "Upload session created",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = UploadSessionInfo.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Invalid path",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Invalid Path Example",
+                                            value = "{\"message\": \"Upload path must point to a file, not a directory\"}"
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "409",
+                            description = "Conflict: File already exists or an upload for it is in progress",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Conflict Response Example",
+                                            value = "{\"message\": \"Upload already in progress: videos/holiday.mp4\"}"
+                                    )
+                            )
+                    )
+            }
+    )
+    @PostMapping
+    public ResponseEntity<UploadSessionInfo> initiateUpload(
+            @RequestParam("path") String path,
+            @RequestParam(value = "contentType", required = false) String contentType,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        UploadSessionInfo session = storageService.initiateUpload(userDetails, path, contentType);
+        return ResponseEntity.status(HttpStatus.CREATED).body(session);
+    }
+
+    @Operation(
+            summary = "List chunked uploads",
+            description = "Lists upload sessions in progress, so a client can resume after a restart."
+    )
+    @GetMapping
+    public ResponseEntity<List<UploadSessionInfo>> listUploads(
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.listUploadSessions(userDetails));
+    }
+
+    @Operation(
+            summary = "Get chunked upload state",
+            description = "Returns the session with the parts already stored. " +
+                    "Missing part numbers are the ones that still need to be uploaded.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Session state",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = UploadSessionInfo.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Upload session not found",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Not Found Example",
+                                            value = "{\"message\": \"Upload session not found\"}"
+                                    )
+                            )
+                    )
+            }
+    )
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionInfo> getUpload(
+            @PathVariable UUID sessionId,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.getUploadSession(userDetails, sessionId));
+    }
+
+    @Operation(
+            summary = "Upload part",
+            description = "Uploads one part as the raw request body (Content-Length is required). " +
+                    "Parts may be sent in parallel and in any order; re-sending a part replaces it. " +
+                    "All parts except the last must be at least 5 MiB.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Part stored",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = UploadPartInfo.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "Invalid part number or size",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Invalid Part Example",
+                                            value = "{\"message\": \"Part number must be between 1 and 10000\"}"
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Upload session not found"
+                    )
+            }
+    )
+    @PutMapping(value = "/{sessionId}/parts/{partNumber}", consumes = MediaType.ALL_VALUE)
+    public ResponseEntity<UploadPartInfo> uploadPart(
+            @PathVariable UUID sessionId,
+            @PathVariable int partNumber,
+            @RequestHeader(value = HttpHeaders.CONTENT_LENGTH, defaultValue = "-1") long contentLength,
+            HttpServletRequest request,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) throws IOException {
+        UploadPartInfo part = storageService.uploadPart(
+                userDetails, sessionId, partNumber, request.getInputStream(), contentLength);
+        return ResponseEntity.ok(part);
+    }
+
+    @Operation(
+            summary = "Complete chunked upload",
+            description = "Assembles the uploaded parts into the final file.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "201",
+                            description = "File created",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = ResourceInfo.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "400",
+                            description = "No parts uploaded or a part is too small"
+                    ),
+                    @ApiResponse(
+                            responseCode = "409",
+                            description = "Conflict: File already exists"
+                    )
+            }
+    )
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<ResourceInfo> completeUpload(
+            @PathVariable UUID sessionId,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        ResourceInfo created = storageService.completeUpload(userDetails, sessionId);
+        return ResponseEntity.status(HttpStatus.CREATED).body(created);
+    }
+
+    @Operation(
+            summary = "Abort chunked upload",
+            description = "Aborts the upload and discards all stored parts.",
+            responses = {
+                    @ApiResponse(responseCode = "204", description = "Upload aborted"),
+                    @ApiResponse(responseCode = "404", description = "Upload session not found")
+            }
+    )
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abortUpload(
+            @PathVariable UUID sessionId,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        storageService.abortUpload(userDetails, sessionId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @Operation(
+            summary = "Get presigned upload URL",
+            description = "Returns a short-lived URL and signed form fields for uploading a new file directly " +
+                    "to object storage with a multipart/form-data POST. Files larger than the remaining quota " +
+                    "are rejected by storage. Call the confirm endpoint afterwards.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Presigned URL created",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = PresignedUpload.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "409",
+                            description = "Conflict: File already exists"
+                    )
+            }
+    )
+    @PostMapping("/presigned")
+    public ResponseEntity<PresignedUpload> presignUpload(
+            @RequestParam("path") String path,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.presignUpload(userDetails, path));
+    }
+
+    @Operation(
+            summary = "Confirm presigned upload",
+            description = "Records a file uploaded through a presigned URL, so it is listed immediately.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "201",
+                            description = "File recorded",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = ResourceInfo.class)
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "404",
+                            description = "Nothing was uploaded to the path"
+                    )
+            }
+    )
+    @PostMapping("/presigned/confirm")
+    public ResponseEntity<ResourceInfo> confirmPresignedUpload(
+            @RequestParam("path") String path,
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        ResourceInfo created = storageService.confirmPresignedUpload(userDetails, path);
+        return ResponseEntity.status(HttpStatus.CREATED).body(created);
+    }
+}
@@ -1,12 +1,16 @@
 package com.example.cloudstorage.controller;
 
+import com.example.cloudstorage.dto.StorageUsageInfo;
 import com.example.cloudstorage.dto.UserResponse;
+import com.example.cloudstorage.security.CustomUserDetails;
+import com.example.cloudstorage.service.StorageService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -20,8 +24,11 @@ import org.springframework.web.bind.annotation.RestController;
 )
 @RestController
 @RequestMapping("/api/user")
+@RequiredArgsConstructor
 public class UserController {
 
+    private final StorageService storageService;
+
     @Operation(
             summary = "Get current authenticated user",
             description = "Returns information about the currently authenticated user.",
@@ -71,4 +78,41 @@ public class UserController {
     ) {
         return ResponseEntity.ok(new UserResponse(userDetails.getUsername()));
     }
+
+    @Operation(
+            summary = "Get storage usage",
+            description = "Returns the bytes and the number of files and folders held by the current user. " +
+                    "Read from counters maintained with every change, so the cost does not depend on the number of files.",
+            responses = {
+                    @ApiResponse(
+                            responseCode = "200",
+                            description = "Successfully retrieved storage usage",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    schema = @Schema(implementation = StorageUsageInfo.class),
+                                    examples = @ExampleObject(
+                                            name = "Successful Response Example",
+                                            value = "{\"bytesUsed\": 73400320, \"objectCount\": 128}"
+                                    )
+                            )
+                    ),
+                    @ApiResponse(
+                            responseCode = "401",
+                            description = "Unauthorized: User is not authenticated",
+                            content = @Content(
+                                    mediaType = "application/json",
+                                    examples = @ExampleObject(
+                                            name = "Unauthorized Response Example",
+                                            value = "{\"message\": \"Unauthorized\"}"
+                                    )
+                            )
+                    )
+            }
+    )
+    @GetMapping("/usage")
+    public ResponseEntity<StorageUsageInfo> getUsage(
+            @AuthenticationPrincipal CustomUserDetails userDetails
+    ) {
+        return ResponseEntity.ok(storageService.getUsage(userDetails));
+    }
 }
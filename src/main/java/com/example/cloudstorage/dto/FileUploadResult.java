@@ -0,0 +1,27 @@
+package com.example.cloudstorage.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Schema(description = "Result of uploading one file of a multi-file upload")
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"name", "status", "resource", "message"})
+public class FileUploadResult {
+
+    @Schema(description = "Original name of the uploaded file", example = "file.txt")
+    private String name;
+
+    @Schema(description = "HTTP status of this file's upload", example = "201")
+    private int status;
+
+    @Schema(description = "The uploaded file. Null if the upload failed.")
+    private ResourceInfo resource;
+
+    @Schema(description = "Why the upload failed. Null if it succeeded.", example = "File already exists: folder/file.txt")
+    private String message;
+}
@@ -0,0 +1,54 @@
+package com.example.cloudstorage.dto;
+
+import com.example.cloudstorage.entity.JobStatus;
+import com.example.cloudstorage.entity.JobType;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Schema(description = "State and progress of a background job")
+@Data
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"id", "type", "status", "sourcePath", "targetPath",
+        "objectsTotal", "objectsDone", "bytesDone", "error", "createdAt", "startedAt", "finishedAt"})
+public class JobInfo {
+
+    @Schema(description = "Job identifier", example = "7d0c5a8e-2f4b-4d8a-9a51-3c8e1f6b2a90")
+    private UUID id;
+
+    @Schema(description = "Operation performed by the job", example = "MOVE")
+    private JobType type;
+
+    @Schema(description = "Job status", example = "RUNNING")
+    private JobStatus status;
+
+    @Schema(description = "Resource the job operates on", example = "photos/")
+    private String sourcePath;
+
+    @Schema(description = "Destination of a move job", example = "archive/photos/")
+    private String targetPath;
+
+    @Schema(description = "Objects to process; absent until the job has started", example = "52000")
+    private Long objectsTotal;
+
+    @Schema(description = "Objects processed so far", example = "18000")
+    private long objectsDone;
+
+    @Schema(description = "Bytes processed so far", example = "734003200")
+    private long bytesDone;
+
+    @Schema(description = "Failure reason of a failed job")
+    private String error;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime finishedAt;
+}
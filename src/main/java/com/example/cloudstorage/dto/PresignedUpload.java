@@ -0,0 +1,35 @@
+package com.example.cloudstorage.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@Schema(description = "Presigned URL for uploading a file directly to object storage")
+@Data
+@Builder
+@JsonPropertyOrder({"path", "method", "url", "fields", "maxSize", "expiresAt"})
+public class PresignedUpload {
+
+    @Schema(description = "Full path of the file to upload", example = "videos/holiday.mp4")
+    private String path;
+
+    @Schema(description = "HTTP method to use with the URL", example = "POST")
+    private String method;
+
+    @Schema(description = "Upload URL; send the fields followed by the file (as part \"file\") as multipart/form-data")
+    private String url;
+
+    @Schema(description = "Signed form fields to send with the file, including its key")
+    private Map<String, String> fields;
+
+    @Schema(description = "Largest file size in bytes storage accepts, the remaining quota; null without quotas",
+            example = "10737418240")
+    private Long maxSize;
+
+    @Schema(description = "Time after which the URL is no longer valid")
+    private LocalDateTime expiresAt;
+}
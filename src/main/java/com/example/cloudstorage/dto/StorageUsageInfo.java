@@ -0,0 +1,25 @@
+package com.example.cloudstorage.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Schema(description = "Storage used by the authenticated user and the user's quota")
+@Data
+@Builder
+@JsonPropertyOrder({"bytesUsed", "bytesLimit", "objectCount", "objectLimit"})
+public class StorageUsageInfo {
+
+    @Schema(description = "Total size of all files in bytes", example = "73400320")
+    private long bytesUsed;
+
+    @Schema(description = "Number of files and folders", example = "128")
+    private long objectCount;
+
+    @Schema(description = "Byte quota of the user", example = "10737418240")
+    private long bytesLimit;
+
+    @Schema(description = "Maximum number of files and folders", example = "1000000")
+    private long objectLimit;
+}
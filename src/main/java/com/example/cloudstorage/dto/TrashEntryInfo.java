@@ -0,0 +1,29 @@
+package com.example.cloudstorage.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Schema(description = "Folder in the trash")
+@Data
+@Builder
+@JsonPropertyOrder({"id", "path", "trashedAt", "expiresAt"})
+public class TrashEntryInfo {
+
+    @Schema(description = "Trash entry identifier, used to restore or purge the folder",
+            example = "5b1e7c2a-93d4-4f0e-8a6b-2c7d9e1f3a40")
+    private UUID id;
+
+    @Schema(description = "Path of the folder; it is restored to this path", example = "projects/old-site/")
+    private String path;
+
+    @Schema(description = "When the folder was deleted")
+    private LocalDateTime trashedAt;
+
+    @Schema(description = "When the folder is purged; it can be restored until then")
+    private LocalDateTime expiresAt;
+}
@@ -0,0 +1,22 @@
+package com.example.cloudstorage.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+@Schema(description = "A part stored for a chunked upload")
+@Data
+@Builder
+@JsonPropertyOrder({"partNumber", "size", "etag"})
+public class UploadPartInfo {
+
+    @Schema(description = "Part number (1-10000)", example = "1")
+    private int partNumber;
+
+    @Schema(description = "Size of the part in bytes", example = "16777216")
+    private long size;
+
+    @Schema(description = "ETag of the stored part", example = "9b2cf535f27731c974343645a3985328")
+    private String etag;
+}
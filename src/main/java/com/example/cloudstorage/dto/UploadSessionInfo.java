@@ -0,0 +1,35 @@
+package com.example.cloudstorage.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+@Schema(description = "State of a chunked upload session")
+@Data
+@Builder
+@JsonPropertyOrder({"id", "path", "partSize", "maxPartSize", "expiresAt", "parts"})
+public class UploadSessionInfo {
+
+    @Schema(description = "Upload session identifier", example = "3f1c2a9e-6c1b-4c55-9a7e-0f2a4f6c1d2b")
+    private UUID id;
+
+    @Schema(description = "Full path of the file being uploaded", example = "videos/holiday.mp4")
+    private String path;
+
+    @Schema(description = "Recommended part size in bytes", example = "16777216")
+    private long partSize;
+
+    @Schema(description = "Maximum accepted part size in bytes", example = "134217728")
+    private long maxPartSize;
+
+    @Schema(description = "Time after which an inactive session is aborted")
+    private LocalDateTime expiresAt;
+
+    @Schema(description = "Parts already stored, ordered by part number")
+    private List<UploadPartInfo> parts;
+}
@@ -0,0 +1,40 @@
+package com.example.cloudstorage.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A file body stored once under its content hash and shared by all catalog entries with that hash.
+ * The reference count is maintained by database triggers on resource_metadata.
+ */
+@Entity
+@Table(name = "content_blobs")
+@Data
+@NoArgsConstructor
+public class ContentBlob {
+
+    /**
+     * SHA-256 of the content as lowercase hex.
+     */
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(length = 64)
+    private String etag;
+
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @Column(name = "created_at", insertable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_used_at")
+    private LocalDateTime lastUsedAt;
+}
@@ -0,0 +1,88 @@
+package com.example.cloudstorage.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Durable background job for a long-running delete, move or archive operation.
+ * Jobs are claimed by workers with SELECT ... FOR UPDATE SKIP LOCKED, so any number
+ * of application instances can share the queue.
+ */
+@Entity
+@Table(name = "jobs")
+@Data
+@NoArgsConstructor
+public class Job {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private JobType type;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private JobStatus status;
+
+    @Column(name = "source_path", nullable = false, length = 1024)
+    private String sourcePath;
+
+    @Column(name = "target_path", length = 1024)
+    private String targetPath;
+
+    @Column(name = "objects_total")
+    private Long objectsTotal;
+
+    @Column(name = "objects_done", nullable = false)
+    private long objectsDone;
+
+    @Column(name = "bytes_done", nullable = false)
+    private long bytesDone;
+
+    @Column(name = "cancel_requested", nullable = false)
+    private boolean cancelRequested;
+
+    /**
+     * Bucket key of the job output (the ZIP of an archive job).
+     */
+    @Column(name = "result_object")
+    private String resultObject;
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        LocalDateTime now = LocalDateTime.now();
+        if (createdAt == null) {
+            createdAt = now;
+        }
+        updatedAt = now;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.cloudstorage.entity;
+
+/**
+ * Lifecycle of a background job: QUEUED -> RUNNING -> SUCCEEDED | FAILED | CANCELLED.
+ */
+public enum JobStatus {
+    QUEUED,
+    RUNNING,
+    SUCCEEDED,
+    FAILED,
+    CANCELLED;
+
+    public boolean isFinished() {
+        return this == SUCCEEDED || this == FAILED || this == CANCELLED;
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.cloudstorage.entity;
+
+/**
+ * Long-running operations that can be executed as background jobs.
+ */
+public enum JobType {
+    DELETE,
+    MOVE,
+    ARCHIVE
+}
@@ -0,0 +1,104 @@
+package com.example.cloudstorage.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Catalog entry for a single file or directory.
+ * Paths are relative to the user's root; directory paths end with '/'.
+ */
+@Entity
+@Table(name = "resource_metadata")
+@Data
+@NoArgsConstructor
+public class ResourceMetadata {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false, length = 1024)
+    private String path;
+
+    @Column(name = "parent_path", nullable = false, length = 1024)
+    private String parentPath;
+
+    @Column(nullable = false)
+    private String name;
+
+    @Column(nullable = false)
+    private boolean directory;
+
+    private Long size;
+
+    @Column(length = 64)
+    private String etag;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    /**
+     * SHA-256 of a deduplicated file body stored as a shared blob; null if the file is stored
+     * under the user's prefix.
+     */
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    /**
+     * Stable key of a file stored under objects/; null if the file is stored under its path
+     * or as a shared blob.
+     */
+    @Column(name = "object_id")
+    private UUID objectId;
+
+    /**
+     * Hex SHA-256 of the file content computed during the upload; null if unknown.
+     */
+    @Column(name = "checksum_sha256", length = 64)
+    private String checksumSha256;
+
+    /**
+     * When the stored object was last read back and compared with {@link #checksumSha256}.
+     */
+    @Column(name = "checksum_verified_at")
+    private LocalDateTime checksumVerifiedAt;
+
+    /**
+     * Whether the object was missing or did not match its checksum when it was last verified.
+     */
+    @Column(name = "checksum_failed", nullable = false)
+    private boolean checksumFailed;
+
+    /**
+     * Trash entry of the deleted folder this entry belongs to; null for live entries.
+     */
+    @Column(name = "trash_id")
+    private UUID trashId;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        LocalDateTime now = LocalDateTime.now();
+        if (createdAt == null) {
+            createdAt = now;
+        }
+        updatedAt = now;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.cloudstorage.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bytes and catalog entries held by a user.
+ * Maintained by database triggers on resource_metadata; the application only reads it
+ * and occasionally recomputes it to correct drift.
+ * The same row holds the user's quota overrides and the bytes reserved by uploads in flight.
+ */
+@Entity
+@Table(name = "user_storage_usage")
+@Data
+@NoArgsConstructor
+public class StorageUsage {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(name = "bytes_used", nullable = false)
+    private long bytesUsed;
+
+    @Column(name = "object_count", nullable = false)
+    private long objectCount;
+
+    /**
+     * Byte quota of this user; null means the configured default applies.
+     */
+    @Column(name = "quota_bytes")
+    private Long quotaBytes;
+
+    /**
+     * Object quota of this user; null means the configured default applies.
+     */
+    @Column(name = "quota_objects")
+    private Long quotaObjects;
+
+    @Column(name = "reserved_bytes", nullable = false)
+    private long reservedBytes;
+
+    @Column(name = "reserved_objects", nullable = false)
+    private long reservedObjects;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,37 @@
+package com.example.cloudstorage.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A folder deleted into the trash. Its catalog entries reference the trash entry
+ * and stay hidden until the folder is restored or purged after {@code expiresAt}.
+ */
+@Entity
+@Table(name = "trash_entries")
+@Data
+@NoArgsConstructor
+public class TrashEntry {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    /**
+     * Current path of the trashed folder; follows moves of its ancestors.
+     */
+    @Column(nullable = false, length = 1024)
+    private String path;
+
+    @Column(name = "trashed_at", nullable = false)
+    private LocalDateTime trashedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+}
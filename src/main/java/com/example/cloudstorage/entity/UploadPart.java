@@ -0,0 +1,44 @@
+package com.example.cloudstorage.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * A part already stored in MinIO for an {@link UploadSession}.
+ */
+@Entity
+@Table(name = "upload_parts")
+@Data
+@NoArgsConstructor
+public class UploadPart {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "session_id", nullable = false)
+    private UUID sessionId;
+
+    @Column(name = "part_number", nullable = false)
+    private int partNumber;
+
+    @Column(nullable = false, length = 64)
+    private String etag;
+
+    @Column(nullable = false)
+    private long size;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+    }
+}
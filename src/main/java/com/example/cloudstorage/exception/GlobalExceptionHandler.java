@@ -82,6 +82,40 @@ public class GlobalExceptionHandler {
         return createErrorResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
     }
 
+    /**
+     * Handles invalid chunked upload requests (e.g., bad part number or too small parts).
+     */
+    @ExceptionHandler(InvalidUploadException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidUpload(InvalidUploadException ex) {
+        return createErrorResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+
+    /**
+     * Handles malformed or foreign pagination cursors.
+     */
+    @ExceptionHandler(InvalidCursorException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidCursor(InvalidCursorException ex) {
+        return createErrorResponse(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+
+    /**
+     * Handles 413 - Upload that would take the user past the storage quota.
+     */
+    @ExceptionHandler(QuotaExceededException.class)
+    public ResponseEntity<Map<String, String>> handleQuotaExceeded(QuotaExceededException ex) {
+        return createErrorResponse(HttpStatus.CONTENT_TOO_LARGE, ex.getMessage());
+    }
+
+    /**
+     * Handles 500 - Directory move that stopped part way.
+     * The message tells the client which objects are still at the source.
+     */
+    @ExceptionHandler(PartialMoveException.class)
+    public ResponseEntity<Map<String, String>> handlePartialMove(PartialMoveException ex) {
+        log.warn("Partial move: {}", ex.getMessage());
+        return createErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR, ex.getMessage());
+    }
+
     /**
      * Handles missing required request parameters (e.g., ?path= or ?query=).
      */
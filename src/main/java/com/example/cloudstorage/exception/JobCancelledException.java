@@ -0,0 +1,12 @@
+package com.example.cloudstorage.exception;
+
+/**
+ * Exception thrown when a background job stops because its cancellation was requested.
+ * Work completed before the cancellation is kept.
+ */
+public class JobCancelledException extends RuntimeException {
+
+    public JobCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.cloudstorage.exception;
+
+import java.util.List;
+
+/**
+ * Exception thrown when a directory move completed only partly.
+ * Objects listed in {@link #getFailedPaths()} are still at the source; everything else
+ * was moved and is recorded at the target, so the move can be finished by retrying those paths.
+ */
+public class PartialMoveException extends StorageException {
+
+    private final int movedCount;
+    private final List<String> failedPaths;
+
+    public PartialMoveException(String message, int movedCount, List<String> failedPaths) {
+        super(message);
+        this.movedCount = movedCount;
+        this.failedPaths = List.copyOf(failedPaths);
+    }
+
+    public int getMovedCount() {
+        return movedCount;
+    }
+
+    public List<String> getFailedPaths() {
+        return failedPaths;
+    }
+}
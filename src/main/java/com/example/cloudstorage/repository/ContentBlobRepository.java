@@ -0,0 +1,57 @@
+package com.example.cloudstorage.repository;
+
+import com.example.cloudstorage.entity.ContentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+
+    /**
+     * Marks a blob as in use, so garbage collection leaves it alone for the grace period.
+     * Waits for a collection that is removing the blob at the same time.
+     *
+     * @return 1 if the blob exists, 0 if it has to be stored
+     */
+    @Modifying
+    @Query(value = "UPDATE content_blobs SET last_used_at = CURRENT_TIMESTAMP WHERE hash = :hash",
+            nativeQuery = true)
+    int touch(@Param("hash") String hash);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO content_blobs (hash, size, etag)
+            VALUES (:hash, :size, :etag)
+            ON CONFLICT (hash) DO UPDATE SET last_used_at = CURRENT_TIMESTAMP
+            """, nativeQuery = true)
+    int insertOrTouch(@Param("hash") String hash, @Param("size") long size, @Param("etag") String etag);
+
+    @Query(value = """
+            SELECT hash FROM content_blobs
+            WHERE ref_count = 0 AND last_used_at < :cutoff
+            ORDER BY last_used_at
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<String> findUnreferenced(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    /**
+     * Locks a blob if it is still unreferenced and unused since the cutoff.
+     * Blobs locked by another collector are skipped.
+     *
+     * @return The hash, or null if the blob is no longer a candidate
+     */
+    @Query(value = """
+            SELECT hash FROM content_blobs
+            WHERE hash = :hash AND ref_count = 0 AND last_used_at < :cutoff
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    String lockUnreferenced(@Param("hash") String hash, @Param("cutoff") LocalDateTime cutoff);
+
+    @Modifying
+    @Query(value = "DELETE FROM content_blobs WHERE hash = :hash", nativeQuery = true)
+    int deleteByHash(@Param("hash") String hash);
+}
@@ -0,0 +1,86 @@
+package com.example.cloudstorage.repository;
+
+import com.example.cloudstorage.entity.Job;
+import com.example.cloudstorage.entity.JobStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface JobRepository extends JpaRepository<Job, UUID> {
+
+    Optional<Job> findByIdAndUserId(UUID id, Long userId);
+
+    List<Job> findByUserIdOrderByCreatedAtDesc(Long userId);
+
+    List<Job> findByStatusAndUpdatedAtBefore(JobStatus status, LocalDateTime cutoff);
+
+    List<Job> findByFinishedAtBefore(LocalDateTime cutoff);
+
+    /**
+     * Locks the oldest queued job. Rows locked by other workers are skipped,
+     * so concurrent workers never claim the same job. Must run inside a transaction.
+     */
+    @Query(value = """
+            SELECT * FROM jobs
+            WHERE status = 'QUEUED'
+            ORDER BY created_at
+            LIMIT 1
+            FOR UPDATE SKIP LOCKED
+            """, nativeQuery = true)
+    Optional<Job> lockNextQueued();
+
+    /**
+     * Stores progress and serves as the heartbeat of a running job.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE Job j SET j.objectsDone = :objectsDone, j.bytesDone = :bytesDone, j.updatedAt = CURRENT_TIMESTAMP
+            WHERE j.id = :id
+            """)
+    int updateProgress(@Param("id") UUID id,
+                       @Param("objectsDone") long objectsDone,
+                       @Param("bytesDone") long bytesDone);
+
+    @Query("SELECT j.cancelRequested FROM Job j WHERE j.id = :id")
+    boolean isCancelRequested(@Param("id") UUID id);
+
+    /**
+     * Cancels a job that no worker has claimed yet.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE Job j SET j.status = com.example.cloudstorage.entity.JobStatus.CANCELLED,
+                j.finishedAt = CURRENT_TIMESTAMP, j.updatedAt = CURRENT_TIMESTAMP
+            WHERE j.id = :id AND j.status = com.example.cloudstorage.entity.JobStatus.QUEUED
+            """)
+    int cancelIfQueued(@Param("id") UUID id);
+
+    /**
+     * Asks the worker running the job to stop at its next progress check.
+     */
+    @Modifying
+    @Transactional
+    @Query("""
+            UPDATE Job j SET j.cancelRequested = true
+            WHERE j.id = :id AND j.status = com.example.cloudstorage.entity.JobStatus.RUNNING
+            """)
+    int requestCancel(@Param("id") UUID id);
+
+    /**
+     * Heartbeat for jobs running on this instance, so they are not taken for abandoned.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Job j SET j.updatedAt = CURRENT_TIMESTAMP WHERE j.id IN :ids")
+    int touch(@Param("ids") Collection<UUID> ids);
+}
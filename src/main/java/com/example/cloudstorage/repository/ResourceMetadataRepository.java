@@ -0,0 +1,342 @@
+package com.example.cloudstorage.repository;
+
+import com.example.cloudstorage.entity.ResourceMetadata;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+public interface ResourceMetadataRepository extends JpaRepository<ResourceMetadata, Long> {
+
+    Optional<ResourceMetadata> findByUserIdAndPath(Long userId, String path);
+
+    List<ResourceMetadata> findByUserIdAndParentPathAndTrashIdIsNullOrderByPath(Long userId, String parentPath);
+
+    /**
+     * Keyset page over the live direct children of a directory in byte order of the path.
+     */
+    @Query(value = """
+            SELECT * FROM resource_metadata
+            WHERE user_id = :userId AND parent_path = :parentPath AND path > :afterPath AND trash_id IS NULL
+            ORDER BY path
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ResourceMetadata> findChildrenAfter(@Param("userId") Long userId,
+                                             @Param("parentPath") String parentPath,
+                                             @Param("afterPath") String afterPath,
+                                             @Param("limit") int limit);
+
+    List<ResourceMetadata> findByUserIdAndPathIn(Long userId, Collection<String> paths);
+
+    /**
+     * Keyset page over all entries of a user in byte order of the path,
+     * which matches the key order of a recursive MinIO listing.
+     */
+    @Query(value = """
+            SELECT * FROM resource_metadata
+            WHERE user_id = :userId AND path > :afterPath
+            ORDER BY path
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ResourceMetadata> findPageAfter(@Param("userId") Long userId,
+                                         @Param("afterPath") String afterPath,
+                                         @Param("limit") int limit);
+
+    /**
+     * Keyset page over a directory subtree (the directory itself and everything beneath it) in path order.
+     *
+     * @param pattern LIKE pattern of the directory path with wildcards escaped, followed by '%'
+     */
+    @Query(value = """
+            SELECT * FROM resource_metadata
+            WHERE user_id = :userId AND path LIKE :pattern ESCAPE '\\' AND path > :afterPath
+            ORDER BY path
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ResourceMetadata> findSubtreePageAfter(@Param("userId") Long userId,
+                                                @Param("pattern") String pattern,
+                                                @Param("afterPath") String afterPath,
+                                                @Param("limit") int limit);
+
+    /**
+     * Case-insensitive substring search on the names of live resources, served by the trigram GIN index.
+     * Exact matches rank first, then prefix matches, then by trigram similarity.
+     *
+     * @param query Lowercase search query, used for ranking
+     * @param pattern LIKE pattern for the lowercase query with wildcards escaped
+     */
+    @Query(value = """
+            SELECT * FROM resource_metadata
+            WHERE user_id = :userId AND lower(name) LIKE '%' || :pattern || '%' ESCAPE '\\' AND trash_id IS NULL
+            ORDER BY lower(name) = :query DESC,
+                     lower(name) LIKE :pattern || '%' ESCAPE '\\' DESC,
+                     similarity(lower(name), :query) DESC,
+                     path
+            LIMIT :limit OFFSET :offset
+            """, nativeQuery = true)
+    List<ResourceMetadata> searchByName(@Param("userId") Long userId,
+                                        @Param("query") String query,
+                                        @Param("pattern") String pattern,
+                                        @Param("limit") int limit,
+                                        @Param("offset") long offset);
+
+    /**
+     * All matches of {@link #searchByName} in rank order, read through a server-side cursor.
+     * Must be consumed within a transaction.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(value = """
+            SELECT * FROM resource_metadata
+            WHERE user_id = :userId AND lower(name) LIKE '%' || :pattern || '%' ESCAPE '\\' AND trash_id IS NULL
+            ORDER BY lower(name) = :query DESC,
+                     lower(name) LIKE :pattern || '%' ESCAPE '\\' DESC,
+                     similarity(lower(name), :query) DESC,
+                     path
+            """, nativeQuery = true)
+    Stream<ResourceMetadata> streamByName(@Param("userId") Long userId,
+                                          @Param("query") String query,
+                                          @Param("pattern") String pattern);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO resource_metadata (user_id, path, parent_path, name, directory, size, etag, content_type)
+            VALUES (:userId, :path, :parentPath, :name, FALSE, :size, :etag, :contentType)
+            ON CONFLICT (user_id, path) DO UPDATE
+            SET directory = FALSE,
+                size = EXCLUDED.size,
+                etag = EXCLUDED.etag,
+                content_type = EXCLUDED.content_type,
+                content_hash = NULL,
+                object_id = NULL,
+                checksum_sha256 = NULL,
+                checksum_verified_at = NULL,
+                checksum_failed = FALSE,
+                updated_at = CURRENT_TIMESTAMP
+            """, nativeQuery = true)
+    int upsertFile(@Param("userId") Long userId,
+                   @Param("path") String path,
+                   @Param("parentPath") String parentPath,
+                   @Param("name") String name,
+                   @Param("size") long size,
+                   @Param("etag") String etag,
+                   @Param("contentType") String contentType);
+
+    /**
+     * Creates a file entry unless the path is already taken by a file, directory or trashed entry.
+     *
+     * @return 1 if created, 0 if the path was taken
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO resource_metadata (user_id, path, parent_path, name, directory, size, etag, content_type,
+                                           content_hash, object_id, checksum_sha256)
+            VALUES (:userId, :path, :parentPath, :name, FALSE, :size, :etag, :contentType, :contentHash, :objectId,
+                    :checksum)
+            ON CONFLICT (user_id, path) DO NOTHING
+            """, nativeQuery = true)
+    int insertFileIfAbsent(@Param("userId") Long userId,
+                           @Param("path") String path,
+                           @Param("parentPath") String parentPath,
+                           @Param("name") String name,
+                           @Param("size") long size,
+                           @Param("etag") String etag,
+                           @Param("contentType") String contentType,
+                           @Param("contentHash") String contentHash,
+                           @Param("objectId") UUID objectId,
+                           @Param("checksum") String checksum);
+
+    /**
+     * Files with a checksum that have not been verified since the cutoff, never verified ones first.
+     */
+    @Query(value = """
+            SELECT * FROM resource_metadata
+            WHERE checksum_sha256 IS NOT NULL
+              AND (checksum_verified_at IS NULL OR checksum_verified_at < :cutoff)
+            ORDER BY checksum_verified_at NULLS FIRST, id
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ResourceMetadata> findDueForVerification(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    /**
+     * Records the result of a verification, unless the file was moved or replaced in the meantime.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE resource_metadata SET checksum_verified_at = CURRENT_TIMESTAMP, checksum_failed = :failed
+            WHERE id = :id AND path = :path AND checksum_sha256 = :checksum
+            """, nativeQuery = true)
+    int markVerified(@Param("id") Long id,
+                     @Param("path") String path,
+                     @Param("checksum") String checksum,
+                     @Param("failed") boolean failed);
+
+    /**
+     * Files of a user still stored under their path, changed before the cutoff, in path order.
+     */
+    @Query(value = """
+            SELECT * FROM resource_metadata
+            WHERE user_id = :userId AND path > :afterPath AND NOT directory
+              AND content_hash IS NULL AND object_id IS NULL AND updated_at < :cutoff
+            ORDER BY path
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ResourceMetadata> findPathKeyedFilesAfter(@Param("userId") Long userId,
+                                                   @Param("afterPath") String afterPath,
+                                                   @Param("cutoff") LocalDateTime cutoff,
+                                                   @Param("limit") int limit);
+
+    /**
+     * Records new content of a path-keyed file whose object was overwritten in place,
+     * unless the entry has changed since it was read.
+     *
+     * @return 1 if updated, 0 if the file was moved, replaced or removed in the meantime
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE resource_metadata
+            SET size = :size, etag = :etag, content_type = :contentType,
+                checksum_sha256 = NULL, checksum_verified_at = NULL, checksum_failed = FALSE,
+                updated_at = CURRENT_TIMESTAMP
+            WHERE id = :id AND path = :path AND object_id IS NULL AND content_hash IS NULL
+              AND etag IS NOT DISTINCT FROM :previousEtag
+            """, nativeQuery = true)
+    int replaceContent(@Param("id") Long id,
+                       @Param("path") String path,
+                       @Param("previousEtag") String previousEtag,
+                       @Param("size") long size,
+                       @Param("etag") String etag,
+                       @Param("contentType") String contentType);
+
+    /**
+     * Switches a path-keyed file to a stable object key, unless it has changed since it was read.
+     *
+     * @return 1 if switched, 0 if the file was moved, replaced or removed in the meantime
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE resource_metadata
+            SET object_id = :objectId
+            WHERE id = :id AND path = :path AND object_id IS NULL AND content_hash IS NULL
+              AND etag IS NOT DISTINCT FROM :etag
+            """, nativeQuery = true)
+    int assignObjectId(@Param("id") Long id,
+                       @Param("path") String path,
+                       @Param("etag") String etag,
+                       @Param("objectId") UUID objectId);
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO resource_metadata (user_id, path, parent_path, name, directory)
+            VALUES (:userId, :path, :parentPath, :name, TRUE)
+            ON CONFLICT (user_id, path) DO NOTHING
+            """, nativeQuery = true)
+    int insertDirectoryIfAbsent(@Param("userId") Long userId,
+                                @Param("path") String path,
+                                @Param("parentPath") String parentPath,
+                                @Param("name") String name);
+
+    /**
+     * Moves the live entries matching the pattern into the trash.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE resource_metadata SET trash_id = :trashId
+            WHERE user_id = :userId AND path LIKE :pattern ESCAPE '\\' AND trash_id IS NULL
+            """, nativeQuery = true)
+    int trashByPathLike(@Param("userId") Long userId,
+                        @Param("pattern") String pattern,
+                        @Param("trashId") UUID trashId);
+
+    @Modifying
+    @Query(value = "UPDATE resource_metadata SET trash_id = NULL WHERE trash_id = :trashId", nativeQuery = true)
+    int restoreTrashed(@Param("trashId") UUID trashId);
+
+    /**
+     * One batch of the entries of a trash entry, in path order.
+     */
+    @Query(value = """
+            SELECT * FROM resource_metadata
+            WHERE trash_id = :trashId
+            ORDER BY path
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<ResourceMetadata> findTrashed(@Param("trashId") UUID trashId, @Param("limit") int limit);
+
+    @Modifying
+    @Query(value = "DELETE FROM resource_metadata WHERE trash_id = :trashId AND id IN (:ids)", nativeQuery = true)
+    int deleteTrashed(@Param("trashId") UUID trashId, @Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query(value = "DELETE FROM resource_metadata WHERE user_id = :userId AND path LIKE :pattern ESCAPE '\\'",
+            nativeQuery = true)
+    int deleteByPathLike(@Param("userId") Long userId, @Param("pattern") String pattern);
+
+    @Modifying
+    @Query(value = "DELETE FROM resource_metadata WHERE user_id = :userId AND path IN (:paths)",
+            nativeQuery = true)
+    int deleteByPathIn(@Param("userId") Long userId, @Param("paths") Collection<String> paths);
+
+    /**
+     * Counts entries matching the pattern, stopping at {@code limit}.
+     */
+    @Query(value = """
+            SELECT count(*) FROM (
+                SELECT 1 FROM resource_metadata
+                WHERE user_id = :userId AND path LIKE :pattern ESCAPE '\\'
+                LIMIT :limit
+            ) matches
+            """, nativeQuery = true)
+    long countByPathLike(@Param("userId") Long userId, @Param("pattern") String pattern, @Param("limit") long limit);
+
+    /**
+     * Re-parents every entry matching the pattern from {@code fromPath} to {@code toPath}.
+     * The entry at {@code fromPath} itself also gets a new parent and name.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE resource_metadata
+            SET path = :toPath || substring(path from char_length(:fromPath) + 1),
+                parent_path = CASE WHEN path = :fromPath THEN :toParent
+                                   ELSE :toPath || substring(parent_path from char_length(:fromPath) + 1) END,
+                name = CASE WHEN path = :fromPath THEN :toName ELSE name END,
+                updated_at = CURRENT_TIMESTAMP
+            WHERE user_id = :userId AND path LIKE :pattern ESCAPE '\\'
+            """, nativeQuery = true)
+    int movePaths(@Param("userId") Long userId,
+                  @Param("pattern") String pattern,
+                  @Param("fromPath") String fromPath,
+                  @Param("toPath") String toPath,
+                  @Param("toParent") String toParent,
+                  @Param("toName") String toName);
+
+    /**
+     * Same as {@link #movePaths}, restricted to an explicit list of source paths.
+     * Used when a directory is moved in batches and only some objects have moved so far.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE resource_metadata
+            SET path = :toPath || substring(path from char_length(:fromPath) + 1),
+                parent_path = CASE WHEN path = :fromPath THEN :toParent
+                                   ELSE :toPath || substring(parent_path from char_length(:fromPath) + 1) END,
+                name = CASE WHEN path = :fromPath THEN :toName ELSE name END,
+                updated_at = CURRENT_TIMESTAMP
+            WHERE user_id = :userId AND path IN (:paths)
+            """, nativeQuery = true)
+    int movePathsIn(@Param("userId") Long userId,
+                    @Param("paths") Collection<String> paths,
+                    @Param("fromPath") String fromPath,
+                    @Param("toPath") String toPath,
+                    @Param("toParent") String toParent,
+                    @Param("toName") String toName);
+}
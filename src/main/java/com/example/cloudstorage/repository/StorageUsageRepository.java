@@ -0,0 +1,95 @@
+package com.example.cloudstorage.repository;
+
+import com.example.cloudstorage.entity.StorageUsage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+
+public interface StorageUsageRepository extends JpaRepository<StorageUsage, Long> {
+
+    @Modifying
+    @Query(value = """
+            INSERT INTO user_storage_usage (user_id, bytes_used, object_count)
+            VALUES (:userId, 0, 0)
+            ON CONFLICT (user_id) DO NOTHING
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("userId") Long userId);
+
+    /**
+     * Locks the counter row, so catalog changes of the user wait until the transaction ends.
+     */
+    @Query(value = "SELECT user_id FROM user_storage_usage WHERE user_id = :userId FOR UPDATE", nativeQuery = true)
+    Long lock(@Param("userId") Long userId);
+
+    /**
+     * Recomputes the counters from the catalog.
+     *
+     * @return 1 if the counters had drifted and were corrected, 0 otherwise
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE user_storage_usage u
+            SET bytes_used = actual.bytes,
+                object_count = actual.objects,
+                updated_at = CURRENT_TIMESTAMP
+            FROM (
+                SELECT COALESCE(SUM(size) FILTER (WHERE NOT directory), 0) AS bytes, COUNT(*) AS objects
+                FROM resource_metadata
+                WHERE user_id = :userId
+            ) actual
+            WHERE u.user_id = :userId
+              AND (u.bytes_used <> actual.bytes OR u.object_count <> actual.objects)
+            """, nativeQuery = true)
+    int recompute(@Param("userId") Long userId);
+
+    /**
+     * Reserves bytes and objects for an upload if the user stays within the quota,
+     * counting what is stored plus what other uploads have reserved.
+     * The condition is evaluated against the latest row version, so concurrent reservations serialize.
+     *
+     * @param defaultMaxBytes Byte quota for users without their own quota_bytes
+     * @param defaultMaxObjects Object quota for users without their own quota_objects
+     * @return 1 if reserved, 0 if the quota would be exceeded
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE user_storage_usage
+            SET reserved_bytes = reserved_bytes + :bytes,
+                reserved_objects = reserved_objects + :objects,
+                reserved_at = CURRENT_TIMESTAMP
+            WHERE user_id = :userId
+              AND bytes_used + reserved_bytes + :bytes <= COALESCE(quota_bytes, :defaultMaxBytes)
+              AND object_count + reserved_objects + :objects <= COALESCE(quota_objects, :defaultMaxObjects)
+            """, nativeQuery = true)
+    int reserve(@Param("userId") Long userId,
+                @Param("bytes") long bytes,
+                @Param("objects") long objects,
+                @Param("defaultMaxBytes") long defaultMaxBytes,
+                @Param("defaultMaxObjects") long defaultMaxObjects);
+
+    @Modifying
+    @Query(value = """
+            UPDATE user_storage_usage
+            SET reserved_bytes = GREATEST(reserved_bytes - :bytes, 0),
+                reserved_objects = GREATEST(reserved_objects - :objects, 0)
+            WHERE user_id = :userId
+            """, nativeQuery = true)
+    int release(@Param("userId") Long userId, @Param("bytes") long bytes, @Param("objects") long objects);
+
+    /**
+     * Drops reservations left behind by uploads that never released them (e.g. the instance was stopped).
+     *
+     * @return Number of users whose reservations were cleared
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE user_storage_usage
+            SET reserved_bytes = 0, reserved_objects = 0
+            WHERE reserved_at < :cutoff
+              AND (reserved_bytes <> 0 OR reserved_objects <> 0)
+            """, nativeQuery = true)
+    int clearReservationsBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,93 @@
+package com.example.cloudstorage.repository;
+
+import com.example.cloudstorage.entity.TrashEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface TrashEntryRepository extends JpaRepository<TrashEntry, UUID> {
+
+    /**
+     * Creates a trash entry expiring after the retention period, both taken from the database clock.
+     */
+    @Modifying
+    @Query(value = """
+            INSERT INTO trash_entries (id, user_id, path, trashed_at, expires_at)
+            VALUES (:id, :userId, :path, LOCALTIMESTAMP, LOCALTIMESTAMP + make_interval(secs => :retentionSeconds))
+            """, nativeQuery = true)
+    int insert(@Param("id") UUID id,
+               @Param("userId") Long userId,
+               @Param("path") String path,
+               @Param("retentionSeconds") long retentionSeconds);
+
+    /**
+     * Trash entries of a user that can still be restored, newest first.
+     */
+    @Query(value = """
+            SELECT * FROM trash_entries
+            WHERE user_id = :userId AND expires_at > LOCALTIMESTAMP
+            ORDER BY trashed_at DESC
+            """, nativeQuery = true)
+    List<TrashEntry> findRestorable(@Param("userId") Long userId);
+
+    @Query(value = """
+            SELECT * FROM trash_entries
+            WHERE id = :id AND user_id = :userId AND expires_at > LOCALTIMESTAMP
+            """, nativeQuery = true)
+    Optional<TrashEntry> findRestorable(@Param("id") UUID id, @Param("userId") Long userId);
+
+    /**
+     * Expired entries, oldest first. Compared with the database clock, like restores,
+     * so an entry is never restored and purged at the same time.
+     */
+    @Query(value = """
+            SELECT * FROM trash_entries
+            WHERE expires_at <= LOCALTIMESTAMP
+            ORDER BY expires_at
+            LIMIT :limit
+            """, nativeQuery = true)
+    List<TrashEntry> findExpired(@Param("limit") int limit);
+
+    /**
+     * Removes a restorable entry, e.g. once its folder has been restored.
+     *
+     * @return 1 if removed, 0 if the entry does not exist or has expired
+     */
+    @Modifying
+    @Query(value = """
+            DELETE FROM trash_entries
+            WHERE id = :id AND user_id = :userId AND expires_at > LOCALTIMESTAMP
+            """, nativeQuery = true)
+    int deleteRestorable(@Param("id") UUID id, @Param("userId") Long userId);
+
+    /**
+     * Lets a restorable entry expire now, so the next collection purges it.
+     *
+     * @return 1 if updated, 0 if the entry does not exist or has already expired
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE trash_entries SET expires_at = LOCALTIMESTAMP
+            WHERE id = :id AND user_id = :userId AND expires_at > LOCALTIMESTAMP
+            """, nativeQuery = true)
+    int expireNow(@Param("id") UUID id, @Param("userId") Long userId);
+
+    /**
+     * Follows a move of an ancestor directory, see {@link ResourceMetadataRepository#movePaths}.
+     */
+    @Modifying
+    @Query(value = """
+            UPDATE trash_entries
+            SET path = :toPath || substring(path from char_length(:fromPath) + 1)
+            WHERE user_id = :userId AND path LIKE :pattern ESCAPE '\\'
+            """, nativeQuery = true)
+    int movePaths(@Param("userId") Long userId,
+                  @Param("pattern") String pattern,
+                  @Param("fromPath") String fromPath,
+                  @Param("toPath") String toPath);
+}
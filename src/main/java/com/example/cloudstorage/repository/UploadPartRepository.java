@@ -0,0 +1,34 @@
+package com.example.cloudstorage.repository;
+
+import com.example.cloudstorage.entity.UploadPart;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface UploadPartRepository extends JpaRepository<UploadPart, Long> {
+
+    List<UploadPart> findBySessionIdOrderByPartNumber(UUID sessionId);
+
+    /**
+     * Records a part, replacing an earlier upload of the same part number (client retry).
+     */
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO upload_parts (session_id, part_number, etag, size)
+            VALUES (:sessionId, :partNumber, :etag, :size)
+            ON CONFLICT (session_id, part_number) DO UPDATE
+            SET etag = EXCLUDED.etag,
+                size = EXCLUDED.size,
+                created_at = CURRENT_TIMESTAMP
+            """, nativeQuery = true)
+    int upsertPart(@Param("sessionId") UUID sessionId,
+                   @Param("partNumber") int partNumber,
+                   @Param("etag") String etag,
+                   @Param("size") long size);
+}
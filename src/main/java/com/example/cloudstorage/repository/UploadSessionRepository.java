@@ -0,0 +1,32 @@
+package com.example.cloudstorage.repository;
+
+import com.example.cloudstorage.entity.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface UploadSessionRepository extends JpaRepository<UploadSession, UUID> {
+
+    Optional<UploadSession> findByIdAndUserId(UUID id, Long userId);
+
+    List<UploadSession> findByUserIdOrderByCreatedAt(Long userId);
+
+    boolean existsByUserIdAndPath(Long userId, String path);
+
+    List<UploadSession> findByUpdatedAtBefore(LocalDateTime cutoff);
+
+    /**
+     * Marks the session as active so it is not expired while parts are still arriving.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE UploadSession s SET s.updatedAt = CURRENT_TIMESTAMP WHERE s.id = :id")
+    int touch(@Param("id") UUID id);
+}
@@ -0,0 +1,55 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.StorageProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Decides per ZIP entry whether compressing is worth the CPU.
+ * Already compressed formats (images, video, archives) are recognized by
+ * extension or content type, as configured under {@code storage.archive}.
+ */
+@Component
+@RequiredArgsConstructor
+public class ArchiveCompressionPolicy {
+
+    private final StorageProperties storageProperties;
+
+    /**
+     * Checks if an entry is likely to shrink under DEFLATE.
+     *
+     * @param name Object name or path
+     * @param contentType Content type reported by storage, may be null
+     * @return false for already compressed content
+     */
+    public boolean isCompressible(String name, String contentType) {
+        StorageProperties.Archive archive = storageProperties.getArchive();
+
+        int dot = name.lastIndexOf('.');
+        if (dot != -1 && dot > name.lastIndexOf('/')) {
+            String extension = name.substring(dot + 1).toLowerCase(Locale.ROOT);
+            if (archive.getStoredExtensions().contains(extension)) {
+                return false;
+            }
+        }
+
+        if (contentType != null) {
+            String type = contentType.toLowerCase(Locale.ROOT);
+            for (String stored : archive.getStoredContentTypes()) {
+                if (type.startsWith(stored.toLowerCase(Locale.ROOT))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * DEFLATE level for compressible entries.
+     */
+    public int deflateLevel() {
+        return storageProperties.getArchive().getDeflateLevel();
+    }
+}
@@ -1,35 +1,111 @@
 package com.example.cloudstorage.service;
 
 import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.example.cloudstorage.exception.JobCancelledException;
 import com.example.cloudstorage.exception.ResourceNotFoundException;
 import com.example.cloudstorage.security.CustomUserDetails;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.minio.GetObjectArgs;
-import io.minio.ListObjectsArgs;
+import io.minio.GetObjectResponse;
 import io.minio.MinioClient;
-import io.minio.Result;
-import io.minio.messages.Item;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 /**
  * Service for creating ZIP archives from directories.
- * Streams ZIP content directly to the client without buffering in memory.
+ * Streams ZIP content directly to the client without buffering the archive in memory.
+ * Entries are read from the metadata catalog in keyset pages, so deduplicated files,
+ * whose content is a shared blob, are archived like any other file.
+ *
+ * Objects are fetched by a bounded read-ahead stage: up to {@code storage.archive.read-ahead}
+ * objects are requested concurrently on virtual threads while the ZIP writer consumes them
+ * strictly in listing order. Small objects are read fully ahead of time within a byte budget
+ * shared by all archive downloads; larger ones are only opened ahead and streamed when written.
+ *
+ * Already compressed content (see {@link ArchiveCompressionPolicy}) is not recompressed:
+ * buffered entries are written STORED with a CRC computed from the buffer, streamed entries
+ * use DEFLATE level 0 because STORED would need the CRC before the first byte is written.
+ * Entry counts, bytes in/out and writer CPU time are published per method as metrics.
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class ArchiveService {
 
     private final MinioClient minioClient;
     private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
     private final PathService pathService;
+    private final MetadataService metadataService;
+    private final ArchiveCompressionPolicy compressionPolicy;
+    private final MeterRegistry meterRegistry;
+
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final ExecutorService prefetchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore prefetchBudget;
+    private final int prefetchBudgetBytes;
+
+    private static final int LISTING_PAGE_SIZE = 1000;
+
+    public ArchiveService(MinioClient minioClient,
+                          MinioProperties minioProperties,
+                          StorageProperties storageProperties,
+                          PathService pathService,
+                          MetadataService metadataService,
+                          ArchiveCompressionPolicy compressionPolicy,
+                          MeterRegistry meterRegistry) {
+        this.minioClient = minioClient;
+        this.minioProperties = minioProperties;
+        this.storageProperties = storageProperties;
+        this.pathService = pathService;
+        this.metadataService = metadataService;
+        this.compressionPolicy = compressionPolicy;
+        this.meterRegistry = meterRegistry;
+        this.prefetchBudgetBytes = (int) Math.min(
+                storageProperties.getArchive().getPrefetchBudget().toBytes(), Integer.MAX_VALUE);
+        this.prefetchBudget = new Semaphore(prefetchBudgetBytes);
+    }
+
+    /**
+     * An object fetched ahead of the ZIP writer: either its full content or an already opened stream.
+     * {@code crc} is only set for buffered incompressible content, which is written STORED.
+     */
+    private record PrefetchedObject(ResourceMetadata entry, byte[] content, InputStream stream,
+                                    boolean compressible, long crc) {
+    }
+
+    /**
+     * A fetch in the read-ahead window holding {@code cost} bytes of the prefetch budget.
+     */
+    private record PendingFetch(Future<PrefetchedObject> future, int cost) {
+    }
 
     /**
      * Creates a streaming ZIP archive of a directory.
@@ -48,52 +124,232 @@ public class ArchiveService {
             throw new ResourceNotFoundException("Directory not found or empty: " + path);
         }
 
-        return outputStream -> {
-            try (ZipOutputStream zos = new ZipOutputStream(outputStream)) {
-                Iterable<Result<Item>> results = minioClient.listObjects(
-                        ListObjectsArgs.builder()
-                                .bucket(minioProperties.getBucketName())
-                                .prefix(pathService.buildUserPath(user.getId(), path))
-                                .recursive(true)
-                                .build()
-                );
+        return outputStream -> writeZip(user, path, outputStream, JobProgress.NONE);
+    }
 
-                String rootFolderName = extractFolderName(path);
+    /**
+     * Writes a ZIP archive of a directory to the given stream, reporting progress per entry.
+     * Used by background archive jobs; cancellation is checked before each entry.
+     *
+     * @param user User requesting the archive
+     * @param path Directory path (must end with '/')
+     * @param outputStream Target of the archive; not closed by this method
+     * @throws ResourceNotFoundException if directory doesn't exist or is empty
+     * @throws JobCancelledException if cancellation was requested
+     * @throws IOException if reading an object or writing the archive fails
+     */
+    public void writeArchive(CustomUserDetails user, String path, OutputStream outputStream, JobProgress progress)
+            throws IOException {
+        pathService.validatePath(path);
+        pathService.validateDirectoryPath(path);
 
-                for (Result<Item> res : results) {
-                    Item item = res.get();
+        if (!hasDirectoryContent(user, path)) {
+            throw new ResourceNotFoundException("Directory not found or empty: " + path);
+        }
 
-                    String relative = pathService.stripUserPath(item.objectName(), user.getId());
+        writeZip(user, path, StreamUtils.nonClosing(outputStream), progress);
+    }
 
-                    String entryName = rootFolderName + "/" + relative.substring(path.length());
-                    if (entryName.startsWith("/")) {
-                        entryName = entryName.substring(1);
-                    }
+    private void writeZip(CustomUserDetails user, String path, OutputStream outputStream, JobProgress progress)
+            throws IOException {
+        Deque<PendingFetch> window = new ArrayDeque<>();
+        try (ZipOutputStream zos = new ZipOutputStream(outputStream)) {
+            Iterator<ResourceMetadata> entries = new SubtreeIterator(user.getId(), path);
+
+            String rootFolderName = extractFolderName(path);
+            int readAhead = storageProperties.getArchive().getReadAhead();
+            ResourceMetadata pending = null;
+
+            while (true) {
+                if (progress.isCancelled()) {
+                    throw new JobCancelledException("Archive of " + path + " cancelled");
+                }
 
-                    if (item.isDir()) {
-                        if (!entryName.endsWith("/")) {
-                            entryName += "/";
+                // Keep the read-ahead window full; only block on the budget when nothing is in flight
+                while (window.size() < readAhead) {
+                    if (pending == null) {
+                        if (!entries.hasNext()) {
+                            break;
                         }
-                        zos.putNextEntry(new ZipEntry(entryName));
-                        zos.closeEntry();
-                    } else {
-                        zos.putNextEntry(new ZipEntry(entryName));
-                        try (InputStream is = getObjectStream(user, relative)) {
-                            is.transferTo(zos);
+                        pending = entries.next();
+                    }
+                    int cost = bufferedCost(pending);
+                    if (cost > 0 && !prefetchBudget.tryAcquire(cost)) {
+                        if (!window.isEmpty()) {
+                            break;
                         }
-                        zos.closeEntry();
+                        prefetchBudget.acquire(cost);
                     }
+                    window.add(prefetch(pending, cost));
+                    pending = null;
                 }
-            } catch (Exception e) {
-                log.error("ZIP stream error during object reading or writing to client", e);
-                throw new java.io.IOException("Error during ZIP streaming from MinIO.", e);
+
+                PendingFetch next = window.poll();
+                if (next == null) {
+                    break;
+                }
+                progress.advance(1, writeEntry(zos, next, path, rootFolderName));
+            }
+        } catch (JobCancelledException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("ZIP stream error during object reading or writing to client", e);
+            throw new IOException("Error during ZIP streaming from MinIO.", e);
+        } finally {
+            discard(window);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * Bytes of the prefetch budget an entry needs; 0 if it is not buffered.
+     */
+    private int bufferedCost(ResourceMetadata entry) {
+        long maxBuffered = storageProperties.getArchive().getMaxBufferedEntrySize().toBytes();
+        if (entry.isDirectory() || sizeOf(entry) > maxBuffered) {
+            return 0;
+        }
+        return (int) Math.min(sizeOf(entry), prefetchBudgetBytes);
+    }
+
+    private PendingFetch prefetch(ResourceMetadata entry, int cost) {
+        if (entry.isDirectory()) {
+            return new PendingFetch(CompletableFuture.completedFuture(
+                    new PrefetchedObject(entry, null, null, false, 0)), cost);
+        }
+        try {
+            return new PendingFetch(prefetchExecutor.submit(() -> {
+                GetObjectResponse stream = getObjectStream(entry);
+                String contentType = entry.getContentType() != null
+                        ? entry.getContentType()
+                        : stream.headers().get(HttpHeaders.CONTENT_TYPE);
+                boolean compressible = compressionPolicy.isCompressible(entry.getPath(), contentType);
+                if (cost == 0) {
+                    return new PrefetchedObject(entry, null, stream, compressible, 0);
+                }
+                try (stream) {
+                    byte[] content = stream.readAllBytes();
+                    long crc = 0;
+                    if (!compressible) {
+                        CRC32 crc32 = new CRC32();
+                        crc32.update(content);
+                        crc = crc32.getValue();
+                    }
+                    return new PrefetchedObject(entry, content, null, compressible, crc);
+                }
+            }), cost);
+        } catch (RuntimeException e) {
+            prefetchBudget.release(cost);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the entry of a fetched object.
+     *
+     * @return Bytes of object content written
+     */
+    private long writeEntry(ZipOutputStream zos, PendingFetch fetch, String path, String rootFolderName)
+            throws Exception {
+        try {
+            PrefetchedObject object = fetch.future().get();
+            String entryName = rootFolderName + "/" + object.entry().getPath().substring(path.length());
+            if (entryName.startsWith("/")) {
+                entryName = entryName.substring(1);
+            }
+
+            if (object.entry().isDirectory()) {
+                if (!entryName.endsWith("/")) {
+                    entryName += "/";
+                }
+                zos.putNextEntry(new ZipEntry(entryName));
+                zos.closeEntry();
+                return 0;
             }
-        };
+            writeFileEntry(zos, object, entryName);
+            return sizeOf(object.entry());
+        } finally {
+            prefetchBudget.release(fetch.cost());
+        }
     }
 
+    private void writeFileEntry(ZipOutputStream zos, PrefetchedObject object, String entryName)
+            throws IOException {
+        ZipEntry entry = new ZipEntry(entryName);
+        String method;
+        if (object.compressible()) {
+            method = "deflated";
+            entry.setMethod(ZipEntry.DEFLATED);
+            zos.setLevel(compressionPolicy.deflateLevel());
+        } else if (object.content() != null) {
+            method = "stored";
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(object.content().length);
+            entry.setCompressedSize(object.content().length);
+            entry.setCrc(object.crc());
+        } else {
+            method = "deflated-level0";
+            entry.setMethod(ZipEntry.DEFLATED);
+            zos.setLevel(Deflater.NO_COMPRESSION);
+        }
+
+        long cpuStart = threadCpuTime();
+        zos.putNextEntry(entry);
+        if (object.content() != null) {
+            zos.write(object.content());
+        } else {
+            try (InputStream is = object.stream()) {
+                is.transferTo(zos);
+            }
+        }
+        zos.closeEntry();
+        long cpuTime = threadCpuTime() - cpuStart;
+
+        meterRegistry.counter("storage.archive.entries", "method", method).increment();
+        meterRegistry.counter("storage.archive.bytes.in", "method", method).increment(entry.getSize());
+        meterRegistry.counter("storage.archive.bytes.out", "method", method).increment(entry.getCompressedSize());
+        if (cpuStart >= 0) {
+            meterRegistry.timer("storage.archive.cpu", "method", method).record(cpuTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * CPU time of the writer thread, or -1 where the JVM does not measure it (e.g. virtual threads).
+     */
+    private long threadCpuTime() {
+        try {
+            return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+        } catch (UnsupportedOperationException e) {
+            return -1;
+        }
+    }
 
     /**
-     * Checks if directory has any content.
+     * Releases fetches that were never written (e.g. the client disconnected).
+     * In-flight fetches are awaited rather than cancelled, so no opened stream is lost.
+     */
+    private void discard(Deque<PendingFetch> window) {
+        for (PendingFetch fetch : window) {
+            try {
+                InputStream stream = fetch.future().get().stream();
+                if (stream != null) {
+                    stream.close();
+                }
+            } catch (Exception e) {
+                log.debug("Discarded prefetch failed", e);
+            } finally {
+                prefetchBudget.release(fetch.cost());
+            }
+        }
+        window.clear();
+    }
+
+    /**
+     * Checks if directory exists in the metadata catalog.
      */
     private boolean hasDirectoryContent(CustomUserDetails user, String path) {
         if ("/".equals(path)) {
@@ -101,13 +357,7 @@ public class ArchiveService {
         }
         
         try {
-            String prefix = pathService.buildUserPath(user.getId(), path);
-            return minioClient.listObjects(ListObjectsArgs.builder()
-                            .bucket(minioProperties.getBucketName())
-                            .prefix(prefix)
-                            .maxKeys(1)
-                            .build())
-                    .iterator().hasNext();
+            return metadataService.exists(user.getId(), path);
         } catch (Exception e) {
             log.error("Error checking directory content for path: {}", path, e);
             return false;
@@ -139,13 +389,56 @@ public class ArchiveService {
         }
     }
 
+    private static long sizeOf(ResourceMetadata entry) {
+        return entry.getSize() != null ? entry.getSize() : 0;
+    }
+
     /**
-     * Gets InputStream for a MinIO object.
+     * Gets InputStream for the object holding a file's content; response headers carry the content type.
      */
-    private InputStream getObjectStream(CustomUserDetails user, String path) throws Exception {
+    private GetObjectResponse getObjectStream(ResourceMetadata entry) throws Exception {
         return minioClient.getObject(GetObjectArgs.builder()
                 .bucket(minioProperties.getBucketName())
-                .object(pathService.buildUserPath(user.getId(), path))
+                .object(pathService.buildObjectPath(entry))
                 .build());
     }
+
+    /**
+     * Iterates a directory subtree in path order, reading one keyset page of the catalog at a time.
+     */
+    private class SubtreeIterator implements Iterator<ResourceMetadata> {
+
+        private final Long userId;
+        private final String directory;
+        private Iterator<ResourceMetadata> page = List.<ResourceMetadata>of().iterator();
+        private String lastPath = "";
+        private boolean exhausted;
+
+        SubtreeIterator(Long userId, String directory) {
+            this.userId = userId;
+            this.directory = directory;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && !exhausted) {
+                List<ResourceMetadata> rows = metadataService.listSubtree(userId, directory, lastPath, LISTING_PAGE_SIZE);
+                exhausted = rows.size() < LISTING_PAGE_SIZE;
+                if (!rows.isEmpty()) {
+                    lastPath = rows.getLast().getPath();
+                }
+                // Folders in the trash are not part of the archive
+                page = rows.stream().filter(row -> row.getTrashId() == null).iterator();
+            }
+            return page.hasNext();
+        }
+
+        @Override
+        public ResourceMetadata next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package com.example.cloudstorage.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory pipe between one writer and one reader thread, holding at most a fixed number of chunks.
+ *
+ * Replaces {@link java.io.PipedInputStream}, which waits on an object monitor and therefore
+ * pins a virtual thread to its carrier for as long as the other side is slow.
+ * Closing the reader makes further writes fail instead of blocking forever.
+ */
+final class BlockingPipe {
+
+    private static final byte[] END = new byte[0];
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+
+    private final BlockingQueue<byte[]> chunks;
+    private final int chunkSize;
+    private volatile boolean readerClosed;
+
+    BlockingPipe(int chunkSize, int capacity) {
+        this.chunkSize = chunkSize;
+        this.chunks = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Stream for the writer thread. Closing it signals the end of data to the reader.
+     */
+    OutputStream sink() {
+        return new OutputStream() {
+            private byte[] buffer = new byte[chunkSize];
+            private int count;
+            private boolean closed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (closed) {
+                    throw new IOException("Pipe writer closed");
+                }
+                while (len > 0) {
+                    int n = Math.min(len, buffer.length - count);
+                    System.arraycopy(b, off, buffer, count, n);
+                    count += n;
+                    off += n;
+                    len -= n;
+                    if (count == buffer.length) {
+                        put(buffer);
+                        buffer = new byte[chunkSize];
+                        count = 0;
+                    }
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (count > 0) {
+                    byte[] last = new byte[count];
+                    System.arraycopy(buffer, 0, last, 0, count);
+                    put(last);
+                }
+                put(END);
+            }
+        };
+    }
+
+    /**
+     * Stream for the reader thread.
+     */
+    InputStream source() {
+        return new InputStream() {
+            private byte[] current;
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (current == null || position == current.length) {
+                    if (current == END) {
+                        return -1;
+                    }
+                    current = take();
+                    position = 0;
+                    if (current == END) {
+                        return -1;
+                    }
+                }
+                int n = Math.min(len, current.length - position);
+                System.arraycopy(current, position, b, off, n);
+                position += n;
+                return n;
+            }
+
+            @Override
+            public void close() {
+                readerClosed = true;
+                chunks.clear();
+            }
+        };
+    }
+
+    private void put(byte[] chunk) throws IOException {
+        try {
+            while (!chunks.offer(chunk, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (readerClosed) {
+                    throw new IOException("Pipe reader closed");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing to pipe");
+        }
+    }
+
+    private byte[] take() throws IOException {
+        if (readerClosed) {
+            throw new IOException("Pipe reader closed");
+        }
+        try {
+            return chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading from pipe");
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.errors.ErrorResponseException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service re-verifying stored objects against the SHA-256 recorded when they were uploaded.
+ *
+ * Each run reads the files whose last verification is older than storage.integrity.reverify-after,
+ * never verified ones first, at no more than storage.integrity.scrub-rate bytes per second.
+ * The result is recorded on the catalog entry; a missing or mismatching object is logged as an error,
+ * counted in storage.scrub.objects and marked with checksum_failed, which a new upload of the path clears.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChecksumScrubService {
+
+    private final MinioClient minioClient;
+    private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
+    private final PathService pathService;
+    private final MetadataService metadataService;
+    private final MeterRegistry meterRegistry;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Summary of one scrub run.
+     *
+     * @param verified Objects that matched their checksum
+     * @param failed Objects that were missing or did not match
+     * @param skipped Files that changed during the run or could not be read; they are retried next run
+     */
+    public record ScrubReport(int verified, int failed, int skipped) {
+    }
+
+    private enum Result { OK, MISMATCH, MISSING, SKIPPED }
+
+    /**
+     * Spaces reads out to a fixed number of bytes per second. A read is let through at once and
+     * delays the next one by its size, so a run never reads faster than the rate on average.
+     */
+    private static final class Throttle {
+
+        private final double nanosPerByte;
+        private long nextFree = System.nanoTime();
+
+        Throttle(long bytesPerSecond) {
+            if (bytesPerSecond <= 0) {
+                throw new IllegalArgumentException("Scrub rate must be positive: " + bytesPerSecond);
+            }
+            this.nanosPerByte = (double) TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        }
+
+        void acquire(int bytes) throws InterruptedIOException {
+            long now = System.nanoTime();
+            long wait = nextFree - now;
+            nextFree = Math.max(nextFree, now) + (long) (bytes * nanosPerByte);
+            if (wait <= 0) {
+                return;
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling verification");
+            }
+        }
+    }
+
+    /**
+     * Verifies the files that are due while scrubbing is enabled.
+     */
+    @Scheduled(
+            initialDelayString = "${storage.integrity.scrub-initial-delay:PT30M}",
+            fixedDelayString = "${storage.integrity.scrub-interval:PT1H}"
+    )
+    public void scrubDue() {
+        StorageProperties.Integrity integrity = storageProperties.getIntegrity();
+        if (!integrity.isScrubEnabled()) {
+            return;
+        }
+        scrub(LocalDateTime.now().minus(integrity.getReverifyAfter()));
+    }
+
+    /**
+     * Verifies one batch of files not verified since {@code cutoff}.
+     *
+     * @param cutoff Files verified after this are left alone
+     * @return Counts of verified, failed and skipped files
+     */
+    public ScrubReport scrub(LocalDateTime cutoff) {
+        StorageProperties.Integrity integrity = storageProperties.getIntegrity();
+        Throttle rate = new Throttle(integrity.getScrubRate().toBytes());
+
+        int verified = 0;
+        int failed = 0;
+        int skipped = 0;
+        for (ResourceMetadata entry : metadataService.listDueForVerification(cutoff, integrity.getScrubBatchSize())) {
+            Result result = verify(entry, rate);
+            // Recorded only if the entry is unchanged: a file moved or replaced while it was read is not damaged
+            boolean recorded = result != Result.SKIPPED && metadataService.markVerified(entry, result != Result.OK);
+            if (!recorded) {
+                result = Result.SKIPPED;
+            }
+            meterRegistry.counter("storage.scrub.objects", "result", result.name().toLowerCase(Locale.ROOT)).increment();
+
+            switch (result) {
+                case OK -> verified++;
+                case MISMATCH, MISSING -> {
+                    log.error("Integrity check failed for {} of user {}: object {} is {}, expected SHA-256 {}",
+                            entry.getPath(), entry.getUserId(), pathService.buildObjectPath(entry),
+                            result == Result.MISSING ? "missing" : "corrupted", entry.getChecksumSha256());
+                    failed++;
+                }
+                case SKIPPED -> skipped++;
+            }
+        }
+
+        if (verified + failed + skipped > 0) {
+            log.info("Verified stored objects: {} ok, {} failed, {} skipped", verified, failed, skipped);
+        }
+        return new ScrubReport(verified, failed, skipped);
+    }
+
+    /**
+     * Reads one object at the scrub rate and compares its SHA-256 with the recorded one.
+     */
+    private Result verify(ResourceMetadata entry, Throttle rate) {
+        String objectName = pathService.buildObjectPath(entry);
+        MessageDigest digest = Checksums.sha256();
+        try (InputStream content = minioClient.getObject(GetObjectArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .object(objectName)
+                .build())) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = content.read(buffer)) != -1) {
+                if (read > 0) {
+                    rate.acquire(read);
+                    digest.update(buffer, 0, read);
+                }
+            }
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                return Result.MISSING;
+            }
+            log.warn("Failed to read {} for verification", objectName, e);
+            return Result.SKIPPED;
+        } catch (Exception e) {
+            log.warn("Failed to read {} for verification", objectName, e);
+            return Result.SKIPPED;
+        }
+        return Checksums.hex(digest).equalsIgnoreCase(entry.getChecksumSha256()) ? Result.OK : Result.MISMATCH;
+    }
+}
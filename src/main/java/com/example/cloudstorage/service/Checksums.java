@@ -0,0 +1,91 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.exception.InvalidUploadException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 content checksums and their HTTP representations.
+ *
+ * Checksums are kept as lowercase hex in the catalog. On the wire they are sent base64 encoded,
+ * as {@code Repr-Digest: sha-256=:<base64>:} (RFC 9530) and {@code Digest: sha-256=<base64>} (RFC 3230).
+ */
+public final class Checksums {
+
+    private static final String SHA_256 = "sha-256=";
+
+    private Checksums() {
+    }
+
+    /**
+     * Creates a SHA-256 digest; every Java runtime provides the algorithm.
+     */
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Completes a digest and returns it as lowercase hex.
+     */
+    public static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Formats a hex checksum as an RFC 9530 {@code Repr-Digest} / {@code Content-Digest} value.
+     */
+    public static String toStructuredDigest(String hex) {
+        return SHA_256 + ":" + toBase64(hex) + ":";
+    }
+
+    /**
+     * Formats a hex checksum as an RFC 3230 {@code Digest} value.
+     */
+    public static String toLegacyDigest(String hex) {
+        return SHA_256 + toBase64(hex);
+    }
+
+    /**
+     * Reads the SHA-256 member of a digest header in either format; other algorithms are ignored.
+     *
+     * @param header Header value such as {@code sha-256=:<base64>:, md5=...}, may be null
+     * @return Hex checksum, or null if the header carries no SHA-256 digest
+     * @throws InvalidUploadException if the SHA-256 member is not a valid digest
+     */
+    public static String fromDigestHeader(String header) {
+        if (header == null) {
+            return null;
+        }
+        for (String member : header.split(",")) {
+            String trimmed = member.strip();
+            if (!trimmed.regionMatches(true, 0, SHA_256, 0, SHA_256.length())) {
+                continue;
+            }
+            String value = trimmed.substring(SHA_256.length());
+            if (value.length() >= 2 && value.startsWith(":") && value.endsWith(":")) {
+                value = value.substring(1, value.length() - 1);
+            }
+            try {
+                byte[] digest = Base64.getDecoder().decode(value);
+                if (digest.length == 32) {
+                    return HexFormat.of().formatHex(digest);
+                }
+            } catch (IllegalArgumentException e) {
+                // Reported below
+            }
+            throw new InvalidUploadException("Invalid SHA-256 digest: " + trimmed);
+        }
+        return null;
+    }
+
+    private static String toBase64(String hex) {
+        return Base64.getEncoder().encodeToString(HexFormat.of().parseHex(hex));
+    }
+}
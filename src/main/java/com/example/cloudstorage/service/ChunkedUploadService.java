@@ -0,0 +1,377 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.dto.UploadPartInfo;
+import com.example.cloudstorage.dto.UploadSessionInfo;
+import com.example.cloudstorage.entity.UploadPart;
+import com.example.cloudstorage.entity.UploadSession;
+import com.example.cloudstorage.exception.InvalidPathException;
+import com.example.cloudstorage.exception.InvalidUploadException;
+import com.example.cloudstorage.exception.QuotaExceededException;
+import com.example.cloudstorage.exception.ResourceAlreadyExistsException;
+import com.example.cloudstorage.exception.ResourceNotFoundException;
+import com.example.cloudstorage.exception.StorageException;
+import com.example.cloudstorage.repository.UploadPartRepository;
+import com.example.cloudstorage.repository.UploadSessionRepository;
+import com.example.cloudstorage.security.CustomUserDetails;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.RemoveObjectArgs;
+import io.minio.UploadPartResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Part;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Service for resumable chunked uploads built on MinIO multipart upload.
+ *
+ * Protocol:
+ * 1. Initiate a session for the target file path
+ * 2. Upload parts (in any order, in parallel, retrying any part as often as needed)
+ * 3. Complete the session to assemble the object, or abort it
+ *
+ * Session and part state is kept in PostgreSQL, so a client can query the stored parts
+ * and resume after a failure. Parts are streamed from the request body to MinIO
+ * without going through the servlet multipart machinery.
+ * Completion only creates files: a path-keyed object is assembled with {@code If-None-Match: *}
+ * and the catalog entry is inserted only if the path is still free.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+
+    private final MinioAsyncClient minioAsyncClient;
+    private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
+    private final PathService pathService;
+    private final ResourceInfoBuilder resourceInfoBuilder;
+    private final DirectoryService directoryService;
+    private final MetadataService metadataService;
+    private final StorageUsageService storageUsageService;
+    private final UploadSessionRepository sessionRepository;
+    private final UploadPartRepository partRepository;
+
+    private static final String SLASH = "/";
+    private static final int MAX_PART_NUMBER = 10_000;
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * Starts a chunked upload for a new file.
+     *
+     * @param user User uploading the file
+     * @param path Full file path (must not end with '/')
+     * @param contentType Content type of the final object, may be null
+     * @return New session with recommended part size
+     * @throws InvalidPathException if path is invalid or a directory
+     * @throws ResourceAlreadyExistsException if the file exists or an upload for it is in progress
+     * @throws QuotaExceededException if the user has no room for another file
+     * @throws StorageException if MinIO operation fails
+     */
+    public UploadSessionInfo initiate(CustomUserDetails user, String path, String contentType) {
+        validateFilePath(path);
+        storageUsageService.checkQuota(user.getId(), 0, 1);
+
+        if (metadataService.exists(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("File already exists: " + path);
+        }
+        if (metadataService.isHeldByTrash(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + path);
+        }
+        if (sessionRepository.existsByUserIdAndPath(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("Upload already in progress: " + path);
+        }
+
+        UploadSession session = new UploadSession();
+        session.setUserId(user.getId());
+        session.setPath(path);
+        session.setContentType(contentType);
+        if (storageProperties.getLayout().isObjectIds()) {
+            session.setObjectId(UUID.randomUUID());
+        }
+
+        String objectName = objectName(session);
+        String uploadId;
+        try {
+            uploadId = minioAsyncClient.createMultipartUploadAsync(
+                    minioProperties.getBucketName(), null, objectName, contentHeaders(contentType), null
+            ).get().result().uploadId();
+        } catch (Exception e) {
+            log.error("Failed to initiate chunked upload: {}", path, e);
+            throw new StorageException("Failed to initiate upload: " + path, e);
+        }
+
+        session.setUploadId(uploadId);
+        try {
+            session = sessionRepository.saveAndFlush(session);
+        } catch (DataIntegrityViolationException e) {
+            abortQuietly(objectName, uploadId);
+            throw new ResourceAlreadyExistsException("Upload already in progress: " + path);
+        }
+
+        log.info("Chunked upload initiated for user {}: path='{}', session={}", user.getId(), path, session.getId());
+        return toInfo(session, List.of());
+    }
+
+    /**
+     * Returns the current state of a session, including parts already stored.
+     *
+     * @throws ResourceNotFoundException if the session does not exist or belongs to another user
+     */
+    public UploadSessionInfo getSession(CustomUserDetails user, UUID sessionId) {
+        UploadSession session = findSession(user, sessionId);
+        return toInfo(session, partRepository.findBySessionIdOrderByPartNumber(sessionId));
+    }
+
+    /**
+     * Lists the user's sessions that are still in progress.
+     */
+    public List<UploadSessionInfo> listSessions(CustomUserDetails user) {
+        return sessionRepository.findByUserIdOrderByCreatedAt(user.getId()).stream()
+                .map(session -> toInfo(session, partRepository.findBySessionIdOrderByPartNumber(session.getId())))
+                .toList();
+    }
+
+    /**
+     * Streams one part to MinIO. Uploading the same part number again replaces it.
+     *
+     * @param user User owning the session
+     * @param sessionId Upload session
+     * @param partNumber Part number (1-10000)
+     * @param content Part content; not closed by this method
+     * @param length Exact part length in bytes
+     * @return Stored part
+     * @throws InvalidUploadException if part number or length is out of range
+     * @throws ResourceNotFoundException if the session does not exist
+     * @throws QuotaExceededException if the part alone does not fit into the remaining quota
+     * @throws StorageException if MinIO operation fails
+     */
+    public UploadPartInfo uploadPart(CustomUserDetails user, UUID sessionId, int partNumber,
+                                     InputStream content, long length) {
+        if (partNumber < 1 || partNumber > MAX_PART_NUMBER) {
+            throw new InvalidUploadException("Part number must be between 1 and " + MAX_PART_NUMBER);
+        }
+        if (length <= 0) {
+            throw new InvalidUploadException("Part must not be empty and Content-Length is required");
+        }
+        long maxPartSize = storageProperties.getUpload().getMaxPartSize().toBytes();
+        if (length > maxPartSize) {
+            throw new InvalidUploadException("Part size must not exceed " + maxPartSize + " bytes");
+        }
+
+        UploadSession session = findSession(user, sessionId);
+        storageUsageService.checkQuota(user.getId(), length, 0);
+
+        try {
+            UploadPartResponse response = minioAsyncClient.uploadPartAsync(
+                    minioProperties.getBucketName(), null, objectName(session),
+                    content, length, session.getUploadId(), partNumber, null, null
+            ).get();
+
+            String etag = MetadataService.normalizeEtag(response.etag());
+            partRepository.upsertPart(sessionId, partNumber, etag, length);
+            sessionRepository.touch(sessionId);
+
+            return UploadPartInfo.builder()
+                    .partNumber(partNumber)
+                    .size(length)
+                    .etag(etag)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to upload part {} of session {}", partNumber, sessionId, e);
+            throw new StorageException("Failed to upload part " + partNumber, e);
+        }
+    }
+
+    /**
+     * Assembles the stored parts into the final object and records it in the catalog.
+     * The assembled size is reserved against the quota first; the session is kept when it does not fit,
+     * so the client can free space and complete again, or abort.
+     *
+     * @return ResourceInfo of the uploaded file
+     * @throws InvalidUploadException if no parts were uploaded or a non-last part is below 5 MiB
+     * @throws ResourceAlreadyExistsException if the file was created in the meantime; the session is discarded.
+     *         Also if a folder holding the path was moved to the trash; the session is kept
+     * @throws QuotaExceededException if the file does not fit into the user's quota
+     * @throws ResourceNotFoundException if the session does not exist
+     * @throws StorageException if MinIO operation fails
+     */
+    public ResourceInfo complete(CustomUserDetails user, UUID sessionId) {
+        UploadSession session = findSession(user, sessionId);
+        String path = session.getPath();
+        List<UploadPart> parts = partRepository.findBySessionIdOrderByPartNumber(sessionId);
+
+        if (parts.isEmpty()) {
+            throw new InvalidUploadException("No parts have been uploaded");
+        }
+        for (int i = 0; i < parts.size() - 1; i++) {
+            if (parts.get(i).getSize() < MIN_PART_SIZE) {
+                throw new InvalidUploadException("Part " + parts.get(i).getPartNumber()
+                        + " is smaller than the minimum of " + MIN_PART_SIZE + " bytes; only the last part may be smaller");
+            }
+        }
+        if (metadataService.exists(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("File already exists: " + path);
+        }
+        // The session stays open, so the upload can be completed once the folder is restored or purged
+        if (metadataService.isHeldByTrash(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + path);
+        }
+
+        Part[] minioParts = parts.stream()
+                .map(part -> new Part(part.getPartNumber(), part.getEtag()))
+                .toArray(Part[]::new);
+        long size = parts.stream().mapToLong(UploadPart::getSize).sum();
+
+        try (QuotaReservation ignored = storageUsageService.reserve(user.getId(), size, 1)) {
+            ObjectWriteResponse response = completeCreateOnly(session, minioParts);
+
+            directoryService.ensureParentDirectories(user, path);
+            boolean created = metadataService.createFile(user.getId(), path, size, response.etag(),
+                    session.getContentType(), null, session.getObjectId(), null);
+            sessionRepository.delete(session);
+            if (!created) {
+                minioAsyncClient.removeObject(RemoveObjectArgs.builder()
+                        .bucket(minioProperties.getBucketName())
+                        .object(objectName(session))
+                        .build()).get();
+                throw new ResourceAlreadyExistsException("File already exists: " + path);
+            }
+
+            log.info("Chunked upload completed for user {}: path='{}', {} parts, {} bytes",
+                    user.getId(), path, parts.size(), size);
+            return resourceInfoBuilder.build(path, size, false);
+        } catch (QuotaExceededException | ResourceAlreadyExistsException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to complete chunked upload: {}", path, e);
+            throw new StorageException("Failed to complete upload: " + path, e);
+        }
+    }
+
+    /**
+     * Aborts a session and discards all stored parts.
+     *
+     * @throws ResourceNotFoundException if the session does not exist
+     */
+    public void abort(CustomUserDetails user, UUID sessionId) {
+        UploadSession session = findSession(user, sessionId);
+        abortQuietly(objectName(session), session.getUploadId());
+        sessionRepository.delete(session);
+    }
+
+    /**
+     * Aborts sessions that had no activity within the configured TTL,
+     * so abandoned parts do not occupy storage forever.
+     */
+    @Scheduled(fixedDelayString = "${storage.upload.cleanup-interval:PT1H}")
+    public void abortExpiredSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(storageProperties.getUpload().getSessionTtl());
+
+        for (UploadSession session : sessionRepository.findByUpdatedAtBefore(cutoff)) {
+            abortQuietly(objectName(session), session.getUploadId());
+            sessionRepository.delete(session);
+            log.info("Expired chunked upload removed: user {}, path='{}'", session.getUserId(), session.getPath());
+        }
+    }
+
+    private UploadSession findSession(CustomUserDetails user, UUID sessionId) {
+        return sessionRepository.findByIdAndUserId(sessionId, user.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Upload session not found: " + sessionId));
+    }
+
+    /**
+     * Assembles the parts; an object stored under its path is only created if none exists yet.
+     * A session whose path is taken is aborted and removed.
+     *
+     * @throws ResourceAlreadyExistsException if an object already exists at the path
+     */
+    private ObjectWriteResponse completeCreateOnly(UploadSession session, Part[] parts) throws Exception {
+        Multimap<String, String> conditions = HashMultimap.create();
+        if (session.getObjectId() == null) {
+            conditions.put("If-None-Match", "*");
+        }
+        try {
+            return minioAsyncClient.completeMultipartUploadAsync(
+                    minioProperties.getBucketName(), null, objectName(session),
+                    session.getUploadId(), parts, conditions, null
+            ).get();
+        } catch (Exception e) {
+            if (MinioFutures.unwrap(e) instanceof ErrorResponseException error
+                    && "PreconditionFailed".equals(error.errorResponse().code())) {
+                abortQuietly(objectName(session), session.getUploadId());
+                sessionRepository.delete(session);
+                throw new ResourceAlreadyExistsException("File already exists: " + session.getPath());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Key of the object a session assembles: its object id if it has one, otherwise its path.
+     */
+    private String objectName(UploadSession session) {
+        return session.getObjectId() != null
+                ? pathService.buildObjectIdPath(session.getObjectId())
+                : pathService.buildUserPath(session.getUserId(), session.getPath());
+    }
+
+    private void validateFilePath(String path) {
+        pathService.validatePath(path);
+
+        if (path.isEmpty() || path.endsWith(SLASH)) {
+            throw new InvalidPathException("Upload path must point to a file, not a directory");
+        }
+    }
+
+    private Multimap<String, String> contentHeaders(String contentType) {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null && !contentType.isBlank()) {
+            headers.put("Content-Type", contentType);
+        }
+        return headers;
+    }
+
+    /**
+     * Aborts a multipart upload; the session is removed regardless of the outcome.
+     */
+    private void abortQuietly(String objectName, String uploadId) {
+        try {
+            minioAsyncClient.abortMultipartUploadAsync(
+                    minioProperties.getBucketName(), null, objectName, uploadId, null, null
+            ).get();
+        } catch (Exception e) {
+            log.warn("Failed to abort multipart upload {} for {}", uploadId, objectName, e);
+        }
+    }
+
+    private UploadSessionInfo toInfo(UploadSession session, List<UploadPart> parts) {
+        return UploadSessionInfo.builder()
+                .id(session.getId())
+                .path(session.getPath())
+                .partSize(storageProperties.getUpload().getPartSize().toBytes())
+                .maxPartSize(storageProperties.getUpload().getMaxPartSize().toBytes())
+                .expiresAt(session.getUpdatedAt().plus(storageProperties.getUpload().getSessionTtl()))
+                .parts(parts.stream()
+                        .map(part -> UploadPartInfo.builder()
+                                .partNumber(part.getPartNumber())
+                                .size(part.getSize())
+                                .etag(part.getEtag())
+                                .build())
+                        .toList())
+                .build();
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.entity.ContentBlob;
+import com.example.cloudstorage.exception.StorageException;
+import com.example.cloudstorage.repository.ContentBlobRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.minio.MinioClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Service for content-addressed file bodies (deduplication mode).
+ *
+ * A body is stored once under {@code blobs/<sha256>} and referenced by any number of catalog entries,
+ * of any user. Reference counts are kept by triggers on resource_metadata, so moving or deleting
+ * a deduplicated file only changes the catalog. Blobs that are no longer referenced are removed
+ * by a scheduled collection after a grace period.
+ *
+ * An upload either finds its blob and marks it as in use, which keeps the collection away from it,
+ * or stores it and registers it afterwards. The collection removes a blob while holding its row lock,
+ * so an upload that looks the blob up at the same time waits and then stores it again.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContentBlobService {
+
+    private final MinioClient minioClient;
+    private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
+    private final PathService pathService;
+    private final ContentBlobRepository blobRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * A stored body: its content hash and the ETag of the blob object.
+     */
+    public record StoredBlob(String hash, String etag) {
+    }
+
+    /**
+     * Whether uploads are deduplicated.
+     */
+    public boolean isEnabled() {
+        return storageProperties.getDedup().isEnabled();
+    }
+
+    /**
+     * Stores the body of an uploaded file unless a blob with the same content already exists.
+     * The servlet container has already received the whole file, so it is hashed locally first
+     * and a duplicate is never sent to MinIO.
+     *
+     * @return Hash and ETag to record in the catalog
+     * @throws StorageException if reading the file or writing the blob fails
+     */
+    public StoredBlob store(MultipartFile file) {
+        String hash;
+        try (InputStream content = file.getInputStream()) {
+            hash = sha256(content);
+        } catch (IOException e) {
+            throw new StorageException("Failed to read uploaded file: " + file.getOriginalFilename(), e);
+        }
+
+        Optional<ContentBlob> existing = transactionTemplate.execute(status -> blobRepository.touch(hash) > 0
+                ? blobRepository.findById(hash)
+                : Optional.empty());
+        if (existing != null && existing.isPresent()) {
+            meterRegistry.counter("storage.dedup.uploads", "result", "hit").increment();
+            meterRegistry.counter("storage.dedup.bytes.saved").increment(file.getSize());
+            return new StoredBlob(hash, existing.get().getEtag());
+        }
+
+        try (InputStream content = file.getInputStream()) {
+            ObjectWriteResponse response = minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(minioProperties.getBucketName())
+                    .object(pathService.buildBlobPath(hash))
+                    .stream(content, file.getSize(), -1)
+                    .contentType(file.getContentType())
+                    .build());
+            String etag = MetadataService.normalizeEtag(response.etag());
+            transactionTemplate.executeWithoutResult(status -> blobRepository.insertOrTouch(hash, file.getSize(), etag));
+            meterRegistry.counter("storage.dedup.uploads", "result", "miss").increment();
+            return new StoredBlob(hash, etag);
+        } catch (Exception e) {
+            log.error("Failed to store blob {}", hash, e);
+            throw new StorageException("Failed to upload file: " + file.getOriginalFilename(), e);
+        }
+    }
+
+    /**
+     * Removes blobs that have had no references for longer than the grace period.
+     * Runs regardless of the dedup setting, so blobs are still collected after it was turned off.
+     *
+     * @return Number of removed blobs
+     */
+    @Scheduled(
+            initialDelayString = "${storage.dedup.gc-initial-delay:PT10M}",
+            fixedDelayString = "${storage.dedup.gc-interval:PT1H}"
+    )
+    public int collectGarbage() {
+        StorageProperties.Dedup settings = storageProperties.getDedup();
+        LocalDateTime cutoff = LocalDateTime.now().minus(settings.getGcGracePeriod());
+
+        int removed = 0;
+        for (String hash : blobRepository.findUnreferenced(cutoff, settings.getGcBatchSize())) {
+            try {
+                if (Boolean.TRUE.equals(transactionTemplate.execute(status -> removeBlob(hash, cutoff)))) {
+                    removed++;
+                }
+            } catch (Exception e) {
+                log.error("Failed to remove unreferenced blob {}", hash, e);
+            }
+        }
+        if (removed > 0) {
+            log.info("Removed {} unreferenced blobs", removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes one blob if it is still unreferenced. The object is removed while the row is locked.
+     */
+    private boolean removeBlob(String hash, LocalDateTime cutoff) {
+        if (blobRepository.lockUnreferenced(hash, cutoff) == null) {
+            return false;
+        }
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(minioProperties.getBucketName())
+                    .object(pathService.buildBlobPath(hash))
+                    .build());
+        } catch (Exception e) {
+            throw new StorageException("Failed to remove blob: " + hash, e);
+        }
+        blobRepository.deleteByHash(hash);
+        return true;
+    }
+
+    private static String sha256(InputStream content) throws IOException {
+        MessageDigest digest = Checksums.sha256();
+        try (DigestInputStream in = new DigestInputStream(content, digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return Checksums.hex(digest);
+    }
+}
@@ -1,27 +1,39 @@
 package com.example.cloudstorage.service;
 
 import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
 import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.example.cloudstorage.exception.InvalidCursorException;
+import com.example.cloudstorage.exception.JobCancelledException;
 import com.example.cloudstorage.exception.ResourceAlreadyExistsException;
 import com.example.cloudstorage.exception.ResourceNotFoundException;
 import com.example.cloudstorage.exception.StorageException;
 import com.example.cloudstorage.security.CustomUserDetails;
 import io.minio.*;
+import io.minio.messages.DeleteError;
 import io.minio.messages.DeleteObject;
 import io.minio.messages.Item;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.json.JsonMapper;
 
 import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
+import java.util.Set;
 
 /**
  * Service for directory operations (create, list, delete).
  * Provides efficient batch operations and proper error handling.
+ *
+ * With the object id layout, directories exist in the catalog only and get no marker object,
+ * so moving or renaming them does not touch MinIO.
  */
 @Slf4j
 @Service
@@ -30,10 +42,24 @@ public class DirectoryService {
 
     private final MinioClient minioClient;
     private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
     private final PathService pathService;
     private final ResourceInfoBuilder resourceInfoBuilder;
+    private final MetadataService metadataService;
+    private final JsonMapper jsonMapper;
 
-    private static final String SLASH = "/";
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * One page of a directory listing.
+     *
+     * @param nextCursor Opaque cursor for the next page, or null on the last page
+     */
+    public record ListingPage(List<ResourceInfo> items, String nextCursor) {
+    }
 
     /**
      * Creates a new directory and returns its info.
@@ -51,13 +77,16 @@ public class DirectoryService {
         if (directoryExists(user, path)) {
             throw new ResourceAlreadyExistsException("Directory already exists: " + path);
         }
+        if (metadataService.isHeldByTrash(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + path);
+        }
 
         try {
-            minioClient.putObject(PutObjectArgs.builder()
-                    .bucket(minioProperties.getBucketName())
-                    .object(pathService.buildUserPath(user.getId(), path))
-                    .stream(new ByteArrayInputStream(new byte[0]), 0, -1)
-                    .build());
+            if (!storageProperties.getLayout().isObjectIds()) {
+                putDirectoryMarker(user, path);
+            }
+            ensureParentDirectories(user, path);
+            metadataService.recordDirectory(user.getId(), path);
 
             return resourceInfoBuilder.build(path, 0, true);
         } catch (Exception e) {
@@ -68,12 +97,13 @@ public class DirectoryService {
 
     /**
      * Lists contents of a directory (direct children only, not recursive).
+     * Served from the metadata catalog with a single indexed lookup.
      *
      * @param user User requesting the listing
      * @param path Directory path (must end with '/')
      * @return List of ResourceInfo for direct children
      * @throws ResourceNotFoundException if directory doesn't exist
-     * @throws StorageException if MinIO operation fails
+     * @throws StorageException if catalog lookup fails
      */
     public List<ResourceInfo> listDirectory(CustomUserDetails user, String path) {
         if (path == null || path.isEmpty()) {
@@ -88,44 +118,99 @@ public class DirectoryService {
         }
 
         try {
-            String prefix = pathService.buildUserPath(user.getId(), path);
+            return metadataService.listChildren(user.getId(), path).stream()
+                    .map(resourceInfoBuilder::build)
+                    .toList();
+        } catch (Exception e) {
+            log.error("Failed to list directory: {}", path, e);
+            throw new StorageException("Failed to list directory: " + path, e);
+        }
+    }
 
-            Iterable<io.minio.Result<Item>> results = minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket(minioProperties.getBucketName())
-                            .prefix(prefix)
-                            .delimiter(SLASH)
-                            .build()
-            );
+    /**
+     * Lists one page of a directory, ordered by path.
+     * Pages are read with a keyset query on (user_id, parent_path, path), so every page costs
+     * the same regardless of its position, and entries added or removed between requests
+     * neither repeat nor shift later pages.
+     *
+     * @param user User requesting the listing
+     * @param path Directory path (must end with '/')
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     * @param limit Page size (max {@value MAX_PAGE_SIZE})
+     * @return Page of direct children with the cursor of the next page
+     * @throws InvalidCursorException if the cursor is malformed or belongs to another directory
+     * @throws ResourceNotFoundException if directory doesn't exist
+     * @throws StorageException if catalog lookup fails
+     */
+    public ListingPage listDirectory(CustomUserDetails user, String path, String cursor, int limit) {
+        if (path == null || path.isEmpty()) {
+            path = "/";
+        }
 
-            List<ResourceInfo> resources = new ArrayList<>();
-            for (io.minio.Result<Item> result : results) {
-                Item item = result.get();
-                String fullObjectName = item.objectName();
+        pathService.validatePath(path);
+        pathService.validateDirectoryPath(path);
 
-                if (fullObjectName.equals(prefix)) {
-                    continue;
-                }
+        String directory = MetadataService.normalize(path);
+        String afterPath = cursor == null || cursor.isEmpty() ? "" : decodeCursor(cursor, directory);
+        int pageSize = Math.min(limit, MAX_PAGE_SIZE);
 
-                String relativePath = pathService.stripUserPath(fullObjectName, user.getId());
-                if (relativePath.isEmpty()) {
-                    continue;
-                }
+        if (!directoryExists(user, path)) {
+            throw new ResourceNotFoundException("Directory not found: " + path);
+        }
 
-                boolean isDir = item.isDir() || fullObjectName.endsWith(SLASH);
-                ResourceInfo info = resourceInfoBuilder.build(relativePath, item.size(), isDir);
-                resources.add(info);
+        try {
+            // One extra row tells whether another page follows
+            List<ResourceMetadata> children = metadataService.listChildren(user.getId(), path, afterPath, pageSize + 1);
+            boolean hasMore = children.size() > pageSize;
+            if (hasMore) {
+                children = children.subList(0, pageSize);
             }
 
-            return resources;
-        } catch (ResourceNotFoundException e) {
-            throw e;
+            return new ListingPage(
+                    children.stream().map(resourceInfoBuilder::build).toList(),
+                    hasMore ? encodeCursor(children.getLast().getPath()) : null
+            );
         } catch (Exception e) {
             log.error("Failed to list directory: {}", path, e);
             throw new StorageException("Failed to list directory: " + path, e);
         }
     }
 
+    /**
+     * Streams the whole listing of a directory as NDJSON, one ResourceInfo per line in path order.
+     * The directory is checked before the response starts; entries are then read in keyset pages
+     * of {@value MAX_PAGE_SIZE}, so memory stays flat however large the directory is.
+     *
+     * @return Body writing the listing
+     * @throws ResourceNotFoundException if directory doesn't exist
+     */
+    public StreamingResponseBody streamDirectory(CustomUserDetails user, String path) {
+        String directory = path == null || path.isEmpty() ? "/" : path;
+
+        pathService.validatePath(directory);
+        pathService.validateDirectoryPath(directory);
+
+        if (!directoryExists(user, directory)) {
+            throw new ResourceNotFoundException("Directory not found: " + directory);
+        }
+
+        return out -> {
+            NdjsonWriter writer = new NdjsonWriter(jsonMapper, out);
+            String afterPath = "";
+            List<ResourceMetadata> page;
+            do {
+                page = metadataService.listChildren(user.getId(), directory, afterPath, MAX_PAGE_SIZE);
+                for (ResourceMetadata child : page) {
+                    writer.write(resourceInfoBuilder.build(child));
+                }
+                if (!page.isEmpty()) {
+                    afterPath = page.getLast().getPath();
+                }
+                writer.flush();
+            } while (page.size() == MAX_PAGE_SIZE);
+        };
+    }
+
     /**
      * Deletes a directory and all its contents recursively.
      * Uses batch API for efficient deletion of multiple objects.
@@ -136,6 +221,17 @@ public class DirectoryService {
      * @throws StorageException if MinIO operation fails
      */
     public void deleteDirectory(CustomUserDetails user, String path) {
+        deleteDirectory(user, path, JobProgress.NONE);
+    }
+
+    /**
+     * Deletes a directory and all its contents, reporting progress per batch.
+     * The listing is streamed and deleted in batches of {@value #DELETE_BATCH_SIZE} keys;
+     * cancellation is checked between batches, and the catalog is updated for every deleted batch.
+     *
+     * @throws JobCancelledException if cancellation was requested; already deleted objects stay deleted
+     */
+    public void deleteDirectory(CustomUserDetails user, String path, JobProgress progress) {
         pathService.validatePath(path);
         pathService.validateDirectoryPath(path);
 
@@ -150,7 +246,7 @@ public class DirectoryService {
         try {
             String prefix = pathService.buildUserPath(user.getId(), path);
 
-            Iterable<io.minio.Result<Item>> objects = minioClient.listObjects(
+            Iterable<Result<Item>> objects = minioClient.listObjects(
                     ListObjectsArgs.builder()
                             .bucket(minioProperties.getBucketName())
                             .prefix(prefix)
@@ -158,35 +254,28 @@ public class DirectoryService {
                             .build()
             );
 
-            List<DeleteObject> objectsToDelete = StreamSupport.stream(objects.spliterator(), false)
-                    .map(result -> {
-                        try {
-                            return new DeleteObject(result.get().objectName());
-                        } catch (Exception e) {
-                            log.error("Failed to get object name from MinIO result", e);
-                            throw new StorageException("Failed to list directory contents for deletion", e);
-                        }
-                    })
-                    .collect(Collectors.toList());
-
-            if (objectsToDelete.isEmpty()) {
-                log.warn("No objects found to delete for directory: {}", path);
-                return;
-            }
-
-            Iterable<io.minio.Result<io.minio.messages.DeleteError>> results =
-                    minioClient.removeObjects(RemoveObjectsArgs.builder()
-                            .bucket(minioProperties.getBucketName())
-                            .objects(objectsToDelete)
-                            .build());
+            // Object id files first: the sweep below removes entries by path, also the entry of a file
+            // whose old path-keyed object was left behind when it was switched to an object id
+            int deleted = deleteObjectIdFiles(user, path, progress);
 
-            for (io.minio.Result<io.minio.messages.DeleteError> result : results) {
-                io.minio.messages.DeleteError error = result.get();
-                log.error("Failed to delete object: {} - {}", error.objectName(), error.message());
+            List<Item> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+            for (Result<Item> result : objects) {
+                batch.add(result.get());
+                if (batch.size() == DELETE_BATCH_SIZE) {
+                    deleted += deleteBatch(user, batch, progress);
+                    batch.clear();
+                    if (progress.isCancelled()) {
+                        throw new JobCancelledException("Delete of " + path + " cancelled after " + deleted + " objects");
+                    }
+                }
             }
+            deleted += deleteBatch(user, batch, progress);
 
-            log.info("Successfully deleted directory: {} ({} objects)", path, objectsToDelete.size());
-        } catch (ResourceNotFoundException e) {
+            // Also removes deduplicated files, whose shared blobs are collected once unreferenced
+            metadataService.removeDirectory(user.getId(), path);
+
+            log.info("Successfully deleted directory: {} ({} objects)", path, deleted);
+        } catch (ResourceNotFoundException | JobCancelledException e) {
             throw e;
         } catch (Exception e) {
             log.error("Failed to delete directory: {}", path, e);
@@ -194,6 +283,95 @@ public class DirectoryService {
         }
     }
 
+    /**
+     * Deletes one batch of objects and removes the deleted ones from the catalog.
+     *
+     * @return Number of deleted objects
+     */
+    private int deleteBatch(CustomUserDetails user, List<Item> batch, JobProgress progress) throws Exception {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Iterable<Result<DeleteError>> results = minioClient.removeObjects(RemoveObjectsArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .objects(batch.stream().map(item -> new DeleteObject(item.objectName())).toList())
+                .build());
+
+        Set<String> failed = new HashSet<>();
+        for (Result<DeleteError> result : results) {
+            DeleteError error = result.get();
+            log.error("Failed to delete object: {} - {}", error.objectName(), error.message());
+            failed.add(error.objectName());
+        }
+
+        List<String> deletedPaths = new ArrayList<>();
+        long bytes = 0;
+        for (Item item : batch) {
+            if (!failed.contains(item.objectName())) {
+                deletedPaths.add(pathService.stripUserPath(item.objectName(), user.getId()));
+                bytes += item.size();
+            }
+        }
+        metadataService.removeEntries(user.getId(), deletedPaths);
+        progress.advance(deletedPaths.size(), bytes);
+        return deletedPaths.size();
+    }
+
+    /**
+     * Removes the objects of files below a directory that are stored under an object id,
+     * one catalog page at a time, and the entries of each page as soon as MinIO has confirmed
+     * the deletion, so a failed or cancelled delete never leaves entries without objects.
+     * If an object cannot be removed the delete fails and its entry stays, so it can be retried.
+     *
+     * @return Number of removed objects
+     */
+    private int deleteObjectIdFiles(CustomUserDetails user, String path, JobProgress progress) throws Exception {
+        int deleted = 0;
+        String afterPath = "";
+        List<ResourceMetadata> page;
+        do {
+            page = metadataService.listSubtree(user.getId(), path, afterPath, DELETE_BATCH_SIZE);
+            List<ResourceMetadata> files = page.stream()
+                    .filter(entry -> entry.getObjectId() != null)
+                    .toList();
+
+            if (!files.isEmpty()) {
+                Iterable<Result<DeleteError>> results = minioClient.removeObjects(RemoveObjectsArgs.builder()
+                        .bucket(minioProperties.getBucketName())
+                        .objects(files.stream()
+                                .map(entry -> new DeleteObject(pathService.buildObjectPath(entry)))
+                                .toList())
+                        .build());
+                Set<String> failed = new HashSet<>();
+                for (Result<DeleteError> result : results) {
+                    DeleteError error = result.get();
+                    log.error("Failed to delete object: {} - {}", error.objectName(), error.message());
+                    failed.add(error.objectName());
+                }
+
+                List<ResourceMetadata> removed = files.stream()
+                        .filter(entry -> !failed.contains(pathService.buildObjectPath(entry)))
+                        .toList();
+                metadataService.removeEntries(user.getId(), removed.stream().map(ResourceMetadata::getPath).toList());
+                deleted += removed.size();
+                progress.advance(removed.size(), removed.stream().mapToLong(ResourceMetadata::getSize).sum());
+
+                if (!failed.isEmpty()) {
+                    throw new StorageException("Failed to delete " + failed.size() + " objects below " + path);
+                }
+                if (progress.isCancelled()) {
+                    throw new JobCancelledException("Delete of " + path + " cancelled after " + deleted + " objects");
+                }
+            }
+
+            if (!page.isEmpty()) {
+                afterPath = page.getLast().getPath();
+            }
+        } while (page.size() == DELETE_BATCH_SIZE);
+        return deleted;
+    }
+
     /**
      * Checks if directory exists.
      *
@@ -207,16 +385,65 @@ public class DirectoryService {
         }
         
         try {
-            String prefix = pathService.buildUserPath(user.getId(), path);
-            return minioClient.listObjects(ListObjectsArgs.builder()
-                            .bucket(minioProperties.getBucketName())
-                            .prefix(prefix)
-                            .maxKeys(1)
-                            .build())
-                    .iterator().hasNext();
+            return metadataService.exists(user.getId(), path);
         } catch (Exception e) {
             log.error("Error checking directory existence for path: {}", path, e);
             return false;
         }
     }
+
+    /**
+     * Makes sure every ancestor directory of a path exists, both in the catalog
+     * and as a marker object, so folders stay visible after their last file is removed.
+     * With the object id layout only the catalog entries are created.
+     *
+     * @param user User owning the path
+     * @param path File or directory path whose parents are ensured
+     * @throws StorageException if a marker cannot be written
+     */
+    public void ensureParentDirectories(CustomUserDetails user, String path) {
+        List<String> created = metadataService.recordMissingParents(user.getId(), path);
+        if (storageProperties.getLayout().isObjectIds()) {
+            return;
+        }
+        for (String directory : created) {
+            try {
+                putDirectoryMarker(user, directory);
+            } catch (Exception e) {
+                log.error("Failed to create parent directory: {}", directory, e);
+                throw new StorageException("Failed to create parent directory: " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the empty object that represents a directory in MinIO.
+     */
+    private void putDirectoryMarker(CustomUserDetails user, String path) throws Exception {
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .object(pathService.buildUserPath(user.getId(), path))
+                .stream(new ByteArrayInputStream(new byte[0]), 0, -1)
+                .build());
+    }
+
+    /**
+     * Cursors are the URL-safe Base64 of the last path of a page; clients treat them as opaque.
+     */
+    private static String encodeCursor(String lastPath) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastPath.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor, String directory) {
+        String afterPath;
+        try {
+            afterPath = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor);
+        }
+        if (!afterPath.startsWith(directory) || afterPath.equals(directory)) {
+            throw new InvalidCursorException("Cursor does not belong to directory: /" + directory);
+        }
+        return afterPath;
+    }
 }
@@ -1,27 +1,69 @@
 package com.example.cloudstorage.service;
 
 import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
 import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.entity.ResourceMetadata;
 import com.example.cloudstorage.exception.InvalidPathException;
+import com.example.cloudstorage.exception.InvalidUploadException;
+import com.example.cloudstorage.exception.QuotaExceededException;
 import com.example.cloudstorage.exception.ResourceAlreadyExistsException;
 import com.example.cloudstorage.exception.ResourceNotFoundException;
 import com.example.cloudstorage.exception.StorageException;
 import com.example.cloudstorage.security.CustomUserDetails;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
 import io.minio.*;
 import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Part;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 /**
  * Service for file operations (upload, download, info, delete).
  * Provides validation, error handling, and integration with MinIO storage.
+ *
+ * Downloads and deletes are implemented on {@link MinioAsyncClient}; the blocking
+ * variants wait for the same futures, so both share one code path.
+ * Small files are served from {@link ObjectContentCache} while their ETag is unchanged.
+ *
+ * With deduplication enabled, uploaded bodies are stored through {@link ContentBlobService}
+ * and the catalog entry points to the shared blob; reads resolve the object via
+ * {@link PathService#buildObjectPath}, and deleting such a file only removes its catalog entry.
+ * With the object id layout, other uploads are stored under a new {@code objects/<uuid>} key.
+ *
+ * The files of one upload request are sent concurrently, bounded by storage.upload.parallelism.
+ * A raw request body can be uploaded with {@link #uploadStream}, which streams it into MinIO as it arrives.
+ *
+ * Uploads only ever create files. Objects stored under their path are written with {@code If-None-Match: *},
+ * sent with the single PUT or, for bodies over 5 MiB, with the completion of the multipart upload,
+ * so an existing object is never overwritten, and the catalog entry is inserted only if the path is free;
+ * of two concurrent uploads of the same path exactly one succeeds, the other fails with
+ * {@link ResourceAlreadyExistsException} and its object is removed.
+ *
+ * Uploaded bodies are hashed with SHA-256 while they are sent to MinIO, and the checksum is recorded
+ * in the catalog, where downloads and the {@link ChecksumScrubService} pick it up.
  */
 @Slf4j
 @Service
@@ -29,33 +71,204 @@ import java.util.List;
 public class FileOperationsService {
 
     private final MinioClient minioClient;
+    private final MinioAsyncClient minioAsyncClient;
     private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
     private final PathService pathService;
     private final ResourceInfoBuilder resourceInfoBuilder;
+    private final DirectoryService directoryService;
+    private final MetadataService metadataService;
+    private final StorageUsageService storageUsageService;
+    private final ContentBlobService contentBlobService;
+    private final ObjectContentCache objectContentCache;
+
+    private final ExecutorService uploadExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     private static final String SLASH = "/";
+    private static final Map<String, String> CREATE_ONLY = Map.of("If-None-Match", "*");
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+    private static final int MAX_PARTS = 10_000;
+
+    /**
+     * Result of uploading one file of a multipart request.
+     *
+     * @param name Original file name
+     * @param resource The uploaded file, or null if the upload failed
+     * @param error Why the upload failed, or null if it succeeded
+     */
+    public record UploadOutcome(String name, ResourceInfo resource, RuntimeException error) {
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
 
     /**
      * Uploads multiple files to the specified directory path.
-     * Note: If upload fails for any file, previously uploaded files will remain.
+     * Note: If upload fails for any file, the other files are still uploaded and remain.
+     * The whole batch is reserved against the user's quota before the first file is streamed.
      *
      * @param user User uploading files
      * @param path Directory path (must end with '/')
      * @param files List of files to upload
-     * @return List of ResourceInfo for successfully uploaded files
+     * @return List of ResourceInfo for the uploaded files, in request order
      * @throws InvalidPathException if path is invalid
      * @throws ResourceAlreadyExistsException if any file already exists
+     * @throws QuotaExceededException if the files do not fit into the user's quota
      * @throws StorageException if MinIO operation fails
      */
     public List<ResourceInfo> uploadFiles(CustomUserDetails user, String path, List<MultipartFile> files) {
+        List<UploadOutcome> outcomes = uploadEach(user, path, files);
+        for (UploadOutcome outcome : outcomes) {
+            if (!outcome.succeeded()) {
+                throw outcome.error();
+            }
+        }
+        return outcomes.stream().map(UploadOutcome::resource).toList();
+    }
+
+    /**
+     * Uploads multiple files concurrently and reports the result of each file,
+     * so a failed file does not affect the others.
+     * A file name included more than once is uploaded only the first time.
+     *
+     * @param user User uploading files
+     * @param path Directory path (must end with '/')
+     * @param files List of files to upload
+     * @return One outcome per file, in request order
+     * @throws InvalidPathException if path is invalid
+     * @throws QuotaExceededException if the files do not fit into the user's quota
+     */
+    public List<UploadOutcome> uploadEach(CustomUserDetails user, String path, List<MultipartFile> files) {
         pathService.validatePath(path);
         pathService.validateDirectoryPath(path);
 
-        List<ResourceInfo> uploaded = new ArrayList<>();
-        for (MultipartFile file : files) {
-            uploaded.add(uploadSingleFile(user, path, file));
+        long totalSize = files.stream().mapToLong(MultipartFile::getSize).sum();
+        try (QuotaReservation reservation = storageUsageService.reserve(user.getId(), totalSize, files.size())) {
+            Semaphore uploadSlots = new Semaphore(storageProperties.getUpload().getParallelism());
+            Set<String> names = new HashSet<>();
+            List<CompletableFuture<UploadOutcome>> pending = new ArrayList<>(files.size());
+
+            for (MultipartFile file : files) {
+                String name = file.getOriginalFilename();
+                if (StringUtils.hasText(name) && !names.add(name)) {
+                    pending.add(CompletableFuture.completedFuture(new UploadOutcome(name, null,
+                            new ResourceAlreadyExistsException("File is included more than once: " + path + name))));
+                    continue;
+                }
+
+                uploadSlots.acquireUninterruptibly();
+                pending.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        ResourceInfo uploaded = uploadSingleFile(user, path, file);
+                        reservation.commit(file.getSize(), 1);
+                        return new UploadOutcome(name, uploaded, null);
+                    } catch (RuntimeException e) {
+                        return new UploadOutcome(name, null, e);
+                    } finally {
+                        uploadSlots.release();
+                    }
+                }, uploadExecutor));
+            }
+
+            // Joined before the reservation is closed, which releases the share of the failed files
+            return pending.stream().map(CompletableFuture::join).toList();
+        }
+    }
+
+    /**
+     * Uploads one file from a raw request body without a client-supplied checksum.
+     *
+     * @see #uploadStream(CustomUserDetails, String, InputStream, long, String, String)
+     */
+    public ResourceInfo uploadStream(CustomUserDetails user, String path, InputStream content,
+                                     long length, String contentType) {
+        return uploadStream(user, path, content, length, contentType, null);
+    }
+
+    /**
+     * Uploads one file from a raw request body, piping it into MinIO while it is received,
+     * without spooling it to a temporary file first.
+     * With a known length the quota is reserved up front. Without one the body is sent as a
+     * multipart upload of storage.upload.part-size parts, of which the MinIO client buffers one
+     * in memory, and the quota is checked once the size is known; a file that does not fit is removed.
+     * The body is not deduplicated, as it cannot be hashed before it is stored.
+     * If the client sent a checksum, the body is hashed on the way and a file that does not match is removed.
+     *
+     * @param user User uploading the file
+     * @param path Full file path (must not end with '/')
+     * @param content Request body
+     * @param length Content length, or -1 if unknown
+     * @param contentType Content type of the file, may be null
+     * @param expectedChecksum Hex SHA-256 announced by the client, or null
+     * @return ResourceInfo of the uploaded file
+     * @throws InvalidPathException if path is invalid or a directory
+     * @throws InvalidUploadException if the body does not match the expected checksum
+     * @throws ResourceAlreadyExistsException if the file already exists
+     * @throws QuotaExceededException if the file does not fit into the user's quota
+     * @throws StorageException if MinIO operation fails
+     */
+    public ResourceInfo uploadStream(CustomUserDetails user, String path, InputStream content,
+                                     long length, String contentType, String expectedChecksum) {
+        pathService.validatePath(path);
+        if (path.isEmpty() || path.endsWith(SLASH)) {
+            throw new InvalidPathException("Upload path must point to a file, not a directory");
+        }
+        if (resourceExists(user, path)) {
+            throw new ResourceAlreadyExistsException("File already exists: " + path);
+        }
+        if (metadataService.isHeldByTrash(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + path);
+        }
+
+        String type = StringUtils.hasText(contentType) ? contentType : "application/octet-stream";
+        UUID objectId = storageProperties.getLayout().isObjectIds() ? UUID.randomUUID() : null;
+        String objectName = objectName(user, path, objectId);
+
+        if (length < 0) {
+            storageUsageService.checkQuota(user.getId(), 0, 1);
+        }
+        try (QuotaReservation announced = length >= 0
+                ? storageUsageService.reserve(user.getId(), length, 1)
+                : QuotaReservation.NONE) {
+            MessageDigest digest = Checksums.sha256();
+            CountingInputStream body = new CountingInputStream(new DigestInputStream(content, digest));
+            String etag = putNewObject(path, objectName, objectId == null, body, length,
+                    length >= 0 ? -1 : storageProperties.getUpload().getPartSize().toBytes(), type);
+            long size = body.getCount();
+            String checksum = Checksums.hex(digest);
+
+            if (expectedChecksum != null && !expectedChecksum.equalsIgnoreCase(checksum)) {
+                removeObject(objectName);
+                throw new InvalidUploadException("Uploaded content does not match its SHA-256 digest: " + path);
+            }
+
+            try (QuotaReservation measured = length >= 0
+                    ? QuotaReservation.NONE
+                    : reserveStreamed(user, objectName, size)) {
+                recordNewFile(user, path, size, etag, type, null, objectId, objectName, checksum);
+            }
+
+            log.info("Streamed upload for user {}: path='{}', {} bytes", user.getId(), path, size);
+            return resourceInfoBuilder.build(path, size, false);
+        } catch (QuotaExceededException | ResourceAlreadyExistsException | InvalidUploadException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to upload file: {}", path, e);
+            throw new StorageException("Failed to upload file: " + path, e);
+        }
+    }
+
+    /**
+     * Reserves quota for a streamed file of previously unknown size and removes it if it does not fit.
+     */
+    private QuotaReservation reserveStreamed(CustomUserDetails user, String objectName, long size) throws Exception {
+        try {
+            return storageUsageService.reserve(user.getId(), size, 1);
+        } catch (QuotaExceededException e) {
+            removeObject(objectName);
+            throw e;
         }
-        return uploaded;
     }
 
     /**
@@ -70,61 +283,90 @@ public class FileOperationsService {
      * @throws StorageException if MinIO operation fails
      */
     public InputStream downloadFile(CustomUserDetails user, String path) {
+        return MinioFutures.await(downloadFileAsync(user, path));
+    }
+
+    /**
+     * Opens a file without blocking the caller while MinIO responds.
+     * The catalog check runs before the future is returned, so a missing file fails immediately.
+     *
+     * @return Future of the file contents (the stream must be closed by the caller)
+     * @throws InvalidPathException if path is a directory
+     * @throws ResourceNotFoundException if file doesn't exist
+     */
+    public CompletableFuture<InputStream> downloadFileAsync(CustomUserDetails user, String path) {
+        return openObjectAsync(getFileMetadata(user, path), null, null);
+    }
+
+    /**
+     * Downloads a byte range of a file. Only the requested bytes are read from MinIO.
+     * The caller is responsible for closing the returned InputStream.
+     *
+     * @param user User downloading the file
+     * @param path File path (must not end with '/')
+     * @param offset Offset of the first byte
+     * @param length Number of bytes to read
+     * @return InputStream of the range (must be closed by caller)
+     * @throws ResourceNotFoundException if file doesn't exist
+     * @throws StorageException if MinIO operation fails
+     */
+    public InputStream downloadFileRange(CustomUserDetails user, String path, long offset, long length) {
+        return MinioFutures.await(downloadFileRangeAsync(user, path, offset, length));
+    }
+
+    /**
+     * Opens a byte range of a file without blocking the caller while MinIO responds.
+     *
+     * @return Future of the range contents (the stream must be closed by the caller)
+     */
+    public CompletableFuture<InputStream> downloadFileRangeAsync(CustomUserDetails user, String path,
+                                                                 long offset, long length) {
+        return openObjectAsync(getFileMetadata(user, path), offset, length);
+    }
+
+    /**
+     * Gets the catalog entry of a file, used for conditional and range requests
+     * without touching MinIO.
+     *
+     * @param user User requesting the file
+     * @param path File path (must not end with '/')
+     * @return Catalog entry with size, ETag and modification time
+     * @throws InvalidPathException if path is a directory
+     * @throws ResourceNotFoundException if file doesn't exist
+     */
+    public ResourceMetadata getFileMetadata(CustomUserDetails user, String path) {
         pathService.validatePath(path);
-        
+
         if (path.endsWith(SLASH)) {
             throw new InvalidPathException("Cannot download directory as file. Use directory download endpoint.");
         }
 
-        if (!resourceExists(user, path)) {
-            throw new ResourceNotFoundException("File not found: " + path);
-        }
-
-        try {
-            return minioClient.getObject(GetObjectArgs.builder()
-                    .bucket(minioProperties.getBucketName())
-                    .object(pathService.buildUserPath(user.getId(), path))
-                    .build());
-        } catch (Exception e) {
-            log.error("Failed to download file: {}", path, e);
-            throw new StorageException("Failed to download file: " + path, e);
-        }
+        return metadataService.find(user.getId(), path)
+                .orElseThrow(() -> new ResourceNotFoundException("File not found: " + path));
     }
 
     /**
-     * Gets information about a file or directory.
+     * Gets information about a file or directory from the metadata catalog.
      *
      * @param user User requesting info
      * @param path Resource path (file or directory)
      * @return ResourceInfo with name, path, size, type
      * @throws ResourceNotFoundException if resource doesn't exist
-     * @throws StorageException if MinIO operation fails
+     * @throws StorageException if catalog lookup fails
      */
     public ResourceInfo getResourceInfo(CustomUserDetails user, String path) {
         pathService.validatePath(path);
 
-        try {
-            String fullPath = pathService.buildUserPath(user.getId(), path);
-
-            if (path.endsWith(SLASH)) {
-                if (!"/".equals(path)) {
-                    boolean exists = minioClient.listObjects(ListObjectsArgs.builder()
-                                    .bucket(minioProperties.getBucketName())
-                                    .prefix(fullPath)
-                                    .maxKeys(1)
-                                    .build())
-                            .iterator().hasNext();
-
-                    if (!exists) {
-                        throw new ResourceNotFoundException("Directory not found: " + path);
-                    }
-                }
+        if ("/".equals(path)) {
+            return resourceInfoBuilder.build(path, 0, true);
+        }
 
-                return resourceInfoBuilder.build(path, 0, true);
-            } else {
-                StatObjectResponse stat = getStatObject(user, path);
-                return resourceInfoBuilder.build(path, stat.size(), false);
-            }
+        try {
+            return metadataService.find(user.getId(), path)
+                    .map(resourceInfoBuilder::build)
+                    .orElseThrow(() -> new ResourceNotFoundException(path.endsWith(SLASH)
+                            ? "Directory not found: " + path
+                            : "Resource not found: " + path));
         } catch (ResourceNotFoundException e) {
             throw e;
         } catch (Exception e) {
@@ -143,25 +385,48 @@ public class FileOperationsService {
      * @throws StorageException if MinIO operation fails
      */
     public void deleteFile(CustomUserDetails user, String path) {
+        MinioFutures.await(deleteFileAsync(user, path));
+    }
+
+    /**
+     * Deletes a file without blocking the caller while MinIO responds.
+     * Validation and the existence check run before the future is returned.
+     *
+     * @return Future completing once the object and its catalog entry are removed
+     * @throws InvalidPathException if path is a directory
+     * @throws ResourceNotFoundException if file doesn't exist
+     */
+    public CompletableFuture<Void> deleteFileAsync(CustomUserDetails user, String path) {
         pathService.validatePath(path);
 
         if (path.endsWith(SLASH)) {
             throw new InvalidPathException("Use directory service to delete directories");
         }
 
-        if (!resourceExists(user, path)) {
-            throw new ResourceNotFoundException("File not found: " + path);
-        }
+        ResourceMetadata entry = metadataService.find(user.getId(), path)
+                .orElseThrow(() -> new ResourceNotFoundException("File not found: " + path));
 
-        try {
-            minioClient.removeObject(RemoveObjectArgs.builder()
-                    .bucket(minioProperties.getBucketName())
-                    .object(pathService.buildUserPath(user.getId(), path))
-                    .build());
-        } catch (Exception e) {
-            log.error("Failed to delete file: {}", path, e);
-            throw new StorageException("Failed to delete file: " + path, e);
+        // A deduplicated body is shared; it is removed by the blob collection once unreferenced
+        CompletableFuture<Void> removal;
+        if (entry.getContentHash() != null) {
+            removal = CompletableFuture.completedFuture(null);
+        } else {
+            try {
+                removal = minioAsyncClient.removeObject(RemoveObjectArgs.builder()
+                        .bucket(minioProperties.getBucketName())
+                        .object(pathService.buildObjectPath(entry))
+                        .build());
+            } catch (Exception e) {
+                removal = CompletableFuture.failedFuture(e);
+            }
         }
+
+        return removal
+                .thenRun(() -> metadataService.removeFile(user.getId(), path))
+                .exceptionally(e -> {
+                    log.error("Failed to delete file: {}", path, e);
+                    throw new StorageException("Failed to delete file: " + path, MinioFutures.unwrap(e));
+                });
     }
 
     /**
@@ -173,24 +438,65 @@ public class FileOperationsService {
      */
     public boolean resourceExists(CustomUserDetails user, String path) {
         try {
-            if (path.endsWith(SLASH)) {
-                return minioClient.listObjects(ListObjectsArgs.builder()
-                                .bucket(minioProperties.getBucketName())
-                                .prefix(pathService.buildUserPath(user.getId(), path))
-                                .maxKeys(1)
-                                .build())
-                        .iterator().hasNext();
-            }
-            getStatObject(user, path);
-            return true;
-        } catch (ResourceNotFoundException e) {
-            return false;
+            return metadataService.exists(user.getId(), path);
         } catch (Exception e) {
             log.error("Error checking resource existence for path: {}", path, e);
             return false;
         }
     }
 
+    private CompletableFuture<InputStream> openObjectAsync(ResourceMetadata entry, Long offset, Long length) {
+        String path = entry.getPath();
+        String objectName = pathService.buildObjectPath(entry);
+        boolean cacheable = objectContentCache.isCacheable(entry);
+        if (cacheable) {
+            byte[] cached = objectContentCache.get(objectName, entry.getEtag());
+            if (cached != null) {
+                return CompletableFuture.completedFuture(offset == null
+                        ? new ByteArrayInputStream(cached)
+                        : new ByteArrayInputStream(cached, (int) (long) offset, (int) (long) length));
+            }
+        }
+
+        CompletableFuture<GetObjectResponse> response;
+        try {
+            response = minioAsyncClient.getObject(GetObjectArgs.builder()
+                    .bucket(minioProperties.getBucketName())
+                    .object(objectName)
+                    .offset(offset)
+                    .length(length)
+                    .build());
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+
+        // A range request does not fill the cache; the whole file is read by the next full download
+        boolean fill = cacheable && offset == null;
+        return response
+                .thenApply(stream -> fill ? readIntoCache(objectName, stream) : stream)
+                .exceptionally(e -> {
+                    log.error("Failed to download file: {}", path, e);
+                    throw new StorageException("Failed to download file: " + path, MinioFutures.unwrap(e));
+                });
+    }
+
+    /**
+     * Reads a small object completely and caches it under the ETag MinIO returned with it,
+     * which differs from the catalog's only if the file was replaced while it was being opened.
+     */
+    private InputStream readIntoCache(String objectName, GetObjectResponse stream) {
+        try (stream) {
+            byte[] content = stream.readAllBytes();
+            String etag = stream.headers().get("ETag");
+            if (etag != null) {
+                objectContentCache.put(objectName, MetadataService.normalizeEtag(etag), content);
+            }
+            return new ByteArrayInputStream(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Uploads a single file to MinIO.
      *
@@ -199,7 +505,7 @@ public class FileOperationsService {
      * @param file MultipartFile to upload
      * @return ResourceInfo for uploaded file
      * @throws InvalidPathException if filename is empty or invalid
-     * @throws ResourceAlreadyExistsException if file already exists
+     * @throws ResourceAlreadyExistsException if file already exists or is uploaded concurrently
      * @throws StorageException if upload fails
      */
     private ResourceInfo uploadSingleFile(CustomUserDetails user, String path, MultipartFile file) {
@@ -211,19 +517,38 @@ public class FileOperationsService {
         String fullPath = path + filename;
         pathService.validatePath(fullPath);
 
-        if (resourceExists(user, fullPath)) {
-            throw new ResourceAlreadyExistsException("File already exists: " + fullPath);
+        // An existing file is detected by the conditional write and the catalog insert
+        if (metadataService.isHeldByTrash(user.getId(), fullPath)) {
+            throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + fullPath);
         }
 
         try {
-            minioClient.putObject(PutObjectArgs.builder()
-                    .bucket(minioProperties.getBucketName())
-                    .object(pathService.buildUserPath(user.getId(), fullPath))
-                    .stream(file.getInputStream(), file.getSize(), -1)
-                    .contentType(file.getContentType())
-                    .build());
+            String etag;
+            String contentHash = null;
+            UUID objectId = null;
+            String objectName = null;
+            String checksum;
+            if (contentBlobService.isEnabled()) {
+                ContentBlobService.StoredBlob blob = contentBlobService.store(file);
+                etag = blob.etag();
+                contentHash = blob.hash();
+                // The blob is addressed by the SHA-256 of its content
+                checksum = blob.hash();
+            } else {
+                objectId = storageProperties.getLayout().isObjectIds() ? UUID.randomUUID() : null;
+                objectName = objectName(user, fullPath, objectId);
+                MessageDigest digest = Checksums.sha256();
+                try (InputStream content = new DigestInputStream(file.getInputStream(), digest)) {
+                    etag = putNewObject(fullPath, objectName, objectId == null, content, file.getSize(), -1,
+                            file.getContentType());
+                }
+                checksum = Checksums.hex(digest);
+            }
+
+            recordNewFile(user, fullPath, file.getSize(), etag, file.getContentType(),
+                    contentHash, objectId, objectName, checksum);
 
-            return getResourceInfo(user, fullPath);
+            return resourceInfoBuilder.build(fullPath, file.getSize(), false);
         } catch (ResourceAlreadyExistsException e) {
             throw e;
         } catch (Exception e) {
@@ -233,29 +558,139 @@ public class FileOperationsService {
     }
 
     /**
-     * Gets MinIO object metadata.
+     * Writes the object of a new file. An object stored under its path is written conditionally,
+     * so that an existing file is never overwritten; object id keys are new by construction.
      *
-     * @param user User requesting metadata
-     * @param path File path
-     * @return StatObjectResponse with metadata
-     * @throws ResourceNotFoundException if file doesn't exist
-     * @throws StorageException if operation fails
+     * @return ETag of the written object
+     * @throws ResourceAlreadyExistsException if an object already exists at the path
      */
-    private StatObjectResponse getStatObject(CustomUserDetails user, String path) {
+    private String putNewObject(String path, String objectName, boolean keyedByPath, InputStream content,
+                                long size, long partSize, String contentType) throws Exception {
+        // The MinIO client sends extra headers only when it initiates a multipart upload, not on its completion
+        if (keyedByPath && (size < 0 || size > MIN_PART_SIZE)) {
+            return putNewObjectInParts(path, objectName, content, size, partSize, contentType);
+        }
+
+        PutObjectArgs.Builder args = PutObjectArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .object(objectName)
+                .stream(content, size, partSize)
+                .contentType(contentType);
+        if (keyedByPath) {
+            args.headers(CREATE_ONLY);
+        }
         try {
-            return minioClient.statObject(StatObjectArgs.builder()
-                    .bucket(minioProperties.getBucketName())
-                    .object(pathService.buildUserPath(user.getId(), path))
-                    .build());
+            return minioClient.putObject(args.build()).etag();
         } catch (ErrorResponseException e) {
-            if ("NoSuchKey".equals(e.errorResponse().code())) {
-                throw new ResourceNotFoundException("Resource not found: " + path);
+            if ("PreconditionFailed".equals(e.errorResponse().code())) {
+                throw new ResourceAlreadyExistsException("File already exists: " + path);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Uploads a path-keyed object as a multipart upload whose completion carries {@code If-None-Match: *},
+     * buffering one part at a time like the MinIO client does. A body that turns out to fit into
+     * the first part is sent as a single conditional PUT instead.
+     *
+     * @param size Body length, or -1 if unknown
+     * @param partSize Part size for a body of unknown length
+     * @return ETag of the written object
+     * @throws ResourceAlreadyExistsException if an object already exists at the path
+     */
+    private String putNewObjectInParts(String path, String objectName, InputStream content, long size,
+                                       long partSize, String contentType) throws Exception {
+        int bufferSize = Math.toIntExact(size < 0
+                ? partSize
+                : Math.max(MIN_PART_SIZE, Math.ceilDiv(size, MAX_PARTS)));
+        byte[] buffer = new byte[bufferSize];
+        int read = content.readNBytes(buffer, 0, bufferSize);
+        if (read < bufferSize) {
+            return putNewObject(path, objectName, true, new ByteArrayInputStream(buffer, 0, read), read, -1,
+                    contentType);
+        }
+
+        String bucket = minioProperties.getBucketName();
+        Multimap<String, String> headers = HashMultimap.create();
+        if (StringUtils.hasText(contentType)) {
+            headers.put("Content-Type", contentType);
+        }
+        String uploadId = minioAsyncClient.createMultipartUploadAsync(bucket, null, objectName, headers, null)
+                .get().result().uploadId();
+        try {
+            List<Part> parts = new ArrayList<>();
+            long total = 0;
+            while (read > 0) {
+                int partNumber = parts.size() + 1;
+                UploadPartResponse response = minioAsyncClient.uploadPartAsync(bucket, null, objectName,
+                        new ByteArrayInputStream(buffer, 0, read), read, uploadId, partNumber, null, null).get();
+                parts.add(new Part(partNumber, response.etag()));
+                total += read;
+                read = content.readNBytes(buffer, 0, bufferSize);
+            }
+            if (size >= 0 && total != size) {
+                throw new IOException("Expected " + size + " bytes but received " + total + ": " + path);
+            }
+
+            Multimap<String, String> conditions = HashMultimap.create();
+            conditions.put("If-None-Match", "*");
+            return minioAsyncClient.completeMultipartUploadAsync(bucket, null, objectName, uploadId,
+                    parts.toArray(Part[]::new), conditions, null).get().etag();
+        } catch (Exception e) {
+            abortQuietly(objectName, uploadId);
+            if (MinioFutures.unwrap(e) instanceof ErrorResponseException error
+                    && "PreconditionFailed".equals(error.errorResponse().code())) {
+                throw new ResourceAlreadyExistsException("File already exists: " + path);
             }
-            log.error("MinIO error for path: {}", path, e);
-            throw new StorageException("Failed to get object metadata: " + path, e);
+            throw e;
+        }
+    }
+
+    private void abortQuietly(String objectName, String uploadId) {
+        try {
+            minioAsyncClient.abortMultipartUploadAsync(
+                    minioProperties.getBucketName(), null, objectName, uploadId, null, null
+            ).get();
         } catch (Exception e) {
-            log.error("Failed to get object metadata: {}", path, e);
-            throw new StorageException("Failed to get object metadata: " + path, e);
+            log.warn("Failed to abort multipart upload {} for {}", uploadId, objectName, e);
         }
     }
+
+    /**
+     * Records a new file in the catalog. If the path was taken in the meantime, the object written
+     * for the upload is removed again; a shared blob ({@code objectName} null) is left to its collection.
+     *
+     * @throws ResourceAlreadyExistsException if the path is taken
+     */
+    private void recordNewFile(CustomUserDetails user, String path, long size, String etag, String contentType,
+                               String contentHash, UUID objectId, String objectName, String checksum)
+            throws Exception {
+        directoryService.ensureParentDirectories(user, path);
+        if (metadataService.createFile(user.getId(), path, size, etag, contentType, contentHash, objectId, checksum)) {
+            return;
+        }
+        if (objectName != null) {
+            removeObject(objectName);
+        }
+        throw new ResourceAlreadyExistsException("File already exists: " + path);
+    }
+
+    private void removeObject(String objectName) throws Exception {
+        minioClient.removeObject(RemoveObjectArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .object(objectName)
+                .build());
+    }
+
+    private String objectName(CustomUserDetails user, String path, UUID objectId) {
+        return objectId != null
+                ? pathService.buildObjectIdPath(objectId)
+                : pathService.buildUserPath(user.getId(), path);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        uploadExecutor.shutdownNow();
+    }
 }
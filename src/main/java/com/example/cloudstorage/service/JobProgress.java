@@ -0,0 +1,30 @@
+package com.example.cloudstorage.service;
+
+/**
+ * Progress sink for operations that can run as background jobs.
+ * Operations report completed objects and poll for cancellation between units of work;
+ * {@link #NONE} is used when an operation runs directly within a request.
+ */
+public interface JobProgress {
+
+    JobProgress NONE = new JobProgress() {
+        @Override
+        public void advance(long objects, long bytes) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    /**
+     * Reports objects (and their bytes) that have been fully processed.
+     */
+    void advance(long objects, long bytes);
+
+    /**
+     * Whether the operation should stop at the next safe point.
+     */
+    boolean isCancelled();
+}
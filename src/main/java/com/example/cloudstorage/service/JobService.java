@@ -0,0 +1,264 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.dto.JobInfo;
+import com.example.cloudstorage.entity.Job;
+import com.example.cloudstorage.entity.JobStatus;
+import com.example.cloudstorage.entity.JobType;
+import com.example.cloudstorage.exception.InvalidPathException;
+import com.example.cloudstorage.exception.ResourceAlreadyExistsException;
+import com.example.cloudstorage.exception.ResourceNotFoundException;
+import com.example.cloudstorage.exception.StorageException;
+import com.example.cloudstorage.repository.JobRepository;
+import com.example.cloudstorage.security.CustomUserDetails;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Service for the durable background job queue stored in PostgreSQL.
+ *
+ * Directory deletes, moves and ZIP downloads above {@code storage.jobs.async-threshold}
+ * catalog entries are queued here instead of running on a request thread;
+ * {@link JobWorker} executes them. Clients poll the job for progress and may cancel it.
+ * The ZIP of an archive job is stored in the bucket under {@value #RESULT_PREFIX},
+ * outside every user prefix, and removed together with the job after the retention period.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobService {
+
+    private final JobRepository jobRepository;
+    private final MinioClient minioClient;
+    private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
+    private final PathService pathService;
+    private final MetadataService metadataService;
+
+    static final String RESULT_PREFIX = "jobs/";
+    private static final String SLASH = "/";
+
+    /**
+     * Queues the operation as a job if the directory it targets is large.
+     * Small directories and files return empty, so the caller runs the operation directly.
+     *
+     * @param user User requesting the operation
+     * @param type Operation to perform
+     * @param sourcePath Directory to delete, move or archive
+     * @param targetPath Destination of a move, otherwise null
+     * @return The queued job, or empty if the operation should run synchronously
+     * @throws InvalidPathException if paths are invalid
+     * @throws ResourceAlreadyExistsException if the target of a move already exists
+     */
+    public Optional<JobInfo> submitIfLarge(CustomUserDetails user, JobType type, String sourcePath, String targetPath) {
+        pathService.validatePath(sourcePath);
+        if (!sourcePath.endsWith(SLASH) || (type != JobType.ARCHIVE && SLASH.equals(sourcePath))) {
+            return Optional.empty();
+        }
+        // Moving a folder to the trash is a single statement, however large the folder is
+        if (type == JobType.DELETE && storageProperties.getTrash().isEnabled()) {
+            return Optional.empty();
+        }
+
+        int threshold = storageProperties.getJobs().getAsyncThreshold();
+        if (metadataService.countEntries(user.getId(), sourcePath, threshold) < threshold) {
+            return Optional.empty();
+        }
+
+        if (type == JobType.MOVE) {
+            pathService.validatePath(targetPath);
+            if (!targetPath.endsWith(SLASH)) {
+                throw new InvalidPathException("Resource type must match (file -> file, folder/ -> folder/).");
+            }
+            if (targetPath.startsWith(sourcePath)) {
+                throw new InvalidPathException("A folder cannot be moved into itself: " + sourcePath + " -> " + targetPath);
+            }
+            if (metadataService.exists(user.getId(), targetPath)) {
+                throw new ResourceAlreadyExistsException("Target resource already exists: " + targetPath);
+            }
+            if (metadataService.isHeldByTrash(user.getId(), targetPath)) {
+                throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + targetPath);
+            }
+        }
+
+        Job job = new Job();
+        job.setUserId(user.getId());
+        job.setType(type);
+        job.setStatus(JobStatus.QUEUED);
+        job.setSourcePath(sourcePath);
+        job.setTargetPath(targetPath);
+        job = jobRepository.save(job);
+
+        log.info("Queued {} job {} for user {}: '{}'", type, job.getId(), user.getId(), sourcePath);
+        return Optional.of(toInfo(job));
+    }
+
+    /**
+     * Returns the state and progress of a job.
+     *
+     * @throws ResourceNotFoundException if the job does not exist or belongs to another user
+     */
+    public JobInfo getJob(CustomUserDetails user, UUID jobId) {
+        return toInfo(findJob(user, jobId));
+    }
+
+    /**
+     * Lists the user's jobs, newest first.
+     */
+    public List<JobInfo> listJobs(CustomUserDetails user) {
+        return jobRepository.findByUserIdOrderByCreatedAtDesc(user.getId()).stream()
+                .map(this::toInfo)
+                .toList();
+    }
+
+    /**
+     * Cancels a job. A queued job is cancelled immediately; a running job stops at its next
+     * progress check and keeps the work done so far. Finished jobs are left unchanged.
+     *
+     * @return Job state after the request
+     * @throws ResourceNotFoundException if the job does not exist
+     */
+    public JobInfo cancel(CustomUserDetails user, UUID jobId) {
+        findJob(user, jobId);
+        if (jobRepository.cancelIfQueued(jobId) == 0) {
+            jobRepository.requestCancel(jobId);
+        }
+        return toInfo(findJob(user, jobId));
+    }
+
+    /**
+     * Opens the ZIP produced by a finished archive job.
+     *
+     * @throws ResourceNotFoundException if the job does not exist or has no result
+     * @throws StorageException if MinIO operation fails
+     */
+    public InputStream openResult(CustomUserDetails user, UUID jobId) {
+        Job job = findJob(user, jobId);
+        if (job.getStatus() != JobStatus.SUCCEEDED || job.getResultObject() == null) {
+            throw new ResourceNotFoundException("Job has no result: " + jobId);
+        }
+
+        try {
+            return minioClient.getObject(GetObjectArgs.builder()
+                    .bucket(minioProperties.getBucketName())
+                    .object(job.getResultObject())
+                    .build());
+        } catch (Exception e) {
+            log.error("Failed to open result of job {}", jobId, e);
+            throw new StorageException("Failed to open job result: " + jobId, e);
+        }
+    }
+
+    /**
+     * Claims the oldest queued job for execution, skipping jobs locked by other workers.
+     */
+    @Transactional
+    public Optional<Job> claimNext() {
+        return jobRepository.lockNextQueued().map(job -> {
+            job.setStatus(JobStatus.RUNNING);
+            job.setStartedAt(LocalDateTime.now());
+            return jobRepository.save(job);
+        });
+    }
+
+    /**
+     * Stores the object count determined when a job starts and, for archive jobs, the result key.
+     */
+    @Transactional
+    public void start(UUID jobId, long objectsTotal, String resultObject) {
+        jobRepository.findById(jobId).ifPresent(job -> {
+            job.setObjectsTotal(objectsTotal);
+            job.setResultObject(resultObject);
+            jobRepository.save(job);
+        });
+    }
+
+    /**
+     * Records the final state of a job.
+     */
+    @Transactional
+    public void finish(UUID jobId, JobStatus status, long objectsDone, long bytesDone, String error) {
+        jobRepository.findById(jobId).ifPresent(job -> {
+            job.setStatus(status);
+            job.setObjectsDone(objectsDone);
+            job.setBytesDone(bytesDone);
+            job.setError(error);
+            job.setFinishedAt(LocalDateTime.now());
+            jobRepository.save(job);
+        });
+    }
+
+    /**
+     * Fails running jobs without a heartbeat, e.g. because their instance was stopped.
+     * They are not retried automatically: a partly done move would conflict with its own target.
+     */
+    public void failAbandoned() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(storageProperties.getJobs().getStaleAfter());
+        for (Job job : jobRepository.findByStatusAndUpdatedAtBefore(JobStatus.RUNNING, cutoff)) {
+            log.warn("Job {} of user {} was abandoned by its worker", job.getId(), job.getUserId());
+            finish(job.getId(), JobStatus.FAILED, job.getObjectsDone(), job.getBytesDone(),
+                    "Job was interrupted before it finished");
+        }
+    }
+
+    /**
+     * Removes finished jobs after the retention period, together with their results.
+     */
+    @Scheduled(fixedDelayString = "${storage.jobs.cleanup-interval:PT1H}")
+    public void purgeFinishedJobs() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(storageProperties.getJobs().getRetention());
+
+        for (Job job : jobRepository.findByFinishedAtBefore(cutoff)) {
+            if (job.getResultObject() != null) {
+                removeResultQuietly(job.getResultObject());
+            }
+            jobRepository.delete(job);
+        }
+    }
+
+    void removeResultQuietly(String resultObject) {
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(minioProperties.getBucketName())
+                    .object(resultObject)
+                    .build());
+        } catch (Exception e) {
+            log.warn("Failed to remove job result {}", resultObject, e);
+        }
+    }
+
+    private Job findJob(CustomUserDetails user, UUID jobId) {
+        return jobRepository.findByIdAndUserId(jobId, user.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Job not found: " + jobId));
+    }
+
+    private JobInfo toInfo(Job job) {
+        return JobInfo.builder()
+                .id(job.getId())
+                .type(job.getType())
+                .status(job.getStatus())
+                .sourcePath(job.getSourcePath())
+                .targetPath(job.getTargetPath())
+                .objectsTotal(job.getObjectsTotal())
+                .objectsDone(job.getObjectsDone())
+                .bytesDone(job.getBytesDone())
+                .error(job.getError())
+                .createdAt(job.getCreatedAt())
+                .startedAt(job.getStartedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+}
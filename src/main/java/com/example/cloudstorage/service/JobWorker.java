@@ -0,0 +1,247 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.entity.Job;
+import com.example.cloudstorage.entity.JobStatus;
+import com.example.cloudstorage.exception.JobCancelledException;
+import com.example.cloudstorage.repository.JobRepository;
+import com.example.cloudstorage.repository.UserRepository;
+import com.example.cloudstorage.security.CustomUserDetails;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Executes queued background jobs with a bounded number of workers per instance.
+ *
+ * Workers claim jobs through {@link JobService#claimNext()}, so several instances can
+ * share one queue. Progress is written at most once per {@link #PROGRESS_INTERVAL_MILLIS}
+ * and doubles as the heartbeat; the cancellation flag is read at the same time.
+ */
+@Slf4j
+@Component
+public class JobWorker {
+
+    private final JobService jobService;
+    private final JobRepository jobRepository;
+    private final UserRepository userRepository;
+    private final MetadataService metadataService;
+    private final DirectoryService directoryService;
+    private final ResourceMoveService resourceMoveService;
+    private final ArchiveService archiveService;
+    private final MinioClient minioClient;
+    private final MinioProperties minioProperties;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore workerSlots;
+    private final Set<UUID> runningJobs = ConcurrentHashMap.newKeySet();
+
+    private static final long PROGRESS_INTERVAL_MILLIS = 1000;
+    private static final int RESULT_PIPE_CHUNK = 64 * 1024;
+    private static final int RESULT_PIPE_CHUNKS = 16;
+    private static final long RESULT_PART_SIZE = 16L * 1024 * 1024;
+
+    public JobWorker(JobService jobService,
+                     JobRepository jobRepository,
+                     UserRepository userRepository,
+                     MetadataService metadataService,
+                     DirectoryService directoryService,
+                     ResourceMoveService resourceMoveService,
+                     ArchiveService archiveService,
+                     MinioClient minioClient,
+                     MinioProperties minioProperties,
+                     StorageProperties storageProperties) {
+        this.jobService = jobService;
+        this.jobRepository = jobRepository;
+        this.userRepository = userRepository;
+        this.metadataService = metadataService;
+        this.directoryService = directoryService;
+        this.resourceMoveService = resourceMoveService;
+        this.archiveService = archiveService;
+        this.minioClient = minioClient;
+        this.minioProperties = minioProperties;
+        this.workerSlots = new Semaphore(storageProperties.getJobs().getWorkers());
+    }
+
+    /**
+     * Sends the heartbeat of running jobs, fails abandoned ones and starts queued jobs
+     * while worker slots are free.
+     */
+    @Scheduled(fixedDelayString = "${storage.jobs.poll-interval:PT1S}")
+    public void poll() {
+        if (!runningJobs.isEmpty()) {
+            jobRepository.touch(runningJobs);
+        }
+        jobService.failAbandoned();
+
+        while (workerSlots.tryAcquire()) {
+            Optional<Job> claimed;
+            try {
+                claimed = jobService.claimNext();
+            } catch (RuntimeException e) {
+                workerSlots.release();
+                throw e;
+            }
+            if (claimed.isEmpty()) {
+                workerSlots.release();
+                return;
+            }
+
+            Job job = claimed.get();
+            runningJobs.add(job.getId());
+            executor.execute(() -> {
+                try {
+                    run(job);
+                } finally {
+                    runningJobs.remove(job.getId());
+                    workerSlots.release();
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void run(Job job) {
+        TrackedProgress progress = new TrackedProgress(job.getId());
+        try {
+            CustomUserDetails user = userRepository.findById(job.getUserId())
+                    .map(u -> new CustomUserDetails(u.getId(), u.getUsername(), u.getPassword()))
+                    .orElseThrow(() -> new IllegalStateException("User no longer exists"));
+
+            long total = metadataService.countEntries(user.getId(), job.getSourcePath(), Long.MAX_VALUE);
+            log.info("Starting {} job {} for user {}: '{}' ({} entries)",
+                    job.getType(), job.getId(), user.getId(), job.getSourcePath(), total);
+
+            switch (job.getType()) {
+                case DELETE -> {
+                    jobService.start(job.getId(), total, null);
+                    directoryService.deleteDirectory(user, job.getSourcePath(), progress);
+                }
+                case MOVE -> {
+                    jobService.start(job.getId(), total, null);
+                    resourceMoveService.moveOrRenameResource(user, job.getSourcePath(), job.getTargetPath(), progress);
+                }
+                case ARCHIVE -> {
+                    String resultObject = JobService.RESULT_PREFIX + job.getId() + ".zip";
+                    jobService.start(job.getId(), total, resultObject);
+                    archive(user, job.getSourcePath(), resultObject, progress);
+                }
+            }
+
+            finish(job, progress, JobStatus.SUCCEEDED, null);
+        } catch (JobCancelledException e) {
+            finish(job, progress, JobStatus.CANCELLED, e.getMessage());
+        } catch (Exception e) {
+            log.error("{} job {} failed", job.getType(), job.getId(), e);
+            finish(job, progress, JobStatus.FAILED, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private void finish(Job job, TrackedProgress progress, JobStatus status, String error) {
+        jobService.finish(job.getId(), status, progress.objects, progress.bytes, error);
+        log.info("{} job {} {}: {} objects, {} bytes",
+                job.getType(), job.getId(), status, progress.objects, progress.bytes);
+    }
+
+    /**
+     * Streams the ZIP of a directory into the bucket without buffering it:
+     * the archive is written to a pipe on a separate thread while this thread uploads it
+     * as a multipart object of unknown length.
+     */
+    private void archive(CustomUserDetails user, String path, String resultObject, JobProgress progress)
+            throws Exception {
+        BlockingPipe pipe = new BlockingPipe(RESULT_PIPE_CHUNK, RESULT_PIPE_CHUNKS);
+        InputStream in = pipe.source();
+        OutputStream out = pipe.sink();
+
+        Future<?> writer = executor.submit(() -> {
+            try (out) {
+                archiveService.writeArchive(user, path, out, progress);
+            }
+            return null;
+        });
+
+        try (in) {
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(minioProperties.getBucketName())
+                    .object(resultObject)
+                    .stream(in, -1, RESULT_PART_SIZE)
+                    .contentType("application/zip")
+                    .build());
+        } catch (Exception e) {
+            writer.cancel(true);
+            throw e;
+        }
+
+        // The upload also completes when the writer fails and closes the pipe early
+        try {
+            writer.get();
+        } catch (ExecutionException e) {
+            jobService.removeResultQuietly(resultObject);
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw new IOException("Archive writer failed", e.getCause());
+        }
+    }
+
+    /**
+     * Progress of one job. Used by one thread at a time: the job thread, or the archive writer.
+     */
+    private class TrackedProgress implements JobProgress {
+
+        private final UUID jobId;
+        private long objects;
+        private long bytes;
+        private long lastFlush = System.currentTimeMillis();
+        private boolean cancelled;
+
+        TrackedProgress(UUID jobId) {
+            this.jobId = jobId;
+        }
+
+        @Override
+        public void advance(long objects, long bytes) {
+            this.objects += objects;
+            this.bytes += bytes;
+            flushIfDue();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            flushIfDue();
+            return cancelled;
+        }
+
+        private void flushIfDue() {
+            long now = System.currentTimeMillis();
+            if (now - lastFlush < PROGRESS_INTERVAL_MILLIS) {
+                return;
+            }
+            lastFlush = now;
+            jobRepository.updateProgress(jobId, objects, bytes);
+            cancelled = jobRepository.isCancelRequested(jobId);
+        }
+    }
+}
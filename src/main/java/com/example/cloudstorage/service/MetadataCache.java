@@ -0,0 +1,411 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Two-level cache for catalog lookups by path, used by {@link MetadataService}.
+ *
+ * Level 1 is a local Caffeine cache, level 2 a Redis hash per user shared by all instances.
+ * Absent paths are cached as well, with the shorter {@code storage.cache.negative-ttl}.
+ *
+ * Mutations invalidate the affected paths or path prefixes on both levels once their
+ * transaction has committed, and publish the invalidation so other instances drop their
+ * local copies. Redis failures are logged and treated as a miss; the catalog stays the source of truth.
+ * A shared eviction bumps a per-user generation in Redis, and values loaded from the catalog are only
+ * written to the shared level if the generation is still the one seen before loading, so a lookup
+ * racing a mutation on another instance cannot put the old row back.
+ * The same invalidations drop the cached contents of path-keyed objects from {@link ObjectContentCache}.
+ */
+@Slf4j
+@Service
+public class MetadataCache implements MessageListener {
+
+    public static final String INVALIDATION_CHANNEL = "cloudstorage:metadata:invalidations";
+
+    private static final String KEY_PREFIX = "cloudstorage:metadata:";
+    private static final char EXPIRY_SEPARATOR = '|';
+    private static final int SCAN_COUNT = 1000;
+
+    /**
+     * Generations outlive any lookup by far; one that expired and restarts could match a stale read.
+     */
+    private static final Duration GENERATION_TTL = Duration.ofDays(1);
+
+    /**
+     * Writes hash fields (ARGV 3..n, pairs) and refreshes the hash expiry (ARGV 2, ms)
+     * unless the generation (KEYS 2) has changed from ARGV 1.
+     */
+    private static final RedisScript<Long> WRITE_IF_GENERATION = RedisScript.of("""
+            if (redis.call('GET', KEYS[2]) or '') ~= ARGV[1] then
+                return 0
+            end
+            for i = 3, #ARGV, 2 do
+                redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            return 1
+            """, Long.class);
+
+    private final StorageProperties.Cache settings;
+    private final StringRedisTemplate redis;
+    private final JsonMapper jsonMapper;
+    private final ObjectContentCache contentCache;
+    private final Cache<Key, Optional<ResourceMetadata>> local;
+
+    /**
+     * Bumped by every local eviction; a value loaded while it changed may be stale and is not stored.
+     */
+    private final AtomicLong generation = new AtomicLong();
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private record Key(Long userId, String path) {
+    }
+
+    /**
+     * Invalidation published to other instances.
+     *
+     * @param prefix Whether {@code paths} are prefixes (directories) rather than exact paths
+     */
+    record Invalidation(String origin, Long userId, List<String> paths, boolean prefix) {
+    }
+
+    public MetadataCache(StorageProperties storageProperties,
+                         ObjectProvider<StringRedisTemplate> redis,
+                         JsonMapper jsonMapper,
+                         ObjectContentCache contentCache,
+                         MeterRegistry meterRegistry) {
+        this.settings = storageProperties.getCache();
+        this.redis = settings.isEnabled() && settings.isRedisEnabled() ? redis.getIfAvailable() : null;
+        this.jsonMapper = jsonMapper;
+        this.contentCache = contentCache;
+        this.local = Caffeine.newBuilder()
+                .maximumSize(settings.getMaximumSize())
+                .expireAfter(new Expiry<Key, Optional<ResourceMetadata>>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Optional<ResourceMetadata> value, long currentTime) {
+                        return ttlOf(value).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Optional<ResourceMetadata> value,
+                                                  long currentTime, long currentDuration) {
+                        return ttlOf(value).toNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Optional<ResourceMetadata> value,
+                                                long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "metadata");
+    }
+
+    /**
+     * Returns the cached entry for a path, loading it from the catalog on a miss.
+     *
+     * @param path Normalized path
+     * @param loader Catalog lookup for the path
+     */
+    Optional<ResourceMetadata> get(Long userId, String path, Supplier<Optional<ResourceMetadata>> loader) {
+        return getAll(userId, List.of(path), missing -> loader.get().map(List::of).orElse(List.of()))
+                .get(path);
+    }
+
+    /**
+     * Returns the entries for several paths, loading all misses with a single catalog lookup.
+     *
+     * @param paths Normalized paths
+     * @param loader Catalog lookup returning the existing entries among the given paths
+     * @return Entry (or empty) for every given path
+     */
+    Map<String, Optional<ResourceMetadata>> getAll(Long userId, Collection<String> paths,
+                                                   Function<Collection<String>, List<ResourceMetadata>> loader) {
+        Map<String, Optional<ResourceMetadata>> result = new HashMap<>();
+        if (!settings.isEnabled()) {
+            paths.forEach(path -> result.put(path, Optional.empty()));
+            loader.apply(paths).forEach(entry -> result.put(entry.getPath(), Optional.of(entry)));
+            return result;
+        }
+
+        List<String> missing = new ArrayList<>();
+        for (String path : paths) {
+            Optional<ResourceMetadata> cached = local.getIfPresent(new Key(userId, path));
+            if (cached != null) {
+                result.put(path, cached);
+            } else {
+                missing.add(path);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        long seen = generation.get();
+        String sharedSeen = sharedGeneration(userId);
+        Map<String, Optional<ResourceMetadata>> shared = readShared(userId, missing);
+
+        Map<String, Optional<ResourceMetadata>> loaded = new HashMap<>();
+        List<String> unknown = missing.stream().filter(path -> !shared.containsKey(path)).toList();
+        if (!unknown.isEmpty()) {
+            unknown.forEach(path -> loaded.put(path, Optional.empty()));
+            loader.apply(unknown).forEach(entry -> loaded.put(entry.getPath(), Optional.of(entry)));
+        }
+
+        if (generation.get() == seen) {
+            shared.forEach((path, value) -> local.put(new Key(userId, path), value));
+            loaded.forEach((path, value) -> local.put(new Key(userId, path), value));
+            writeShared(userId, sharedSeen, loaded);
+        }
+        result.putAll(shared);
+        result.putAll(loaded);
+        return result;
+    }
+
+    /**
+     * Invalidates exact paths, e.g. a recorded file or a removed batch of entries.
+     */
+    void invalidate(Long userId, Collection<String> paths) {
+        if (!paths.isEmpty()) {
+            invalidateAfterCommit(new Invalidation(instanceId, userId, List.copyOf(paths), false));
+        }
+    }
+
+    /**
+     * Invalidates a path and everything beneath it, e.g. a moved or removed directory.
+     */
+    void invalidatePrefix(Long userId, String... prefixes) {
+        invalidateAfterCommit(new Invalidation(instanceId, userId, List.of(prefixes), true));
+    }
+
+    /**
+     * Applies invalidations published by other instances to the local cache.
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            Invalidation invalidation = jsonMapper.readValue(message.getBody(), Invalidation.class);
+            if (!instanceId.equals(invalidation.origin())) {
+                evictLocal(invalidation);
+            }
+        } catch (Exception e) {
+            log.warn("Ignoring malformed metadata cache invalidation: {}",
+                    new String(message.getBody(), StandardCharsets.UTF_8), e);
+        }
+    }
+
+    /**
+     * Invalidates once the surrounding transaction has committed; evicting earlier would let
+     * a concurrent lookup cache the old row again before the change becomes visible.
+     */
+    private void invalidateAfterCommit(Invalidation invalidation) {
+        if (!settings.isEnabled() && !settings.isContentEnabled()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(invalidation);
+                }
+            });
+        } else {
+            apply(invalidation);
+        }
+    }
+
+    private void apply(Invalidation invalidation) {
+        evictLocal(invalidation);
+        if (redis == null) {
+            return;
+        }
+        try {
+            evictShared(invalidation);
+            redis.convertAndSend(INVALIDATION_CHANNEL, jsonMapper.writeValueAsString(invalidation));
+        } catch (Exception e) {
+            log.warn("Failed to invalidate shared metadata cache for user {}: {}",
+                    invalidation.userId(), invalidation.paths(), e);
+        }
+    }
+
+    private void evictLocal(Invalidation invalidation) {
+        generation.incrementAndGet();
+        Long userId = invalidation.userId();
+        if (invalidation.prefix()) {
+            local.asMap().keySet().removeIf(key -> key.userId().equals(userId)
+                    && invalidation.paths().stream().anyMatch(key.path()::startsWith));
+            contentCache.invalidatePrefix(userId, invalidation.paths());
+        } else {
+            local.invalidateAll(invalidation.paths().stream().map(path -> new Key(userId, path)).toList());
+            contentCache.invalidate(userId, invalidation.paths());
+        }
+    }
+
+    private void evictShared(Invalidation invalidation) {
+        String key = redisKey(invalidation.userId());
+        HashOperations<String, String, String> hash = redis.opsForHash();
+
+        // Before deleting: a lookup that loaded the old row must not write it back afterwards
+        String generationKey = generationKey(invalidation.userId());
+        redis.opsForValue().increment(generationKey);
+        redis.expire(generationKey, GENERATION_TTL);
+
+        if (!invalidation.prefix()) {
+            hash.delete(key, invalidation.paths().toArray());
+            return;
+        }
+        for (String prefix : invalidation.paths()) {
+            if (prefix.isEmpty()) {
+                redis.delete(key);
+                continue;
+            }
+            List<String> fields = new ArrayList<>();
+            ScanOptions options = ScanOptions.scanOptions().match(escapeGlob(prefix) + "*").count(SCAN_COUNT).build();
+            try (Cursor<Map.Entry<String, String>> cursor = hash.scan(key, options)) {
+                cursor.forEachRemaining(entry -> fields.add(entry.getKey()));
+            }
+            if (!fields.isEmpty()) {
+                hash.delete(key, fields.toArray());
+            }
+        }
+    }
+
+    /**
+     * Reads paths from the shared level. Expired values count as misses.
+     *
+     * @return Values of the paths found; empty if Redis is disabled or unavailable
+     */
+    private Map<String, Optional<ResourceMetadata>> readShared(Long userId, List<String> paths) {
+        Map<String, Optional<ResourceMetadata>> found = new HashMap<>();
+        if (redis == null) {
+            return found;
+        }
+        try {
+            HashOperations<String, String, String> hash = redis.opsForHash();
+            List<String> values = hash.multiGet(redisKey(userId), paths);
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < paths.size(); i++) {
+                String value = values.get(i);
+                if (value == null) {
+                    continue;
+                }
+                int separator = value.indexOf(EXPIRY_SEPARATOR);
+                if (Long.parseLong(value.substring(0, separator)) <= now) {
+                    continue;
+                }
+                String json = value.substring(separator + 1);
+                found.put(paths.get(i), json.isEmpty()
+                        ? Optional.empty()
+                        : Optional.of(jsonMapper.readValue(json, ResourceMetadata.class)));
+            }
+        } catch (Exception e) {
+            log.warn("Shared metadata cache unavailable, reading from the catalog: {}", e.getMessage());
+            found.clear();
+        }
+        return found;
+    }
+
+    /**
+     * Reads the shared generation of a user, to be passed to {@link #writeShared}.
+     *
+     * @return Generation, empty if none was bumped yet; null if Redis is disabled or unavailable
+     */
+    private String sharedGeneration(Long userId) {
+        if (redis == null) {
+            return null;
+        }
+        try {
+            String value = redis.opsForValue().get(generationKey(userId));
+            return value != null ? value : "";
+        } catch (Exception e) {
+            log.warn("Shared metadata cache unavailable, reading from the catalog: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Stores values on the shared level, each prefixed with its expiry time, unless the user's
+     * shared generation changed since {@code seenGeneration} was read. The hash itself
+     * expires with the positive TTL, so the entries of inactive users disappear.
+     */
+    private void writeShared(Long userId, String seenGeneration, Map<String, Optional<ResourceMetadata>> values) {
+        if (redis == null || seenGeneration == null || values.isEmpty()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            List<String> args = new ArrayList<>();
+            args.add(seenGeneration);
+            args.add(String.valueOf(settings.getTtl().toMillis()));
+            values.forEach((path, value) -> {
+                args.add(path);
+                args.add((now + ttlOf(value).toMillis()) + String.valueOf(EXPIRY_SEPARATOR)
+                        + value.map(jsonMapper::writeValueAsString).orElse(""));
+            });
+
+            redis.execute(WRITE_IF_GENERATION, List.of(redisKey(userId), generationKey(userId)), args.toArray());
+        } catch (Exception e) {
+            log.warn("Failed to write shared metadata cache for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private Duration ttlOf(Optional<ResourceMetadata> value) {
+        return value.isPresent() ? settings.getTtl() : settings.getNegativeTtl();
+    }
+
+    private static String redisKey(Long userId) {
+        return KEY_PREFIX + userId;
+    }
+
+    private static String generationKey(Long userId) {
+        return KEY_PREFIX + "generation:" + userId;
+    }
+
+    /**
+     * Escapes glob characters for a Redis MATCH pattern; they are legal in paths.
+     */
+    private static String escapeGlob(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '*' || c == '?' || c == '[' || c == ']' || c == '\\') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
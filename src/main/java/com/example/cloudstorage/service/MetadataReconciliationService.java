@@ -0,0 +1,259 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.example.cloudstorage.repository.ResourceMetadataRepository;
+import com.example.cloudstorage.repository.UserRepository;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Service that repairs drift between the metadata catalog and the MinIO bucket.
+ *
+ * Both sides are walked in key order and merged, so memory stays constant
+ * regardless of how many objects a user has:
+ * 1. Objects missing from the catalog are added (including their parent directories)
+ * 2. Catalog entries without an object are removed, unless they are directories with content
+ *    or files whose content is stored outside the user prefix (shared blobs and object ids).
+ *    With the object id layout, directories have no marker object and are never removed
+ * 3. Files whose size or ETag differ are updated
+ *
+ * Entries touched within the grace period are skipped to avoid racing in-flight operations.
+ *
+ * An empty catalog, e.g. right after it was introduced, is filled from the bucket during startup,
+ * before the application serves requests; otherwise existing files would be missing until the first run.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MetadataReconciliationService implements SmartInitializingSingleton {
+
+    private final MinioClient minioClient;
+    private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
+    private final PathService pathService;
+    private final MetadataService metadataService;
+    private final ResourceMetadataRepository metadataRepository;
+    private final UserRepository userRepository;
+
+    private static final String SLASH = "/";
+
+    /**
+     * Summary of repairs made for a single user.
+     */
+    public record ReconciliationReport(int added, int updated, int removed) {
+    }
+
+    /**
+     * Imports the objects of all users into an empty catalog. Runs once all beans exist,
+     * before the web server accepts connections, so no request sees the catalog half filled.
+     * Objects are imported regardless of their age, as nothing is written to the bucket yet.
+     *
+     * @throws IllegalStateException if the bucket of a user cannot be listed; starting with an
+     *         incomplete catalog would hide the user's files
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (metadataRepository.count() > 0) {
+            return;
+        }
+
+        int users = 0;
+        int added = 0;
+        for (Long userId : userRepository.findAllIds()) {
+            try {
+                added += reconcileUser(userId, LocalDateTime.now()).added();
+            } catch (Exception e) {
+                throw new IllegalStateException("Initial catalog import failed for user " + userId, e);
+            }
+            users++;
+        }
+        if (added > 0) {
+            log.info("Imported {} existing objects of {} users into the empty catalog", added, users);
+        }
+    }
+
+    /**
+     * Reconciles the catalogs of all users.
+     * Runs on a schedule; a failure for one user does not stop the others.
+     */
+    @Scheduled(
+            initialDelayString = "${storage.metadata.reconcile-initial-delay:PT1M}",
+            fixedDelayString = "${storage.metadata.reconcile-interval:PT1H}"
+    )
+    public void reconcileAll() {
+        if (!storageProperties.getMetadata().isReconcileEnabled()) {
+            return;
+        }
+
+        for (Long userId : userRepository.findAllIds()) {
+            try {
+                reconcileUser(userId);
+            } catch (Exception e) {
+                log.error("Metadata reconciliation failed for user {}", userId, e);
+            }
+        }
+    }
+
+    /**
+     * Reconciles the catalog of one user against the objects under their MinIO prefix.
+     *
+     * @param userId User whose catalog is reconciled
+     * @return Counts of added, updated and removed catalog entries
+     * @throws Exception if listing the bucket fails
+     */
+    public ReconciliationReport reconcileUser(Long userId) throws Exception {
+        return reconcileUser(userId, LocalDateTime.now().minus(storageProperties.getMetadata().getReconcileGracePeriod()));
+    }
+
+    /**
+     * Reconciles the catalog of one user, leaving alone objects and entries changed after {@code cutoff}.
+     */
+    private ReconciliationReport reconcileUser(Long userId, LocalDateTime cutoff) throws Exception {
+        Iterator<Result<Item>> objects = minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .prefix(pathService.buildUserPath(userId, ""))
+                .recursive(true)
+                .build()).iterator();
+        CatalogCursor catalog = new CatalogCursor(userId);
+
+        int added = 0;
+        int updated = 0;
+        int removed = 0;
+
+        Item object = nextObject(objects, userId);
+        ResourceMetadata entry = catalog.next();
+
+        while (object != null || entry != null) {
+            String objectPath = object != null ? relativePath(object, userId) : null;
+            int cmp = object == null ? 1 : entry == null ? -1 : compareKeys(objectPath, entry.getPath());
+
+            if (cmp < 0) {
+                if (isOlderThan(object, cutoff)) {
+                    addEntry(userId, objectPath, object);
+                    added++;
+                }
+                object = nextObject(objects, userId);
+            } else if (cmp > 0) {
+                boolean hasContent = entry.isDirectory() && objectPath != null && objectPath.startsWith(entry.getPath());
+                boolean markerless = entry.isDirectory() && storageProperties.getLayout().isObjectIds();
+                if (!hasContent && !markerless && pathService.isKeyedByPath(entry)
+                        && entry.getUpdatedAt().isBefore(cutoff)) {
+                    metadataService.removeEntries(userId, List.of(entry.getPath()));
+                    removed++;
+                }
+                entry = catalog.next();
+            } else {
+                // An object at the path of a file stored elsewhere is a leftover and does not describe the file
+                if (!entry.isDirectory() && pathService.isKeyedByPath(entry)
+                        && isOlderThan(object, cutoff) && differs(entry, object)) {
+                    metadataService.recordFile(userId, objectPath, object.size(), object.etag(), entry.getContentType());
+                    updated++;
+                }
+                object = nextObject(objects, userId);
+                entry = catalog.next();
+            }
+        }
+
+        if (added + updated + removed > 0) {
+            log.info("Reconciled metadata for user {}: {} added, {} updated, {} removed",
+                    userId, added, updated, removed);
+        }
+        return new ReconciliationReport(added, updated, removed);
+    }
+
+    private void addEntry(Long userId, String path, Item object) {
+        metadataService.recordMissingParents(userId, path);
+        if (path.endsWith(SLASH)) {
+            metadataService.recordDirectory(userId, path);
+        } else {
+            metadataService.recordFile(userId, path, object.size(), object.etag(), null);
+        }
+    }
+
+    /**
+     * Compares paths in the order both sides are listed in: MinIO and the catalog's COLLATE "C" keyset
+     * sort by UTF-8 bytes, which differs from {@link String#compareTo} for characters outside the BMP.
+     */
+    private static int compareKeys(String a, String b) {
+        return Arrays.compareUnsigned(a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private boolean differs(ResourceMetadata entry, Item object) {
+        return !Objects.equals(entry.getSize(), object.size())
+                || !Objects.equals(entry.getEtag(), MetadataService.normalizeEtag(object.etag()));
+    }
+
+    private boolean isOlderThan(Item object, LocalDateTime cutoff) {
+        if (object.lastModified() == null) {
+            return true;
+        }
+        LocalDateTime modified = object.lastModified()
+                .withZoneSameInstant(ZoneId.systemDefault())
+                .toLocalDateTime();
+        return modified.isBefore(cutoff);
+    }
+
+    private String relativePath(Item object, Long userId) {
+        return pathService.stripUserPath(object.objectName(), userId);
+    }
+
+    /**
+     * Returns the next object below the user root, skipping the root marker itself.
+     */
+    private Item nextObject(Iterator<Result<Item>> objects, Long userId) throws Exception {
+        while (objects.hasNext()) {
+            Item item = objects.next().get();
+            if (!relativePath(item, userId).isEmpty()) {
+                return item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Iterates catalog entries of a user in path order, one keyset page at a time.
+     */
+    private class CatalogCursor {
+
+        private final Long userId;
+        private Iterator<ResourceMetadata> page = List.<ResourceMetadata>of().iterator();
+        private String lastPath = "";
+        private boolean exhausted;
+
+        CatalogCursor(Long userId) {
+            this.userId = userId;
+        }
+
+        ResourceMetadata next() {
+            if (!page.hasNext() && !exhausted) {
+                int batchSize = storageProperties.getMetadata().getReconcileBatchSize();
+                List<ResourceMetadata> rows = metadataRepository.findPageAfter(userId, lastPath, batchSize);
+                exhausted = rows.size() < batchSize;
+                page = rows.iterator();
+            }
+            if (!page.hasNext()) {
+                return null;
+            }
+            ResourceMetadata row = page.next();
+            lastPath = row.getPath();
+            return row;
+        }
+    }
+}
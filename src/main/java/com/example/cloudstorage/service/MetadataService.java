@@ -0,0 +1,476 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.example.cloudstorage.repository.ResourceMetadataRepository;
+import com.example.cloudstorage.repository.TrashEntryRepository;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service for the resource metadata catalog stored in PostgreSQL.
+ * The catalog is the source of truth for listings, existence checks and resource info,
+ * so these no longer require a MinIO round trip.
+ *
+ * Mutation services write to MinIO first and then update the catalog.
+ * Any drift left behind by a failure in between is repaired by {@link MetadataReconciliationService}.
+ *
+ * Lookups by path go through {@link MetadataCache}; every mutation here invalidates the paths it touches.
+ *
+ * Entries of a folder in the trash keep their paths but are hidden from lookups, listings and search;
+ * their paths stay taken until the folder is restored or purged (see {@link #isHeldByTrash}).
+ */
+@Service
+@RequiredArgsConstructor
+public class MetadataService {
+
+    private final ResourceMetadataRepository repository;
+    private final TrashEntryRepository trashRepository;
+    private final MetadataCache cache;
+    private final EntityManager entityManager;
+
+    private static final String SLASH = "/";
+
+    /**
+     * Finds the catalog entry for a file or directory.
+     *
+     * @param userId Owner of the resource
+     * @param path Resource path (directories end with '/')
+     * @return Catalog entry, or empty if the resource is unknown or in the trash
+     */
+    @Transactional(readOnly = true)
+    public Optional<ResourceMetadata> find(Long userId, String path) {
+        String normalized = normalize(path);
+        return cache.get(userId, normalized, () -> repository.findByUserIdAndPath(userId, normalized))
+                .filter(MetadataService::isLive);
+    }
+
+    /**
+     * Checks whether a path or one of its ancestors belongs to a folder in the trash.
+     * Nothing can be created there until the folder is restored or purged.
+     */
+    @Transactional(readOnly = true)
+    public boolean isHeldByTrash(Long userId, String path) {
+        List<String> paths = new ArrayList<>();
+        for (String current = normalize(path); !current.isEmpty(); current = parentOf(current)) {
+            paths.add(current);
+        }
+        if (paths.isEmpty()) {
+            return false;
+        }
+        return cache.getAll(userId, paths, missing -> repository.findByUserIdAndPathIn(userId, missing))
+                .values().stream()
+                .flatMap(Optional::stream)
+                .anyMatch(entry -> !isLive(entry));
+    }
+
+    /**
+     * Checks whether a path itself is an entry of a folder in the trash, i.e. its object still belongs to it.
+     */
+    @Transactional(readOnly = true)
+    public boolean isTrashed(Long userId, String path) {
+        String normalized = normalize(path);
+        return cache.get(userId, normalized, () -> repository.findByUserIdAndPath(userId, normalized))
+                .filter(entry -> !isLive(entry))
+                .isPresent();
+    }
+
+    /**
+     * Checks if a file or directory exists. The root directory always exists.
+     */
+    @Transactional(readOnly = true)
+    public boolean exists(Long userId, String path) {
+        String normalized = normalize(path);
+        if (normalized.isEmpty()) {
+            return true;
+        }
+        return find(userId, normalized).isPresent();
+    }
+
+    /**
+     * Checks several paths with one query, e.g. the source and target of a move.
+     * The root directory always exists.
+     *
+     * @return The given paths that exist, as passed in
+     */
+    @Transactional(readOnly = true)
+    public Set<String> existingPaths(Long userId, Collection<String> paths) {
+        Map<String, Optional<ResourceMetadata>> entries = cache.getAll(userId,
+                paths.stream().map(MetadataService::normalize).filter(path -> !path.isEmpty()).distinct().toList(),
+                missing -> repository.findByUserIdAndPathIn(userId, missing));
+        return paths.stream()
+                .filter(path -> {
+                    String normalized = normalize(path);
+                    return normalized.isEmpty() || entries.get(normalized).filter(MetadataService::isLive).isPresent();
+                })
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Lists direct children of a directory using the (user_id, parent_path) index.
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceMetadata> listChildren(Long userId, String directoryPath) {
+        return repository.findByUserIdAndParentPathAndTrashIdIsNullOrderByPath(userId, normalize(directoryPath));
+    }
+
+    /**
+     * Lists direct children of a directory that sort after {@code afterPath}, in path order.
+     *
+     * @param afterPath Path of the last child of the previous page ("" for the first page)
+     * @param limit Maximum number of children
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceMetadata> listChildren(Long userId, String directoryPath, String afterPath, int limit) {
+        return repository.findChildrenAfter(userId, normalize(directoryPath), normalize(afterPath), limit);
+    }
+
+    /**
+     * Lists a directory and everything beneath it in path order, one keyset page at a time.
+     * Includes entries of folders in the trash below the directory.
+     *
+     * @param afterPath Path of the last entry of the previous page ("" for the first page)
+     * @param limit Maximum number of entries
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceMetadata> listSubtree(Long userId, String directoryPath, String afterPath, int limit) {
+        return repository.findSubtreePageAfter(userId, escapeLike(normalize(directoryPath)) + "%",
+                normalize(afterPath), limit);
+    }
+
+    /**
+     * Searches resource names of a user for a case-insensitive substring, best matches first.
+     *
+     * @param query Search query
+     * @param page Zero-based page number
+     * @param size Page size
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceMetadata> search(Long userId, String query, int page, int size) {
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        return repository.searchByName(userId, lowerQuery, escapeLike(lowerQuery), size, (long) page * size);
+    }
+
+    /**
+     * Passes every search match to {@code action} in rank order while the rows are read,
+     * so memory stays flat regardless of the number of matches. Rows are detached as they go,
+     * keeping the persistence context empty. The transaction lasts until the last match is consumed.
+     */
+    @Transactional(readOnly = true)
+    public void forEachSearchMatch(Long userId, String query, Consumer<ResourceMetadata> action) {
+        String lowerQuery = query.toLowerCase(Locale.ROOT);
+        try (Stream<ResourceMetadata> rows = repository.streamByName(userId, lowerQuery, escapeLike(lowerQuery))) {
+            rows.forEach(row -> {
+                entityManager.detach(row);
+                action.accept(row);
+            });
+        }
+    }
+
+    /**
+     * Records a file stored under its path, replacing any previous entry for the same path.
+     */
+    @Transactional
+    public void recordFile(Long userId, String path, long size, String etag, String contentType) {
+        String normalized = normalize(path);
+        repository.upsertFile(userId, normalized, parentOf(normalized), nameOf(normalized),
+                size, normalizeEtag(etag), contentType);
+        cache.invalidate(userId, List.of(normalized));
+    }
+
+    /**
+     * Records a newly uploaded file unless its path is already taken, the create-only counterpart
+     * of {@link #recordFile(Long, String, long, String, String)}.
+     * Concurrent uploads of the same path are decided by the unique index: exactly one of them is recorded.
+     *
+     * @param contentHash Shared blob holding the content, null if the file has its own object
+     * @param objectId Stable object id the file is stored under, null if it is stored under its path or as a blob
+     * @param checksum Hex SHA-256 of the content computed during the upload, null if unknown
+     * @return true if the file was recorded, false if the path was taken
+     */
+    @Transactional
+    public boolean createFile(Long userId, String path, long size, String etag, String contentType,
+                              String contentHash, UUID objectId, String checksum) {
+        String normalized = normalize(path);
+        cache.invalidate(userId, List.of(normalized));
+        return repository.insertFileIfAbsent(userId, normalized, parentOf(normalized), nameOf(normalized),
+                size, normalizeEtag(etag), contentType, contentHash, objectId, checksum) > 0;
+    }
+
+    /**
+     * Lists files with a checksum that were not verified since {@code cutoff}, never verified ones first.
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceMetadata> listDueForVerification(LocalDateTime cutoff, int limit) {
+        return repository.findDueForVerification(cutoff, limit);
+    }
+
+    /**
+     * Records whether the object of {@code entry} still matches its checksum,
+     * unless the file was moved or replaced since the entry was read.
+     *
+     * @param failed true if the object was missing or did not match
+     * @return true if the result was recorded
+     */
+    @Transactional
+    public boolean markVerified(ResourceMetadata entry, boolean failed) {
+        cache.invalidate(entry.getUserId(), List.of(entry.getPath()));
+        return repository.markVerified(entry.getId(), entry.getPath(), entry.getChecksumSha256(), failed) > 0;
+    }
+
+    /**
+     * Records new content of a path-keyed file whose object was overwritten in place,
+     * unless its path or ETag changed since {@code entry} was read.
+     *
+     * @return true if the entry was updated
+     */
+    @Transactional
+    public boolean replaceContent(ResourceMetadata entry, long size, String etag, String contentType) {
+        cache.invalidate(entry.getUserId(), List.of(entry.getPath()));
+        return repository.replaceContent(entry.getId(), entry.getPath(), entry.getEtag(),
+                size, normalizeEtag(etag), contentType) > 0;
+    }
+
+    /**
+     * Switches a path-keyed file to a stable object id, unless its path or ETag
+     * changed since {@code entry} was read.
+     *
+     * @return true if the entry now points to the object id
+     */
+    @Transactional
+    public boolean assignObjectId(ResourceMetadata entry, UUID objectId) {
+        cache.invalidate(entry.getUserId(), List.of(entry.getPath()));
+        return repository.assignObjectId(entry.getId(), entry.getPath(), entry.getEtag(), objectId) > 0;
+    }
+
+    /**
+     * Lists files of a user still stored under their path that were last changed before {@code cutoff},
+     * in path order, one keyset page at a time.
+     *
+     * @param afterPath Path of the last file of the previous page ("" for the first page)
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceMetadata> listPathKeyedFiles(Long userId, String afterPath, LocalDateTime cutoff, int limit) {
+        return repository.findPathKeyedFilesAfter(userId, normalize(afterPath), cutoff, limit);
+    }
+
+    /**
+     * Records a directory if it is not yet in the catalog.
+     *
+     * @return true if a new entry was created
+     */
+    @Transactional
+    public boolean recordDirectory(Long userId, String path) {
+        String normalized = normalize(path);
+        cache.invalidate(userId, List.of(normalized));
+        return repository.insertDirectoryIfAbsent(userId, normalized, parentOf(normalized), nameOf(normalized)) > 0;
+    }
+
+    /**
+     * Creates catalog entries for all missing ancestor directories of a path.
+     * For "a/b/file.txt" this ensures "a/" and "a/b/" exist.
+     *
+     * @return Paths of the directories that were newly created, outermost first
+     */
+    @Transactional
+    public List<String> recordMissingParents(Long userId, String path) {
+        List<String> created = new ArrayList<>();
+        String parent = parentOf(normalize(path));
+        List<String> ancestors = new ArrayList<>();
+        while (!parent.isEmpty()) {
+            ancestors.addFirst(parent);
+            parent = parentOf(parent);
+        }
+        for (String ancestor : ancestors) {
+            if (recordDirectory(userId, ancestor)) {
+                created.add(ancestor);
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Moves a directory and everything beneath it into the trash in a single statement.
+     * Folders already in the trash below it keep their own trash entry.
+     *
+     * @return Number of trashed entries
+     */
+    @Transactional
+    public int trash(Long userId, String path, UUID trashId) {
+        String normalized = normalize(path);
+        cache.invalidatePrefix(userId, normalized);
+        return repository.trashByPathLike(userId, escapeLike(normalized) + "%", trashId);
+    }
+
+    /**
+     * Makes the entries of a trashed folder visible again at their paths.
+     *
+     * @return Number of restored entries
+     */
+    @Transactional
+    public int restore(Long userId, String path, UUID trashId) {
+        cache.invalidatePrefix(userId, normalize(path));
+        return repository.restoreTrashed(trashId);
+    }
+
+    /**
+     * Returns the next batch of entries of a trashed folder, in path order.
+     */
+    @Transactional(readOnly = true)
+    public List<ResourceMetadata> listTrashed(UUID trashId, int limit) {
+        return repository.findTrashed(trashId, limit);
+    }
+
+    /**
+     * Removes purged entries of a trashed folder.
+     */
+    @Transactional
+    public int removeTrashed(Long userId, UUID trashId, Collection<ResourceMetadata> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        cache.invalidate(userId, entries.stream().map(ResourceMetadata::getPath).toList());
+        return repository.deleteTrashed(trashId, entries.stream().map(ResourceMetadata::getId).toList());
+    }
+
+    /**
+     * Removes a single file entry.
+     */
+    @Transactional
+    public void removeFile(Long userId, String path) {
+        String normalized = normalize(path);
+        repository.deleteByPathLike(userId, escapeLike(normalized));
+        cache.invalidate(userId, List.of(normalized));
+    }
+
+    /**
+     * Removes a directory entry together with everything beneath it.
+     *
+     * @return Number of removed entries
+     */
+    @Transactional
+    public int removeDirectory(Long userId, String path) {
+        String normalized = normalize(path);
+        cache.invalidatePrefix(userId, normalized);
+        return repository.deleteByPathLike(userId, escapeLike(normalized) + "%");
+    }
+
+    /**
+     * Removes the listed entries, e.g. the objects of one deleted batch.
+     */
+    @Transactional
+    public int removeEntries(Long userId, Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        List<String> normalized = paths.stream().map(MetadataService::normalize).toList();
+        cache.invalidate(userId, normalized);
+        return repository.deleteByPathIn(userId, normalized);
+    }
+
+    /**
+     * Counts the entries beneath a directory, stopping once {@code limit} is reached.
+     */
+    @Transactional(readOnly = true)
+    public long countEntries(Long userId, String directoryPath, long limit) {
+        return repository.countByPathLike(userId, escapeLike(normalize(directoryPath)) + "%", limit);
+    }
+
+    /**
+     * Moves a file or a whole directory subtree to a new path in a single statement.
+     * Folders in the trash below a moved directory move with it.
+     *
+     * @return Number of moved entries
+     */
+    @Transactional
+    public int move(Long userId, String fromPath, String toPath) {
+        String from = normalize(fromPath);
+        String to = normalize(toPath);
+        String pattern = from.endsWith(SLASH) ? escapeLike(from) + "%" : escapeLike(from);
+        if (from.endsWith(SLASH)) {
+            cache.invalidatePrefix(userId, from, to);
+            trashRepository.movePaths(userId, pattern, from, to);
+        } else {
+            cache.invalidate(userId, List.of(from, to));
+        }
+        return repository.movePaths(userId, pattern, from, to, parentOf(to), nameOf(to));
+    }
+
+    /**
+     * Moves the listed entries of a directory subtree from {@code fromPath} to {@code toPath}.
+     * Entries of the subtree that are not listed stay where they are.
+     *
+     * @param paths Source paths below {@code fromPath}, relative to the user root
+     * @return Number of moved entries
+     */
+    @Transactional
+    public int moveEntries(Long userId, Collection<String> paths, String fromPath, String toPath) {
+        if (paths.isEmpty()) {
+            return 0;
+        }
+        String from = normalize(fromPath);
+        String to = normalize(toPath);
+        List<String> normalized = paths.stream().map(MetadataService::normalize).toList();
+        cache.invalidatePrefix(userId, from, to);
+        return repository.movePathsIn(userId, normalized, from, to, parentOf(to), nameOf(to));
+    }
+
+    private static boolean isLive(ResourceMetadata entry) {
+        return entry.getTrashId() == null;
+    }
+
+    /**
+     * Strips the leading slash so "/" maps to the root ("") and "/docs/" to "docs/".
+     */
+    static String normalize(String path) {
+        if (path == null) {
+            return "";
+        }
+        return path.startsWith(SLASH) ? path.substring(1) : path;
+    }
+
+    /**
+     * Returns the parent directory path ("a/b/file.txt" -> "a/b/", "a/" -> "").
+     */
+    static String parentOf(String path) {
+        String trimmed = path.endsWith(SLASH) ? path.substring(0, path.length() - 1) : path;
+        int lastSlash = trimmed.lastIndexOf(SLASH);
+        return lastSlash == -1 ? "" : trimmed.substring(0, lastSlash + 1);
+    }
+
+    /**
+     * Returns the last path segment without a trailing slash ("a/b/" -> "b").
+     */
+    static String nameOf(String path) {
+        String trimmed = path.endsWith(SLASH) ? path.substring(0, path.length() - 1) : path;
+        return trimmed.substring(trimmed.lastIndexOf(SLASH) + 1);
+    }
+
+    /**
+     * MinIO reports ETags wrapped in quotes in some responses and bare in others.
+     */
+    static String normalizeEtag(String etag) {
+        return etag == null ? null : etag.replace("\"", "");
+    }
+
+    /**
+     * Escapes LIKE wildcards; '_' is a legal path character.
+     */
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.exception.StorageException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Helpers for the futures returned by {@link io.minio.MinioAsyncClient}.
+ */
+final class MinioFutures {
+
+    private MinioFutures() {
+    }
+
+    /**
+     * Returns the exception that actually failed a future, without CompletionException wrappers.
+     */
+    static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    /**
+     * Waits for a future, rethrowing the original runtime exception instead of a CompletionException.
+     * Used by the blocking service methods that share their implementation with the async ones.
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new StorageException("MinIO operation failed", cause);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.cloudstorage.service;
+
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes values as newline-delimited JSON ({@code application/x-ndjson}), one object per line.
+ * Output is flushed every {@value #FLUSH_INTERVAL} lines, and after the first one,
+ * so clients can render results while the rest is still being read.
+ */
+final class NdjsonWriter {
+
+    private static final int FLUSH_INTERVAL = 100;
+
+    private final JsonMapper jsonMapper;
+    private final OutputStream out;
+    private long written;
+
+    NdjsonWriter(JsonMapper jsonMapper, OutputStream out) {
+        this.jsonMapper = jsonMapper;
+        this.out = out;
+    }
+
+    void write(Object value) throws IOException {
+        out.write(jsonMapper.writeValueAsBytes(value));
+        out.write('\n');
+        if (++written == 1 || written % FLUSH_INTERVAL == 0) {
+            out.flush();
+        }
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+}
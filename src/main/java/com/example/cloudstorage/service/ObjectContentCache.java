@@ -0,0 +1,117 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * In-memory cache for the contents of small files, used by {@link FileOperationsService} downloads.
+ *
+ * Entries are keyed by object key and hold the ETag of their content; a lookup only hits if the
+ * ETag matches the one in the catalog, so a replaced file is never served from a stale entry, also
+ * when the change was made by another instance. The cache is bounded by the bytes it holds
+ * (storage.cache.content-budget) and evicts with Caffeine's W-TinyLFU policy, which keeps
+ * frequently downloaded files such as avatars and thumbnails over one-off downloads.
+ *
+ * Objects stored under their path are invalidated with the catalog entries of their path by
+ * {@link MetadataCache}, on this and, through Redis, on other instances. Blob and object id keys
+ * are never reused for other content, so their entries only age out.
+ *
+ * Lookups and evictions are counted in storage.cache.content.requests and storage.cache.content.evictions,
+ * the bytes held in storage.cache.content.size.
+ */
+@Service
+public class ObjectContentCache {
+
+    private final StorageProperties.Cache settings;
+    private final PathService pathService;
+    private final Cache<String, CachedContent> contents;
+    private final Counter hits;
+    private final Counter misses;
+
+    private record CachedContent(String etag, byte[] content) {
+    }
+
+    public ObjectContentCache(StorageProperties storageProperties, PathService pathService,
+                              MeterRegistry meterRegistry) {
+        this.settings = storageProperties.getCache();
+        this.pathService = pathService;
+
+        Counter evictions = meterRegistry.counter("storage.cache.content.evictions");
+        this.contents = Caffeine.newBuilder()
+                .maximumWeight(settings.getContentBudget().toBytes())
+                .weigher((String key, CachedContent value) -> key.length() + value.content().length)
+                .evictionListener((key, value, cause) -> evictions.increment())
+                .build();
+        this.hits = meterRegistry.counter("storage.cache.content.requests", "result", "hit");
+        this.misses = meterRegistry.counter("storage.cache.content.requests", "result", "miss");
+        Gauge.builder("storage.cache.content.size", contents,
+                        cache -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0))
+                                .orElse(0L))
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether the content of a file is small enough to be cached.
+     */
+    public boolean isCacheable(ResourceMetadata entry) {
+        return settings.isContentEnabled()
+                && !entry.isDirectory()
+                && entry.getEtag() != null
+                && entry.getSize() <= settings.getContentMaxObjectSize().toBytes();
+    }
+
+    /**
+     * Returns the cached content of an object, if it is cached with the given ETag.
+     *
+     * @param objectName Object key in MinIO
+     * @param etag ETag recorded in the catalog
+     * @return Content, or null on a miss
+     */
+    public byte[] get(String objectName, String etag) {
+        CachedContent cached = contents.getIfPresent(objectName);
+        if (cached == null || !cached.etag().equals(etag)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return cached.content();
+    }
+
+    /**
+     * Caches the content of an object read from MinIO.
+     *
+     * @param etag ETag MinIO returned with the content
+     */
+    public void put(String objectName, String etag, byte[] content) {
+        if (settings.isContentEnabled() && content.length <= settings.getContentMaxObjectSize().toBytes()) {
+            contents.put(objectName, new CachedContent(etag, content));
+        }
+    }
+
+    /**
+     * Drops the objects stored under the given paths of a user.
+     */
+    void invalidate(Long userId, Collection<String> paths) {
+        contents.invalidateAll(paths.stream().map(path -> pathService.buildUserPath(userId, path)).toList());
+    }
+
+    /**
+     * Drops the objects stored under the given path prefixes (directories) of a user.
+     */
+    void invalidatePrefix(Long userId, Collection<String> prefixes) {
+        List<String> objectPrefixes = prefixes.stream()
+                .map(prefix -> pathService.buildUserPath(userId, prefix))
+                .toList();
+        contents.asMap().keySet().removeIf(key -> objectPrefixes.stream().anyMatch(key::startsWith));
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.example.cloudstorage.repository.UserRepository;
+import io.minio.CopyObjectArgs;
+import io.minio.CopySource;
+import io.minio.ListObjectsArgs;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Service converting path-keyed files to the object id layout.
+ *
+ * Each file is copied to a new {@code objects/<uuid>} key, the catalog entry is switched to it
+ * with a conditional update, and only then is the old object removed. A file that was moved,
+ * replaced or deleted in between keeps its entry and the copy is discarded, so the migration
+ * can run while the application is in use and can be repeated at any time.
+ * Directory markers are removed as well; with the object id layout directories exist in the catalog only.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ObjectKeyMigrationService {
+
+    private final MinioClient minioClient;
+    private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
+    private final PathService pathService;
+    private final MetadataService metadataService;
+    private final UserRepository userRepository;
+
+    private static final String SLASH = "/";
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    /**
+     * Summary of one user's migration.
+     *
+     * @param migrated Files switched to an object id
+     * @param skipped Files that changed during the migration or failed to copy; they are retried next run
+     * @param markersRemoved Directory marker objects removed
+     */
+    public record MigrationReport(int migrated, int skipped, int markersRemoved) {
+    }
+
+    /**
+     * Migrates the files of all users while the object id layout and the migration are enabled.
+     * A failure for one user does not stop the others.
+     */
+    @Scheduled(
+            initialDelayString = "${storage.layout.migration-initial-delay:PT15M}",
+            fixedDelayString = "${storage.layout.migration-interval:PT6H}"
+    )
+    public void migrateAll() {
+        StorageProperties.Layout layout = storageProperties.getLayout();
+        if (!layout.isObjectIds() || !layout.isMigrateExisting()) {
+            return;
+        }
+
+        for (Long userId : userRepository.findAllIds()) {
+            try {
+                migrateUser(userId);
+            } catch (Exception e) {
+                log.error("Object key migration failed for user {}", userId, e);
+            }
+        }
+    }
+
+    /**
+     * Converts the path-keyed files of one user to object ids and removes the user's directory markers,
+     * which the object id layout does not use.
+     *
+     * @param userId User whose files are migrated
+     * @return Counts of migrated and skipped files and of removed markers
+     * @throws Exception if listing the bucket fails
+     */
+    public MigrationReport migrateUser(Long userId) throws Exception {
+        StorageProperties.Layout layout = storageProperties.getLayout();
+        LocalDateTime cutoff = LocalDateTime.now().minus(layout.getMigrationGracePeriod());
+
+        int migrated = 0;
+        int skipped = 0;
+        String afterPath = "";
+        List<ResourceMetadata> page;
+        do {
+            page = metadataService.listPathKeyedFiles(userId, afterPath, cutoff, layout.getMigrationBatchSize());
+            for (ResourceMetadata entry : page) {
+                if (migrateFile(entry)) {
+                    migrated++;
+                } else {
+                    skipped++;
+                }
+            }
+            if (!page.isEmpty()) {
+                afterPath = page.getLast().getPath();
+            }
+        } while (page.size() == layout.getMigrationBatchSize());
+
+        int markersRemoved = removeDirectoryMarkers(userId);
+
+        if (migrated + skipped + markersRemoved > 0) {
+            log.info("Migrated objects of user {} to object ids: {} migrated, {} skipped, {} markers removed",
+                    userId, migrated, skipped, markersRemoved);
+        }
+        return new MigrationReport(migrated, skipped, markersRemoved);
+    }
+
+    /**
+     * Copies one file to a new object id and switches its catalog entry.
+     *
+     * @return true if the entry now points to the copy
+     */
+    private boolean migrateFile(ResourceMetadata entry) {
+        String bucket = minioProperties.getBucketName();
+        String source = pathService.buildObjectPath(entry);
+        UUID objectId = UUID.randomUUID();
+        String target = pathService.buildObjectIdPath(objectId);
+
+        try {
+            minioClient.copyObject(CopyObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(target)
+                    .source(CopySource.builder().bucket(bucket).object(source).build())
+                    .build());
+        } catch (Exception e) {
+            log.warn("Failed to copy {} for object key migration", source, e);
+            return false;
+        }
+
+        boolean switched = metadataService.assignObjectId(entry, objectId);
+        // The entry changed since it was read: the copy may be stale and is not referenced
+        String obsolete = switched ? source : target;
+        try {
+            minioClient.removeObject(RemoveObjectArgs.builder().bucket(bucket).object(obsolete).build());
+        } catch (Exception e) {
+            log.warn("Failed to remove {} after object key migration", obsolete, e);
+        }
+        return switched;
+    }
+
+    /**
+     * Removes the marker objects of the user's directories; the catalog entries are kept.
+     *
+     * @return Number of removed markers
+     */
+    private int removeDirectoryMarkers(Long userId) throws Exception {
+        Iterable<Result<Item>> objects = minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .prefix(pathService.buildUserPath(userId, ""))
+                .recursive(true)
+                .build());
+
+        List<DeleteObject> batch = new ArrayList<>(DELETE_BATCH_SIZE);
+        int removed = 0;
+        for (Result<Item> result : objects) {
+            Item item = result.get();
+            String path = pathService.stripUserPath(item.objectName(), userId);
+            if (!path.isEmpty() && path.endsWith(SLASH)) {
+                batch.add(new DeleteObject(item.objectName()));
+                if (batch.size() == DELETE_BATCH_SIZE) {
+                    removed += removeBatch(batch);
+                    batch.clear();
+                }
+            }
+        }
+        removed += removeBatch(batch);
+        return removed;
+    }
+
+    private int removeBatch(List<DeleteObject> batch) throws Exception {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int failed = 0;
+        for (Result<DeleteError> result : minioClient.removeObjects(RemoveObjectsArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .objects(List.copyOf(batch))
+                .build())) {
+            DeleteError error = result.get();
+            log.warn("Failed to remove directory marker {}: {}", error.objectName(), error.message());
+            failed++;
+        }
+        return batch.size() - failed;
+    }
+}
@@ -1,8 +1,11 @@
 package com.example.cloudstorage.service;
 
+import com.example.cloudstorage.entity.ResourceMetadata;
 import com.example.cloudstorage.exception.InvalidPathException;
 import org.springframework.stereotype.Service;
 
+import java.util.UUID;
+
 /**
  * Service responsible for path validation and manipulation.
  * Handles user path isolation and security validation.
@@ -11,6 +14,8 @@ import org.springframework.stereotype.Service;
 public class PathService {
 
     private static final String USER_FILES_PREFIX_TEMPLATE = "user-%d-files/";
+    private static final String BLOB_PREFIX = "blobs/";
+    private static final String OBJECT_PREFIX = "objects/";
     private static final String SLASH = "/";
 
     /**
@@ -33,6 +38,51 @@ public class PathService {
         return prefix + normalized;
     }
 
+    /**
+     * Builds the MinIO path of a deduplicated file body.
+     * @param contentHash SHA-256 of the content as lowercase hex
+     * @return Full path in MinIO (e.g., "blobs/9f86d0...")
+     */
+    public String buildBlobPath(String contentHash) {
+        return BLOB_PREFIX + contentHash;
+    }
+
+    /**
+     * Builds the MinIO path of a file stored under a stable object id.
+     * @param objectId Object id of the file
+     * @return Full path in MinIO (e.g., "objects/3f2a9c4e-...")
+     */
+    public String buildObjectIdPath(UUID objectId) {
+        return OBJECT_PREFIX + objectId;
+    }
+
+    /**
+     * Returns the MinIO path holding the content of a catalog entry:
+     * the shared blob for deduplicated files, the object id path for files stored under an id,
+     * otherwise the path under the user prefix.
+     * @param entry Catalog entry
+     * @return Full path in MinIO
+     */
+    public String buildObjectPath(ResourceMetadata entry) {
+        if (entry.getContentHash() != null) {
+            return buildBlobPath(entry.getContentHash());
+        }
+        if (entry.getObjectId() != null) {
+            return buildObjectIdPath(entry.getObjectId());
+        }
+        return buildUserPath(entry.getUserId(), entry.getPath());
+    }
+
+    /**
+     * Checks whether the content of a catalog entry is stored under its path,
+     * i.e. whether moving the entry has to move an object as well.
+     * @param entry Catalog entry
+     * @return true for path-keyed files and directories
+     */
+    public boolean isKeyedByPath(ResourceMetadata entry) {
+        return entry.getContentHash() == null && entry.getObjectId() == null;
+    }
+
     /**
      * Validates path for security and format.
      * Checks for path traversal attacks and invalid characters.
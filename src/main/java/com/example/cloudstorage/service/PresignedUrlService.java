@@ -0,0 +1,314 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.dto.PresignedUpload;
+import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.example.cloudstorage.exception.InvalidPathException;
+import com.example.cloudstorage.exception.QuotaExceededException;
+import com.example.cloudstorage.exception.ResourceAlreadyExistsException;
+import com.example.cloudstorage.exception.ResourceNotFoundException;
+import com.example.cloudstorage.exception.StorageException;
+import com.example.cloudstorage.security.CustomUserDetails;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.PostPolicy;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.http.Method;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service for presigned MinIO URLs, so file bytes can bypass the application.
+ *
+ * Ownership is checked against the catalog and the user prefix from
+ * {@link PathService#buildUserPath} before anything is signed; a URL only ever
+ * grants access to one object of the requesting user, or to the shared blob
+ * holding the content of one of their deduplicated files.
+ */
+@Slf4j
+@Service
+public class PresignedUrlService {
+
+    private final MinioClient minioClient;
+    private final MinioClient presignClient;
+    private final String presignEndpoint;
+    private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
+    private final PathService pathService;
+    private final FileOperationsService fileOperationsService;
+    private final DirectoryService directoryService;
+    private final MetadataService metadataService;
+    private final ResourceInfoBuilder resourceInfoBuilder;
+    private final StorageUsageService storageUsageService;
+
+    private static final String SLASH = "/";
+
+    public PresignedUrlService(MinioClient minioClient,
+                               MinioProperties minioProperties,
+                               StorageProperties storageProperties,
+                               PathService pathService,
+                               FileOperationsService fileOperationsService,
+                               DirectoryService directoryService,
+                               MetadataService metadataService,
+                               ResourceInfoBuilder resourceInfoBuilder,
+                               StorageUsageService storageUsageService) {
+        this.minioClient = minioClient;
+        this.minioProperties = minioProperties;
+        this.storageProperties = storageProperties;
+        this.pathService = pathService;
+        this.fileOperationsService = fileOperationsService;
+        this.directoryService = directoryService;
+        this.metadataService = metadataService;
+        this.resourceInfoBuilder = resourceInfoBuilder;
+        this.storageUsageService = storageUsageService;
+
+        // Signing is offline, but the signature covers the host the client will connect to
+        StorageProperties.Presign presign = storageProperties.getPresign();
+        String endpoint = StringUtils.hasText(presign.getEndpoint()) ? presign.getEndpoint() : minioProperties.getUrl();
+        this.presignEndpoint = endpoint.endsWith(SLASH) ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.presignClient = MinioClient.builder()
+                .endpoint(presignEndpoint)
+                .region(presign.getRegion())
+                .credentials(minioProperties.getAccessKey(), minioProperties.getSecretKey())
+                .build();
+    }
+
+    /**
+     * Whether file downloads should be answered with a presigned redirect.
+     */
+    public boolean isDownloadRedirectEnabled() {
+        return storageProperties.getPresign().isDownloadRedirect();
+    }
+
+    /**
+     * Creates a short-lived GET URL for a file of the user.
+     * The URL makes MinIO send the file as an attachment with its original name.
+     *
+     * @param user User downloading the file
+     * @param path File path (must not end with '/')
+     * @return Presigned GET URL
+     * @throws InvalidPathException if path is a directory
+     * @throws ResourceNotFoundException if file doesn't exist
+     * @throws StorageException if signing fails
+     */
+    public String presignDownload(CustomUserDetails user, String path) {
+        ResourceMetadata entry = fileOperationsService.getFileMetadata(user, path);
+
+        String name = path.substring(path.lastIndexOf(SLASH) + 1);
+        try {
+            return presignClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                    .method(Method.GET)
+                    .bucket(minioProperties.getBucketName())
+                    .object(pathService.buildObjectPath(entry))
+                    .expiry(expirySeconds(), TimeUnit.SECONDS)
+                    .extraQueryParams(Map.of("response-content-disposition", "attachment; filename=\"" + name + "\""))
+                    .build());
+        } catch (Exception e) {
+            log.error("Failed to presign download: {}", path, e);
+            throw new StorageException("Failed to create download URL: " + path, e);
+        }
+    }
+
+    /**
+     * Creates a short-lived POST policy for uploading a new file directly to MinIO.
+     * The policy is bound to the file's key and limits its size to the user's remaining quota,
+     * so MinIO rejects a larger upload before storing it.
+     * After the upload the client calls {@link #confirmUpload} so the file shows up
+     * in the catalog immediately; otherwise it appears with the next reconciliation.
+     *
+     * @param user User uploading the file
+     * @param path Full file path (must not end with '/')
+     * @return Presigned upload description
+     * @throws InvalidPathException if path is invalid or a directory
+     * @throws ResourceAlreadyExistsException if the file already exists
+     * @throws QuotaExceededException if the user has no room for another file
+     * @throws StorageException if signing fails
+     */
+    public PresignedUpload presignUpload(CustomUserDetails user, String path) {
+        validateFilePath(path);
+
+        if (metadataService.exists(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("File already exists: " + path);
+        }
+        if (metadataService.isHeldByTrash(user.getId(), path)) {
+            throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + path);
+        }
+        storageUsageService.checkQuota(user.getId(), 0, 1);
+        long remaining = storageUsageService.remainingBytes(user.getId());
+
+        try {
+            String objectName = pathService.buildUserPath(user.getId(), path);
+            LocalDateTime expiresAt = LocalDateTime.now().plus(storageProperties.getPresign().getExpiry());
+
+            PostPolicy policy = new PostPolicy(minioProperties.getBucketName(),
+                    ZonedDateTime.now().plus(storageProperties.getPresign().getExpiry()));
+            policy.addEqualsCondition("key", objectName);
+            if (remaining != Long.MAX_VALUE) {
+                policy.addContentLengthRangeCondition(0L, remaining);
+            }
+            Map<String, String> fields = new LinkedHashMap<>();
+            fields.put("key", objectName);
+            fields.putAll(presignClient.getPresignedPostFormData(policy));
+
+            return PresignedUpload.builder()
+                    .path(path)
+                    .method(Method.POST.name())
+                    .url(presignEndpoint + SLASH + minioProperties.getBucketName())
+                    .fields(fields)
+                    .maxSize(remaining != Long.MAX_VALUE ? remaining : null)
+                    .expiresAt(expiresAt)
+                    .build();
+        } catch (Exception e) {
+            log.error("Failed to presign upload: {}", path, e);
+            throw new StorageException("Failed to create upload URL: " + path, e);
+        }
+    }
+
+    /**
+     * Records a file uploaded through a presigned URL in the catalog.
+     * The size of a presigned upload is only known afterwards, so the quota is checked here;
+     * a file that does not fit is removed again.
+     *
+     * A URL stays valid until it expires and may be used again after the confirmation. Confirming
+     * the same object twice returns the recorded file; an object that was overwritten since is
+     * charged for the size it grew by and recorded with its new content. A path that was taken by
+     * another upload in the meantime is not overwritten in the catalog.
+     *
+     * @param user User who uploaded the file
+     * @param path Full file path
+     * @return ResourceInfo of the uploaded file
+     * @throws ResourceNotFoundException if no object was uploaded to the path
+     * @throws ResourceAlreadyExistsException if the path was taken by another file or a folder in the trash
+     * @throws QuotaExceededException if the file does not fit into the user's quota
+     * @throws StorageException if MinIO operation fails
+     */
+    public ResourceInfo confirmUpload(CustomUserDetails user, String path) {
+        validateFilePath(path);
+
+        String objectName = pathService.buildUserPath(user.getId(), path);
+        try {
+            StatObjectResponse stat = minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(minioProperties.getBucketName())
+                    .object(objectName)
+                    .build());
+
+            ResourceMetadata entry = metadataService.find(user.getId(), path).orElse(null);
+            if (entry == null && metadataService.isHeldByTrash(user.getId(), path)) {
+                // The folder was trashed after signing; a trashed file at the path keeps its object
+                if (!metadataService.isTrashed(user.getId(), path)) {
+                    removeObject(objectName);
+                }
+                throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + path);
+            }
+            if (entry == null) {
+                try (QuotaReservation ignored = reserveUploaded(user, objectName, stat.size(), 1)) {
+                    directoryService.ensureParentDirectories(user, path);
+                    if (metadataService.createFile(user.getId(), path, stat.size(), stat.etag(),
+                            stat.contentType(), null, null, null)) {
+                        return resourceInfoBuilder.build(path, stat.size(), false);
+                    }
+                }
+                // Lost to a concurrent confirmation or upload of the same path
+                entry = metadataService.find(user.getId(), path)
+                        .orElseThrow(() -> new ResourceAlreadyExistsException("File already exists: " + path));
+            }
+            return confirmReplaced(user, path, objectName, entry, stat);
+        } catch (QuotaExceededException | ResourceAlreadyExistsException e) {
+            throw e;
+        } catch (ErrorResponseException e) {
+            if ("NoSuchKey".equals(e.errorResponse().code())) {
+                throw new ResourceNotFoundException("File not found: " + path);
+            }
+            log.error("Failed to confirm upload: {}", path, e);
+            throw new StorageException("Failed to confirm upload: " + path, e);
+        } catch (Exception e) {
+            log.error("Failed to confirm upload: {}", path, e);
+            throw new StorageException("Failed to confirm upload: " + path, e);
+        }
+    }
+
+    /**
+     * Confirms an upload to a path that already has a catalog entry.
+     */
+    private ResourceInfo confirmReplaced(CustomUserDetails user, String path, String objectName,
+                                         ResourceMetadata entry, StatObjectResponse stat) throws Exception {
+        if (entry.isDirectory() || !pathService.isKeyedByPath(entry)) {
+            // The recorded file lives in another object; the uploaded one is not part of it
+            removeObject(objectName);
+            throw new ResourceAlreadyExistsException("File already exists: " + path);
+        }
+        if (MetadataService.normalizeEtag(stat.etag()).equals(entry.getEtag())) {
+            return resourceInfoBuilder.build(entry);
+        }
+
+        // The presigned URL was used again: the recorded content is gone, only its size is still counted
+        long growth = Math.max(0, stat.size() - entry.getSize());
+        try (QuotaReservation ignored = reserveReplaced(user, path, objectName, growth)) {
+            if (!metadataService.replaceContent(entry, stat.size(), stat.etag(), stat.contentType())) {
+                throw new ResourceAlreadyExistsException("File already exists: " + path);
+            }
+        }
+        return resourceInfoBuilder.build(path, stat.size(), false);
+    }
+
+    /**
+     * Reserves quota for an object that is already in MinIO and removes it if it does not fit.
+     */
+    private QuotaReservation reserveUploaded(CustomUserDetails user, String objectName, long bytes, long objects)
+            throws Exception {
+        try {
+            return storageUsageService.reserve(user.getId(), bytes, objects);
+        } catch (QuotaExceededException e) {
+            removeObject(objectName);
+            throw e;
+        }
+    }
+
+    /**
+     * Reserves the growth of an overwritten object. One that does not fit is removed together with
+     * its entry, as the content the entry described no longer exists.
+     */
+    private QuotaReservation reserveReplaced(CustomUserDetails user, String path, String objectName, long growth)
+            throws Exception {
+        try {
+            return storageUsageService.reserve(user.getId(), growth, 0);
+        } catch (QuotaExceededException e) {
+            removeObject(objectName);
+            metadataService.removeFile(user.getId(), path);
+            throw e;
+        }
+    }
+
+    private void removeObject(String objectName) throws Exception {
+        minioClient.removeObject(RemoveObjectArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .object(objectName)
+                .build());
+    }
+
+    private void validateFilePath(String path) {
+        pathService.validatePath(path);
+
+        if (path.isEmpty() || path.endsWith(SLASH)) {
+            throw new InvalidPathException("Upload path must point to a file, not a directory");
+        }
+    }
+
+    private int expirySeconds() {
+        Duration expiry = storageProperties.getPresign().getExpiry();
+        return (int) expiry.toSeconds();
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.cloudstorage.service;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bytes and objects reserved against a user's quota for the uploads of one request.
+ *
+ * Once a file is in the catalog the usage counters include it, so its share is released
+ * with {@link #commit}. Closing the reservation releases whatever was not committed,
+ * e.g. the files of a batch that failed part way. Files uploaded concurrently may commit
+ * from different (virtual) threads; the counters are guarded by a lock rather than a monitor,
+ * which would pin the carrier thread.
+ */
+public final class QuotaReservation implements AutoCloseable {
+
+    static final QuotaReservation NONE = new QuotaReservation(null, null, 0, 0);
+
+    private final StorageUsageService usageService;
+    private final Long userId;
+    private final ReentrantLock lock = new ReentrantLock();
+    private long bytes;
+    private long objects;
+
+    QuotaReservation(StorageUsageService usageService, Long userId, long bytes, long objects) {
+        this.usageService = usageService;
+        this.userId = userId;
+        this.bytes = bytes;
+        this.objects = objects;
+    }
+
+    /**
+     * Releases the share of a file that is now counted by the catalog.
+     */
+    public void commit(long fileBytes, long fileObjects) {
+        long releasedBytes;
+        long releasedObjects;
+        // The release is a database round trip and runs after the lock is released
+        lock.lock();
+        try {
+            releasedBytes = Math.min(fileBytes, bytes);
+            releasedObjects = Math.min(fileObjects, objects);
+            bytes -= releasedBytes;
+            objects -= releasedObjects;
+        } finally {
+            lock.unlock();
+        }
+        if (releasedBytes > 0 || releasedObjects > 0) {
+            usageService.release(userId, releasedBytes, releasedObjects);
+        }
+    }
+
+    @Override
+    public void close() {
+        commit(Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+}
@@ -2,6 +2,7 @@ package com.example.cloudstorage.service;
 
 import com.example.cloudstorage.dto.ResourceInfo;
 import com.example.cloudstorage.dto.ResourceType;
+import com.example.cloudstorage.entity.ResourceMetadata;
 import org.springframework.stereotype.Component;
 
 /**
@@ -60,4 +61,15 @@ public class ResourceInfoBuilder {
                 .type(isDir ? ResourceType.DIRECTORY : ResourceType.FILE)
                 .build();
     }
+
+    /**
+     * Builds ResourceInfo from a metadata catalog entry.
+     *
+     * @param metadata Catalog entry for a file or directory
+     * @return ResourceInfo object with parsed name and path
+     */
+    public ResourceInfo build(ResourceMetadata metadata) {
+        long size = metadata.getSize() != null ? metadata.getSize() : 0;
+        return build(metadata.getPath(), size, metadata.isDirectory());
+    }
 }
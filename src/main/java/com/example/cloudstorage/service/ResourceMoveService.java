@@ -1,27 +1,48 @@
 package com.example.cloudstorage.service;
 
 import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
 import com.example.cloudstorage.dto.ResourceInfo;
 import com.example.cloudstorage.exception.InvalidPathException;
+import com.example.cloudstorage.exception.JobCancelledException;
+import com.example.cloudstorage.exception.PartialMoveException;
 import com.example.cloudstorage.exception.ResourceAlreadyExistsException;
 import com.example.cloudstorage.exception.ResourceNotFoundException;
 import com.example.cloudstorage.exception.StorageException;
 import com.example.cloudstorage.security.CustomUserDetails;
 import io.minio.*;
+import io.minio.messages.DeleteError;
 import io.minio.messages.DeleteObject;
 import io.minio.messages.Item;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 
 /**
  * Service for moving and renaming resources.
  * Provides copy-then-delete operations for files and directories.
  * Note: Operations are not atomic - partial moves may occur on failure.
+ * Directory moves are pipelined: copies run concurrently and sources are deleted in batches.
+ * File moves are chained on {@link MinioAsyncClient}, so they can also be awaited without blocking.
+ *
+ * Files stored as a shared blob or under an object id, and directories without a marker object,
+ * have no object at their path: they are moved by the final catalog statement alone.
+ * A subtree created with (or migrated to) the object id layout therefore moves without any copies,
+ * in one UPDATE regardless of its size.
  */
 @Slf4j
 @Service
@@ -29,17 +50,24 @@ import java.util.stream.Collectors;
 public class ResourceMoveService {
 
     private final MinioClient minioClient;
+    private final MinioAsyncClient minioAsyncClient;
     private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
     private final PathService pathService;
     private final FileOperationsService fileOperationsService;
+    private final DirectoryService directoryService;
+    private final MetadataService metadataService;
+
+    private final ExecutorService copyExecutor = Executors.newVirtualThreadPerTaskExecutor();
 
     private static final String SLASH = "/";
+    private static final int MAX_REPORTED_PATHS = 20;
 
     /**
      * Moves or renames a resource (file or directory).
-     * Warning: This operation is NOT atomic. If the operation fails after copying
-     * but before deletion, the resource will be duplicated. Consider this when
-     * moving large directories or in unstable network conditions.
+     * Warning: This operation is NOT atomic. If a file fails after copying
+     * but before deletion, it will be duplicated. A directory move that fails part way
+     * reports the objects that are still at the source, so it can be completed later.
      *
      * @param user User performing the operation
      * @param fromPath Source path (file or directory)
@@ -48,9 +76,88 @@ public class ResourceMoveService {
      * @throws InvalidPathException if paths are invalid or types don't match
      * @throws ResourceNotFoundException if source doesn't exist
      * @throws ResourceAlreadyExistsException if destination already exists
+     * @throws PartialMoveException if a directory move stopped part way; moved objects stay moved
      * @throws StorageException if MinIO operation fails
      */
     public ResourceInfo moveOrRenameResource(CustomUserDetails user, String fromPath, String toPath) {
+        return moveOrRenameResource(user, fromPath, toPath, JobProgress.NONE);
+    }
+
+    /**
+     * Moves or renames a resource, reporting progress of directory moves.
+     * Cancellation stops a directory move before the next object is copied.
+     *
+     * @throws JobCancelledException if cancellation was requested; moved objects stay moved
+     */
+    public ResourceInfo moveOrRenameResource(CustomUserDetails user, String fromPath, String toPath,
+                                             JobProgress progress) {
+        boolean isSourceDir = validateMove(user, fromPath, toPath);
+
+        log.info("Moving resource: {} -> {} for user {}", fromPath, toPath, user.getId());
+
+        try {
+            if (isSourceDir) {
+                DirectoryMove move = moveDirectory(user, fromPath, toPath, progress);
+                directoryService.ensureParentDirectories(user, toPath);
+                if (move.cancelled) {
+                    throw new JobCancelledException("Move of " + fromPath + " cancelled after " + move.moved + " objects");
+                }
+                if (!move.isComplete()) {
+                    throw partialMove(fromPath, toPath, move);
+                }
+                // Moves the remaining entries, i.e. directories that have no marker object
+                // and files whose content is not stored under their path
+                metadataService.move(user.getId(), fromPath, toPath);
+            } else {
+                MinioFutures.await(moveFileAsync(user, fromPath, toPath));
+            }
+
+            log.info("Successfully moved resource: {} -> {}", fromPath, toPath);
+            return fileOperationsService.getResourceInfo(user, toPath);
+        } catch (ResourceNotFoundException | ResourceAlreadyExistsException | InvalidPathException
+                 | PartialMoveException | JobCancelledException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to move resource: {} -> {}", fromPath, toPath, e);
+            throw new StorageException("Failed to move resource from " + fromPath + " to " + toPath, e);
+        }
+    }
+
+    /**
+     * Moves or renames a resource without blocking the caller while MinIO copies a file.
+     * Validation runs before the future is returned. Directory moves consist of many
+     * MinIO calls and run synchronously; the returned future is then already complete.
+     *
+     * @return Future of the ResourceInfo for the moved/renamed resource
+     * @see #moveOrRenameResource(CustomUserDetails, String, String)
+     */
+    public CompletableFuture<ResourceInfo> moveOrRenameResourceAsync(CustomUserDetails user,
+                                                                     String fromPath, String toPath) {
+        if (fromPath.endsWith(SLASH)) {
+            return CompletableFuture.completedFuture(moveOrRenameResource(user, fromPath, toPath));
+        }
+
+        validateMove(user, fromPath, toPath);
+        log.info("Moving resource: {} -> {} for user {}", fromPath, toPath, user.getId());
+
+        return moveFileAsync(user, fromPath, toPath)
+                .thenApply(ignored -> {
+                    log.info("Successfully moved resource: {} -> {}", fromPath, toPath);
+                    return fileOperationsService.getResourceInfo(user, toPath);
+                })
+                .exceptionally(e -> {
+                    log.error("Failed to move resource: {} -> {}", fromPath, toPath, e);
+                    throw new StorageException("Failed to move resource from " + fromPath + " to " + toPath,
+                            MinioFutures.unwrap(e));
+                });
+    }
+
+    /**
+     * Validates a move and checks source and target with a single catalog query.
+     *
+     * @return true if a directory is moved
+     */
+    private boolean validateMove(CustomUserDetails user, String fromPath, String toPath) {
         pathService.validatePath(fromPath);
         pathService.validatePath(toPath);
 
@@ -62,66 +169,100 @@ public class ResourceMoveService {
                     "Resource type must match (file -> file, folder/ -> folder/)."
             );
         }
+        if (isSourceDir && toPath.startsWith(fromPath)) {
+            throw new InvalidPathException("A folder cannot be moved into itself: " + fromPath + " -> " + toPath);
+        }
 
-        if (!fileOperationsService.resourceExists(user, fromPath)) {
+        Set<String> existing = metadataService.existingPaths(user.getId(), List.of(fromPath, toPath));
+        if (!existing.contains(fromPath)) {
             throw new ResourceNotFoundException("Source resource not found: " + fromPath);
         }
-
-        if (fileOperationsService.resourceExists(user, toPath)) {
+        if (existing.contains(toPath)) {
             throw new ResourceAlreadyExistsException("Target resource already exists: " + toPath);
         }
-
-        log.info("Moving resource: {} -> {} for user {}", fromPath, toPath, user.getId());
-
-        try {
-            if (isSourceDir) {
-                moveDirectory(user, fromPath, toPath);
-            } else {
-                moveFile(user, fromPath, toPath);
-            }
-
-            log.info("Successfully moved resource: {} -> {}", fromPath, toPath);
-            return fileOperationsService.getResourceInfo(user, toPath);
-        } catch (ResourceNotFoundException | ResourceAlreadyExistsException | InvalidPathException e) {
-            throw e;
-        } catch (Exception e) {
-            log.error("Failed to move resource: {} -> {}", fromPath, toPath, e);
-            throw new StorageException("Failed to move resource from " + fromPath + " to " + toPath, e);
+        if (metadataService.isHeldByTrash(user.getId(), toPath)) {
+            throw new ResourceAlreadyExistsException("Path is held by a folder in the trash: " + toPath);
         }
+        return isSourceDir;
     }
 
     /**
-     * Moves a single file (copy then delete).
+     * Moves a single file (copy then delete) and updates the catalog.
      * Not atomic - if deletion fails, file will be duplicated.
+     * A deduplicated file or a file stored under an object id has no object at its path
+     * and is moved in the catalog only.
      */
-    private void moveFile(CustomUserDetails user, String fromPath, String toPath) {
-        try {
-            String srcFullPath = pathService.buildUserPath(user.getId(), fromPath);
-            String destFullPath = pathService.buildUserPath(user.getId(), toPath);
+    private CompletableFuture<Void> moveFileAsync(CustomUserDetails user, String fromPath, String toPath) {
+        boolean keyedByPath = metadataService.find(user.getId(), fromPath)
+                .map(pathService::isKeyedByPath)
+                .orElse(true);
+        if (!keyedByPath) {
+            try {
+                metadataService.move(user.getId(), fromPath, toPath);
+                directoryService.ensureParentDirectories(user, toPath);
+                return CompletableFuture.completedFuture(null);
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
 
-            copyObject(srcFullPath, destFullPath);
+        String srcFullPath = pathService.buildUserPath(user.getId(), fromPath);
+        String destFullPath = pathService.buildUserPath(user.getId(), toPath);
+        String bucket = minioProperties.getBucketName();
 
-            minioClient.removeObject(RemoveObjectArgs.builder()
-                    .bucket(minioProperties.getBucketName())
-                    .object(srcFullPath)
+        CompletableFuture<ObjectWriteResponse> copy;
+        try {
+            copy = minioAsyncClient.copyObject(CopyObjectArgs.builder()
+                    .bucket(bucket)
+                    .object(destFullPath)
+                    .source(CopySource.builder()
+                            .bucket(bucket)
+                            .object(srcFullPath)
+                            .build())
                     .build());
         } catch (Exception e) {
-            log.error("Failed to move file: {} -> {}", fromPath, toPath, e);
-            throw new StorageException("Failed to move file", e);
+            copy = CompletableFuture.failedFuture(e);
         }
+
+        return copy
+                .thenCompose(ignored -> {
+                    try {
+                        return minioAsyncClient.removeObject(RemoveObjectArgs.builder()
+                                .bucket(bucket)
+                                .object(srcFullPath)
+                                .build());
+                    } catch (Exception e) {
+                        return CompletableFuture.failedFuture(e);
+                    }
+                })
+                .thenRun(() -> {
+                    metadataService.move(user.getId(), fromPath, toPath);
+                    directoryService.ensureParentDirectories(user, toPath);
+                });
     }
 
     /**
-     * Moves a directory recursively (copy all, then delete all).
-     * Not atomic - if any step fails, partial move will occur.
-     * Uses batch API for efficient deletion.
+     * Moves a directory recursively as a pipeline:
+     * the listing is streamed, copies run concurrently (bounded by storage.move.copy-concurrency),
+     * and copied sources are deleted in batches while later objects are still being copied.
+     * The catalog is updated per deleted batch, so it matches the bucket even if the move stops part way.
+     *
+     * @return Outcome of the move; objects that failed to copy or delete are still at the source
      */
-    private void moveDirectory(CustomUserDetails user, String fromPath, String toPath) {
-        try {
-            String srcPrefix = pathService.buildUserPath(user.getId(), fromPath);
-            String destPrefix = pathService.buildUserPath(user.getId(), toPath);
+    private DirectoryMove moveDirectory(CustomUserDetails user, String fromPath, String toPath,
+                                        JobProgress progress) {
+        StorageProperties.Move settings = storageProperties.getMove();
+        String srcPrefix = pathService.buildUserPath(user.getId(), fromPath);
+        String destPrefix = pathService.buildUserPath(user.getId(), toPath);
+
+        Semaphore copySlots = new Semaphore(settings.getCopyConcurrency());
+        BlockingQueue<Item> copied = new LinkedBlockingQueue<>();
+        Queue<String> failed = new ConcurrentLinkedQueue<>();
+        List<Item> pending = new ArrayList<>();
+        DirectoryMove move = new DirectoryMove();
 
-            Iterable<io.minio.Result<Item>> objectsIterable = minioClient.listObjects(
+        try {
+            Iterable<Result<Item>> objects = minioClient.listObjects(
                     ListObjectsArgs.builder()
                             .bucket(minioProperties.getBucketName())
                             .prefix(srcPrefix)
@@ -129,44 +270,146 @@ public class ResourceMoveService {
                             .build()
             );
 
-            List<Item> objects = new ArrayList<>();
-            for (io.minio.Result<Item> result : objectsIterable) {
-                objects.add(result.get());
-            }
+            for (Result<Item> result : objects) {
+                if (progress.isCancelled()) {
+                    move.cancelled = true;
+                    break;
+                }
+                Item item = result.get();
+                move.listed++;
+
+                copySlots.acquire();
+                copyExecutor.execute(() -> {
+                    try {
+                        copyObject(item.objectName(), destPrefix + item.objectName().substring(srcPrefix.length()));
+                        copied.add(item);
+                    } catch (Exception e) {
+                        failed.add(relativePath(user, item));
+                    } finally {
+                        copySlots.release();
+                    }
+                });
 
-            if (objects.isEmpty()) {
-                log.warn("No objects found in source directory: {}", fromPath);
-                return;
+                copied.drainTo(pending);
+                move.moved += deleteBatches(user, fromPath, toPath, pending, failed, progress, false);
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
             }
+            log.error("Listing stopped while moving directory {} -> {} after {} objects",
+                    fromPath, toPath, move.listed, e);
+            move.listingFailed = true;
+        }
 
-            log.info("Moving directory with {} objects", objects.size());
+        // Wait for the copies still in flight, then delete whatever they copied
+        copySlots.acquireUninterruptibly(settings.getCopyConcurrency());
+        copied.drainTo(pending);
+        move.moved += deleteBatches(user, fromPath, toPath, pending, failed, progress, true);
+        move.failed.addAll(failed);
 
-            for (Item item : objects) {
-                String srcObjectName = item.objectName();
-                String destObjectName = srcObjectName.replace(srcPrefix, destPrefix);
-                copyObject(srcObjectName, destObjectName);
-            }
+        log.info("Moved directory {} -> {}: {} of {} objects moved, {} failed",
+                fromPath, toPath, move.moved, move.listed, move.failed.size());
+        return move;
+    }
 
-            List<DeleteObject> objectsToDelete = objects.stream()
-                    .map(item -> new DeleteObject(item.objectName()))
-                    .collect(Collectors.toList());
+    /**
+     * Deletes copied source objects in full batches, or everything left when {@code flush} is set.
+     * Each batch is removed from {@code pending} and recorded at the target in the catalog;
+     * objects MinIO could not delete are added to {@code failed}.
+     *
+     * @return Number of objects moved by the deleted batches
+     */
+    private int deleteBatches(CustomUserDetails user, String fromPath, String toPath,
+                              List<Item> pending, Queue<String> failed, JobProgress progress,
+                              boolean flush) {
+        int batchSize = storageProperties.getMove().getDeleteBatchSize();
+        int moved = 0;
 
-            Iterable<io.minio.Result<io.minio.messages.DeleteError>> results = 
-                    minioClient.removeObjects(RemoveObjectsArgs.builder()
-                            .bucket(minioProperties.getBucketName())
-                            .objects(objectsToDelete)
-                            .build());
+        while (pending.size() >= batchSize || (flush && !pending.isEmpty())) {
+            List<Item> batch = pending.subList(0, Math.min(batchSize, pending.size()));
+            moved += deleteBatch(user, fromPath, toPath, batch, failed, progress);
+            batch.clear();
+        }
+        return moved;
+    }
+
+    private int deleteBatch(CustomUserDetails user, String fromPath, String toPath,
+                            List<Item> batch, Queue<String> failed, JobProgress progress) {
+        Set<String> notDeleted = new HashSet<>();
+        try {
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(RemoveObjectsArgs.builder()
+                    .bucket(minioProperties.getBucketName())
+                    .objects(batch.stream().map(item -> new DeleteObject(item.objectName())).toList())
+                    .build());
 
-            for (io.minio.Result<io.minio.messages.DeleteError> result : results) {
-                io.minio.messages.DeleteError error = result.get();
-                log.error("Failed to delete object during move: {} - {}", error.objectName(), error.message());
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                log.warn("Failed to delete object during move: {} - {}", error.objectName(), error.message());
+                notDeleted.add(error.objectName());
             }
         } catch (Exception e) {
-            log.error("Failed to move directory: {} -> {}", fromPath, toPath, e);
-            throw new StorageException("Failed to move directory", e);
+            log.error("Failed to delete batch of {} objects during move: {} -> {}", batch.size(), fromPath, toPath, e);
+            batch.forEach(item -> notDeleted.add(item.objectName()));
+        }
+
+        List<String> movedPaths = new ArrayList<>();
+        long bytes = 0;
+        for (Item item : batch) {
+            if (notDeleted.contains(item.objectName())) {
+                failed.add(relativePath(user, item));
+            } else {
+                movedPaths.add(relativePath(user, item));
+                bytes += item.size();
+            }
+        }
+        metadataService.moveEntries(user.getId(), movedPaths, fromPath, toPath);
+        progress.advance(movedPaths.size(), bytes);
+        return movedPaths.size();
+    }
+
+    private String relativePath(CustomUserDetails user, Item item) {
+        return pathService.stripUserPath(item.objectName(), user.getId());
+    }
+
+    private PartialMoveException partialMove(String fromPath, String toPath, DirectoryMove move) {
+        List<String> failed = move.failed.stream().sorted().toList();
+        StringBuilder message = new StringBuilder()
+                .append("Moved ").append(move.moved).append(" of ").append(move.listed)
+                .append(" objects from ").append(fromPath).append(" to ").append(toPath);
+        if (move.listingFailed) {
+            message.append("; listing the source failed, unlisted objects are still at the source");
+        }
+        if (!failed.isEmpty()) {
+            message.append("; ").append(failed.size()).append(" objects are still at the source: ")
+                    .append(String.join(", ", failed.subList(0, Math.min(MAX_REPORTED_PATHS, failed.size()))));
+            if (failed.size() > MAX_REPORTED_PATHS) {
+                message.append(" (+").append(failed.size() - MAX_REPORTED_PATHS).append(" more)");
+            }
+        }
+        return new PartialMoveException(message.toString(), move.moved, failed);
+    }
+
+    /**
+     * Progress of a directory move.
+     */
+    private static class DirectoryMove {
+        private int listed;
+        private int moved;
+        private boolean listingFailed;
+        private boolean cancelled;
+        private final List<String> failed = new ArrayList<>();
+
+        boolean isComplete() {
+            return !listingFailed && !cancelled && failed.isEmpty();
         }
     }
 
+    @PreDestroy
+    void shutdown() {
+        copyExecutor.shutdownNow();
+    }
+
     /**
      * Copies an object in MinIO from source to destination.
      */
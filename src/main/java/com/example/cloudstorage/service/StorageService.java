@@ -1,13 +1,26 @@
 package com.example.cloudstorage.service;
 
+import com.example.cloudstorage.dto.JobInfo;
+import com.example.cloudstorage.dto.PresignedUpload;
 import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.dto.StorageUsageInfo;
+import com.example.cloudstorage.dto.TrashEntryInfo;
+import com.example.cloudstorage.dto.UploadPartInfo;
+import com.example.cloudstorage.dto.UploadSessionInfo;
+import com.example.cloudstorage.entity.JobType;
+import com.example.cloudstorage.entity.ResourceMetadata;
 import com.example.cloudstorage.security.CustomUserDetails;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Facade service for cloud storage operations.
@@ -24,6 +37,18 @@ public class StorageService {
     private final ResourceMoveService resourceMoveService;
     private final SearchService searchService;
     private final ArchiveService archiveService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final PresignedUrlService presignedUrlService;
+    private final JobService jobService;
+    private final StorageUsageService storageUsageService;
+    private final TrashService trashService;
+
+    /**
+     * Gets the bytes and objects held by the user.
+     */
+    public StorageUsageInfo getUsage(CustomUserDetails user) {
+        return storageUsageService.getUsage(user);
+    }
 
     /**
      * Uploads multiple files to the specified directory path.
@@ -32,6 +57,30 @@ public class StorageService {
         return fileOperationsService.uploadFiles(user, path, files);
     }
 
+    /**
+     * Uploads one file from a raw request body, streamed into MinIO as it arrives.
+     */
+    public ResourceInfo uploadStream(CustomUserDetails user, String path, InputStream content,
+                                     long length, String contentType) {
+        return fileOperationsService.uploadStream(user, path, content, length, contentType);
+    }
+
+    /**
+     * Uploads one file from a raw request body and checks it against the SHA-256 announced by the client.
+     */
+    public ResourceInfo uploadStream(CustomUserDetails user, String path, InputStream content,
+                                     long length, String contentType, String expectedChecksum) {
+        return fileOperationsService.uploadStream(user, path, content, length, contentType, expectedChecksum);
+    }
+
+    /**
+     * Uploads multiple files concurrently and reports the result of each file.
+     */
+    public List<FileOperationsService.UploadOutcome> uploadEach(CustomUserDetails user, String path,
+                                                                List<MultipartFile> files) {
+        return fileOperationsService.uploadEach(user, path, files);
+    }
+
     /**
      * Downloads a resource: file as InputStream or directory as ZIP StreamingResponseBody.
      */
@@ -43,6 +92,63 @@ public class StorageService {
         }
     }
 
+    /**
+     * Gets the catalog entry of a file (size, ETag, modification time).
+     */
+    public ResourceMetadata getFileMetadata(CustomUserDetails user, String path) {
+        return fileOperationsService.getFileMetadata(user, path);
+    }
+
+    /**
+     * Downloads a byte range of a file.
+     */
+    public InputStream downloadFileRange(CustomUserDetails user, String path, long offset, long length) {
+        return fileOperationsService.downloadFileRange(user, path, offset, length);
+    }
+
+    /**
+     * Opens a file without blocking while MinIO responds.
+     */
+    public CompletableFuture<InputStream> downloadFileAsync(CustomUserDetails user, String path) {
+        return fileOperationsService.downloadFileAsync(user, path);
+    }
+
+    /**
+     * Opens a byte range of a file without blocking while MinIO responds.
+     */
+    public CompletableFuture<InputStream> downloadFileRangeAsync(CustomUserDetails user, String path,
+                                                                 long offset, long length) {
+        return fileOperationsService.downloadFileRangeAsync(user, path, offset, length);
+    }
+
+    /**
+     * Whether file downloads are redirected to presigned MinIO URLs.
+     */
+    public boolean isDownloadRedirectEnabled() {
+        return presignedUrlService.isDownloadRedirectEnabled();
+    }
+
+    /**
+     * Creates a presigned download URL for a file.
+     */
+    public String presignDownload(CustomUserDetails user, String path) {
+        return presignedUrlService.presignDownload(user, path);
+    }
+
+    /**
+     * Creates a presigned upload URL for a new file.
+     */
+    public PresignedUpload presignUpload(CustomUserDetails user, String path) {
+        return presignedUrlService.presignUpload(user, path);
+    }
+
+    /**
+     * Records a file uploaded through a presigned URL.
+     */
+    public ResourceInfo confirmPresignedUpload(CustomUserDetails user, String path) {
+        return presignedUrlService.confirmUpload(user, path);
+    }
+
     /**
      * Gets information about a resource (file or directory).
      */
@@ -65,16 +171,43 @@ public class StorageService {
     }
 
     /**
-     * Deletes a resource (file or directory).
+     * Lists one page of a directory, continuing after the given cursor.
+     */
+    public DirectoryService.ListingPage listDirectory(CustomUserDetails user, String path, String cursor, int limit) {
+        return directoryService.listDirectory(user, path, cursor, limit);
+    }
+
+    /**
+     * Streams the whole listing of a directory as NDJSON.
+     */
+    public StreamingResponseBody streamDirectory(CustomUserDetails user, String path) {
+        return directoryService.streamDirectory(user, path);
+    }
+
+    /**
+     * Deletes a resource (file or directory). Directories go to the trash when it is enabled.
      */
     public void deleteResource(CustomUserDetails user, String path) {
-        if (path.endsWith("/")) {
+        if (path.endsWith("/") && trashService.isEnabled()) {
+            trashService.trash(user, path);
+        } else if (path.endsWith("/")) {
             directoryService.deleteDirectory(user, path);
         } else {
             fileOperationsService.deleteFile(user, path);
         }
     }
 
+    /**
+     * Deletes a resource; files are removed without blocking while MinIO responds.
+     */
+    public CompletableFuture<Void> deleteResourceAsync(CustomUserDetails user, String path) {
+        if (path.endsWith("/")) {
+            deleteResource(user, path);
+            return CompletableFuture.completedFuture(null);
+        }
+        return fileOperationsService.deleteFileAsync(user, path);
+    }
+
     /**
      * Moves or renames a resource.
      */
@@ -82,10 +215,133 @@ public class StorageService {
         return resourceMoveService.moveOrRenameResource(user, fromPath, toPath);
     }
 
+    /**
+     * Moves or renames a resource; file moves do not block while MinIO copies.
+     */
+    public CompletableFuture<ResourceInfo> moveOrRenameResourceAsync(CustomUserDetails user,
+                                                                     String fromPath, String toPath) {
+        return resourceMoveService.moveOrRenameResourceAsync(user, fromPath, toPath);
+    }
+
+    /**
+     * Streams all files matching the query as NDJSON.
+     */
+    public StreamingResponseBody streamSearch(CustomUserDetails user, String query) {
+        return searchService.streamUserFiles(user, query);
+    }
+
     /**
      * Searches for files matching the query.
      */
     public List<ResourceInfo> searchUserFiles(CustomUserDetails user, String query) {
         return searchService.searchUserFiles(user, query);
     }
+
+    /**
+     * Returns one page of ranked search results.
+     */
+    public List<ResourceInfo> searchUserFiles(CustomUserDetails user, String query, int page, int size) {
+        return searchService.searchUserFiles(user, query, page, size);
+    }
+
+    /**
+     * Starts a resumable chunked upload.
+     */
+    public UploadSessionInfo initiateUpload(CustomUserDetails user, String path, String contentType) {
+        return chunkedUploadService.initiate(user, path, contentType);
+    }
+
+    /**
+     * Returns the state of a chunked upload session.
+     */
+    public UploadSessionInfo getUploadSession(CustomUserDetails user, UUID sessionId) {
+        return chunkedUploadService.getSession(user, sessionId);
+    }
+
+    /**
+     * Lists chunked upload sessions in progress.
+     */
+    public List<UploadSessionInfo> listUploadSessions(CustomUserDetails user) {
+        return chunkedUploadService.listSessions(user);
+    }
+
+    /**
+     * Stores one part of a chunked upload.
+     */
+    public UploadPartInfo uploadPart(CustomUserDetails user, UUID sessionId, int partNumber,
+                                     InputStream content, long length) {
+        return chunkedUploadService.uploadPart(user, sessionId, partNumber, content, length);
+    }
+
+    /**
+     * Completes a chunked upload.
+     */
+    public ResourceInfo completeUpload(CustomUserDetails user, UUID sessionId) {
+        return chunkedUploadService.complete(user, sessionId);
+    }
+
+    /**
+     * Aborts a chunked upload.
+     */
+    public void abortUpload(CustomUserDetails user, UUID sessionId) {
+        chunkedUploadService.abort(user, sessionId);
+    }
+
+    /**
+     * Lists the restorable folders in the user's trash.
+     */
+    public List<TrashEntryInfo> listTrash(CustomUserDetails user) {
+        return trashService.list(user);
+    }
+
+    /**
+     * Restores a folder from the trash.
+     */
+    public ResourceInfo restoreFromTrash(CustomUserDetails user, UUID trashId) {
+        return trashService.restore(user, trashId);
+    }
+
+    /**
+     * Purges a folder from the trash with the next collection.
+     */
+    public void purgeTrash(CustomUserDetails user, UUID trashId) {
+        trashService.purge(user, trashId);
+    }
+
+    /**
+     * Queues a directory delete, move or archive as a background job if the directory is large.
+     *
+     * @return The queued job, or empty if the operation should run within the request
+     */
+    public Optional<JobInfo> submitJobIfLarge(CustomUserDetails user, JobType type, String sourcePath, String targetPath) {
+        return jobService.submitIfLarge(user, type, sourcePath, targetPath);
+    }
+
+    /**
+     * Gets state and progress of a background job.
+     */
+    public JobInfo getJob(CustomUserDetails user, UUID jobId) {
+        return jobService.getJob(user, jobId);
+    }
+
+    /**
+     * Lists background jobs of the user.
+     */
+    public List<JobInfo> listJobs(CustomUserDetails user) {
+        return jobService.listJobs(user);
+    }
+
+    /**
+     * Cancels a background job.
+     */
+    public JobInfo cancelJob(CustomUserDetails user, UUID jobId) {
+        return jobService.cancel(user, jobId);
+    }
+
+    /**
+     * Opens the ZIP produced by an archive job.
+     */
+    public InputStream openJobResult(CustomUserDetails user, UUID jobId) {
+        return jobService.openResult(user, jobId);
+    }
 }
@@ -0,0 +1,154 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.dto.StorageUsageInfo;
+import com.example.cloudstorage.entity.StorageUsage;
+import com.example.cloudstorage.exception.QuotaExceededException;
+import com.example.cloudstorage.repository.StorageUsageRepository;
+import com.example.cloudstorage.repository.UserRepository;
+import com.example.cloudstorage.security.CustomUserDetails;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+/**
+ * Service for per-user storage usage (bytes and catalog entries).
+ *
+ * The counters in user_storage_usage are maintained by statement-level triggers on
+ * resource_metadata, so every upload, delete and move updates them in the same transaction
+ * as the catalog change, and reading them is a primary key lookup.
+ * A scheduled reconciliation recomputes them from the catalog to correct any drift.
+ *
+ * Quotas are enforced on the same row: an upload reserves its size with one conditional
+ * UPDATE before any bytes are streamed, so concurrent uploads of a user cannot pass the
+ * limit together, and releases the reservation once the catalog counts the file or the upload fails.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StorageUsageService {
+
+    private final StorageUsageRepository usageRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final StorageProperties storageProperties;
+
+    /**
+     * Returns the current usage and quota of a user; a user without any resources uses nothing.
+     */
+    public StorageUsageInfo getUsage(CustomUserDetails user) {
+        StorageUsage usage = usageRepository.findById(user.getId()).orElseGet(StorageUsage::new);
+        StorageProperties.Quota quota = storageProperties.getQuota();
+        return StorageUsageInfo.builder()
+                .bytesUsed(usage.getBytesUsed())
+                .objectCount(usage.getObjectCount())
+                .bytesLimit(usage.getQuotaBytes() != null ? usage.getQuotaBytes() : quota.getMaxBytes().toBytes())
+                .objectLimit(usage.getQuotaObjects() != null ? usage.getQuotaObjects() : quota.getMaxObjects())
+                .build();
+    }
+
+    /**
+     * Reserves quota for an upload before its bytes are streamed.
+     * The caller must close the reservation when the upload is over, successful or not.
+     *
+     * @param bytes Total size of the files about to be uploaded
+     * @param objects Number of files about to be uploaded
+     * @return Reservation to commit per stored file and to close afterwards
+     * @throws QuotaExceededException if the upload would exceed the user's byte or object quota
+     */
+    public QuotaReservation reserve(Long userId, long bytes, long objects) {
+        StorageProperties.Quota quota = storageProperties.getQuota();
+        if (!quota.isEnabled()) {
+            return QuotaReservation.NONE;
+        }
+
+        Boolean reserved = transactionTemplate.execute(status -> {
+            usageRepository.insertIfAbsent(userId);
+            return usageRepository.reserve(userId, bytes, objects,
+                    quota.getMaxBytes().toBytes(), quota.getMaxObjects()) > 0;
+        });
+        if (!Boolean.TRUE.equals(reserved)) {
+            throw new QuotaExceededException("Storage quota exceeded: the upload of " + bytes
+                    + " bytes in " + objects + " files does not fit into the remaining space");
+        }
+        return new QuotaReservation(this, userId, bytes, objects);
+    }
+
+    /**
+     * Checks that the user has room for more bytes and objects without keeping a reservation,
+     * e.g. to reject a chunked upload part early. The binding check happens when the file is recorded.
+     *
+     * @throws QuotaExceededException if the user's quota would be exceeded
+     */
+    public void checkQuota(Long userId, long bytes, long objects) {
+        reserve(userId, bytes, objects).close();
+    }
+
+    /**
+     * Returns the bytes a user may still store, not counting what running uploads have reserved,
+     * e.g. to limit the size of a presigned upload. Without quotas the space is unlimited.
+     */
+    public long remainingBytes(Long userId) {
+        StorageProperties.Quota quota = storageProperties.getQuota();
+        if (!quota.isEnabled()) {
+            return Long.MAX_VALUE;
+        }
+        StorageUsage usage = usageRepository.findById(userId).orElseGet(StorageUsage::new);
+        long limit = usage.getQuotaBytes() != null ? usage.getQuotaBytes() : quota.getMaxBytes().toBytes();
+        return Math.max(0, limit - usage.getBytesUsed() - usage.getReservedBytes());
+    }
+
+    void release(Long userId, long bytes, long objects) {
+        transactionTemplate.executeWithoutResult(status -> usageRepository.release(userId, bytes, objects));
+    }
+
+    /**
+     * Recomputes the counters of a user from the catalog.
+     * The counter row is locked first: catalog changes committed before are included in the
+     * recount, and changes still in flight wait and apply their delta on top of it.
+     *
+     * @return true if the counters had drifted and were corrected
+     */
+    public boolean reconcileUser(Long userId) {
+        Boolean corrected = transactionTemplate.execute(status -> {
+            usageRepository.insertIfAbsent(userId);
+            usageRepository.lock(userId);
+            return usageRepository.recompute(userId) > 0;
+        });
+        return Boolean.TRUE.equals(corrected);
+    }
+
+    /**
+     * Reconciles the counters of all users and clears stale upload reservations.
+     * Runs on a schedule; a failure for one user does not stop the others.
+     */
+    @Scheduled(
+            initialDelayString = "${storage.usage.reconcile-initial-delay:PT5M}",
+            fixedDelayString = "${storage.usage.reconcile-interval:PT6H}"
+    )
+    public void reconcileAll() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(storageProperties.getQuota().getReservationTtl());
+        Integer cleared = transactionTemplate.execute(status -> usageRepository.clearReservationsBefore(cutoff));
+        if (cleared != null && cleared > 0) {
+            log.warn("Cleared stale upload reservations of {} users", cleared);
+        }
+
+        int corrected = 0;
+        for (Long userId : userRepository.findAllIds()) {
+            try {
+                if (reconcileUser(userId)) {
+                    corrected++;
+                }
+            } catch (Exception e) {
+                log.error("Storage usage reconciliation failed for user {}", userId, e);
+            }
+        }
+        if (corrected > 0) {
+            log.warn("Corrected drifted storage usage counters of {} users", corrected);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.cloudstorage.service;
+
+import com.example.cloudstorage.config.MinioProperties;
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.dto.ResourceInfo;
+import com.example.cloudstorage.dto.TrashEntryInfo;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.example.cloudstorage.entity.TrashEntry;
+import com.example.cloudstorage.exception.ResourceNotFoundException;
+import com.example.cloudstorage.exception.StorageException;
+import com.example.cloudstorage.repository.TrashEntryRepository;
+import com.example.cloudstorage.security.CustomUserDetails;
+import io.minio.MinioClient;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Service for the trash of deleted folders.
+ *
+ * Deleting a folder marks its catalog entries with a new trash entry in a single statement,
+ * however many objects it holds; the entries disappear from listings, search and lookups,
+ * but keep their paths, so nothing can be created there in the meantime.
+ * A trashed folder can be restored until its retention period ends. Afterwards a scheduled
+ * collection removes its objects and entries in throttled batches; storage usage and quotas
+ * include trashed folders until then.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class TrashService {
+
+    private final MinioClient minioClient;
+    private final MinioProperties minioProperties;
+    private final StorageProperties storageProperties;
+    private final PathService pathService;
+    private final MetadataService metadataService;
+    private final ResourceInfoBuilder resourceInfoBuilder;
+    private final TrashEntryRepository trashRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private static final String SLASH = "/";
+    private static final int ENTRIES_PER_COLLECTION = 100;
+
+    /**
+     * Whether deleted folders are moved into the trash.
+     */
+    public boolean isEnabled() {
+        return storageProperties.getTrash().isEnabled();
+    }
+
+    /**
+     * Moves a folder with everything beneath it into the trash.
+     *
+     * @param user User deleting the folder
+     * @param path Directory path (must end with '/')
+     * @return The new trash entry
+     * @throws ResourceNotFoundException if directory doesn't exist
+     */
+    public TrashEntryInfo trash(CustomUserDetails user, String path) {
+        pathService.validatePath(path);
+        pathService.validateDirectoryPath(path);
+
+        if (path.isEmpty() || SLASH.equals(path)) {
+            throw new IllegalArgumentException("Cannot delete root directory");
+        }
+        if (!metadataService.exists(user.getId(), path)) {
+            throw new ResourceNotFoundException("Directory not found: " + path);
+        }
+
+        UUID trashId = UUID.randomUUID();
+        String normalized = MetadataService.normalize(path);
+        int trashed = Objects.requireNonNull(transactionTemplate.execute(status -> {
+            trashRepository.insert(trashId, user.getId(), normalized,
+                    storageProperties.getTrash().getRetention().toSeconds());
+            return metadataService.trash(user.getId(), normalized, trashId);
+        }));
+
+        log.info("Moved directory {} of user {} to the trash ({} entries)", path, user.getId(), trashed);
+        return toInfo(trashRepository.findById(trashId).orElseThrow());
+    }
+
+    /**
+     * Lists the user's trashed folders that can still be restored, newest first.
+     */
+    public List<TrashEntryInfo> list(CustomUserDetails user) {
+        return trashRepository.findRestorable(user.getId()).stream()
+                .map(this::toInfo)
+                .toList();
+    }
+
+    /**
+     * Restores a trashed folder to its path.
+     *
+     * @return ResourceInfo of the restored folder
+     * @throws ResourceNotFoundException if the entry does not exist or has expired,
+     *                                   or if the parent folder is in the trash as well
+     */
+    public ResourceInfo restore(CustomUserDetails user, UUID trashId) {
+        TrashEntry entry = trashRepository.findRestorable(trashId, user.getId())
+                .orElseThrow(() -> new ResourceNotFoundException("Trash entry not found: " + trashId));
+
+        String parent = MetadataService.parentOf(entry.getPath());
+        if (!parent.isEmpty() && !metadataService.exists(user.getId(), parent)) {
+            throw new ResourceNotFoundException("Parent folder not found: " + parent + ". Restore it first.");
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            metadataService.restore(user.getId(), entry.getPath(), trashId);
+            // Fails if the entry expired meanwhile; the collection may already be purging it
+            if (trashRepository.deleteRestorable(trashId, user.getId()) == 0) {
+                throw new ResourceNotFoundException("Trash entry not found: " + trashId);
+            }
+        });
+
+        log.info("Restored directory {} of user {} from the trash", entry.getPath(), user.getId());
+        return resourceInfoBuilder.build(entry.getPath(), 0, true);
+    }
+
+    /**
+     * Purges a trashed folder with the next collection instead of at the end of its retention period.
+     *
+     * @throws ResourceNotFoundException if the entry does not exist or has already expired
+     */
+    public void purge(CustomUserDetails user, UUID trashId) {
+        if (transactionTemplate.execute(status -> trashRepository.expireNow(trashId, user.getId())) == 0) {
+            throw new ResourceNotFoundException("Trash entry not found: " + trashId);
+        }
+    }
+
+    /**
+     * Purges expired trash entries. Runs regardless of the trash setting,
+     * so folders trashed before it was turned off are still purged.
+     *
+     * @return Number of purged trash entries
+     */
+    @Scheduled(
+            initialDelayString = "${storage.trash.purge-initial-delay:PT5M}",
+            fixedDelayString = "${storage.trash.purge-interval:PT10M}"
+    )
+    public int purgeExpired() {
+        int purged = 0;
+        for (TrashEntry entry : trashRepository.findExpired(ENTRIES_PER_COLLECTION)) {
+            try {
+                purgeEntry(entry);
+                purged++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return purged;
+            } catch (Exception e) {
+                log.error("Failed to purge trash entry {} ({})", entry.getId(), entry.getPath(), e);
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Removes the objects and catalog entries of a trashed folder batch by batch, then the trash entry.
+     * Each batch is removed from the catalog only after MinIO has removed its objects,
+     * so an interrupted purge continues where it stopped. Purging the same entry twice is harmless.
+     */
+    private void purgeEntry(TrashEntry entry) throws Exception {
+        StorageProperties.Trash settings = storageProperties.getTrash();
+        int removed = 0;
+        List<ResourceMetadata> batch;
+        do {
+            batch = metadataService.listTrashed(entry.getId(), settings.getPurgeBatchSize());
+            removeObjects(batch);
+            removed += metadataService.removeTrashed(entry.getUserId(), entry.getId(), batch);
+            if (batch.size() == settings.getPurgeBatchSize()) {
+                Thread.sleep(settings.getPurgeBatchDelay().toMillis());
+            }
+        } while (batch.size() == settings.getPurgeBatchSize());
+
+        trashRepository.deleteById(entry.getId());
+        log.info("Purged trashed directory {} of user {} ({} entries)", entry.getPath(), entry.getUserId(), removed);
+    }
+
+    /**
+     * Removes the objects of a batch of catalog entries. Deduplicated files have no object of their own;
+     * their shared blobs are collected once unreferenced. Directory markers are removed like files.
+     *
+     * @throws StorageException if an object could not be removed
+     */
+    private void removeObjects(List<ResourceMetadata> batch) throws Exception {
+        List<DeleteObject> objects = batch.stream()
+                .filter(entry -> entry.getContentHash() == null)
+                .map(entry -> new DeleteObject(pathService.buildObjectPath(entry)))
+                .toList();
+        if (objects.isEmpty()) {
+            return;
+        }
+
+        Iterable<Result<DeleteError>> results = minioClient.removeObjects(RemoveObjectsArgs.builder()
+                .bucket(minioProperties.getBucketName())
+                .objects(objects)
+                .build());
+        for (Result<DeleteError> result : results) {
+            DeleteError error = result.get();
+            throw new StorageException("Failed to delete object " + error.objectName() + ": " + error.message());
+        }
+    }
+
+    private TrashEntryInfo toInfo(TrashEntry entry) {
+        return TrashEntryInfo.builder()
+                .id(entry.getId())
+                .path(entry.getPath())
+                .trashedAt(entry.getTrashedAt())
+                .expiresAt(entry.getExpiresAt())
+                .build();
+    }
+}
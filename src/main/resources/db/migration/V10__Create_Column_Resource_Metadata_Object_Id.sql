@@ -0,0 +1,9 @@
+-- Stable object keys (objects/<object_id>) for files, independent of their path.
+-- Files with an object_id are moved and renamed by updating the catalog only;
+-- files without one keep the path-derived key under the user prefix.
+ALTER TABLE resource_metadata ADD COLUMN object_id UUID;
+
+CREATE UNIQUE INDEX uk_resource_metadata_object_id ON resource_metadata (object_id) WHERE object_id IS NOT NULL;
+
+-- Chunked uploads decide their object key when the multipart upload is created
+ALTER TABLE upload_sessions ADD COLUMN object_id UUID;
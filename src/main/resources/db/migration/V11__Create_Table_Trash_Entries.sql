@@ -0,0 +1,18 @@
+-- Folders deleted into the trash. The catalog entries of a trashed folder keep their paths
+-- and reference the trash entry, which hides them from listings, search and lookups
+-- while their objects stay in place until the entry expires and is purged.
+CREATE TABLE trash_entries (
+    id UUID PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    path VARCHAR(1024) COLLATE "C" NOT NULL,
+    trashed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX idx_trash_entries_user ON trash_entries (user_id, trashed_at);
+CREATE INDEX idx_trash_entries_expires ON trash_entries (expires_at);
+
+-- No cascade: an entry is removed only after the collector has purged its objects and catalog entries
+ALTER TABLE resource_metadata ADD COLUMN trash_id UUID REFERENCES trash_entries (id);
+
+CREATE INDEX idx_resource_metadata_trash_id ON resource_metadata (trash_id, path) WHERE trash_id IS NOT NULL;
@@ -0,0 +1,11 @@
+-- SHA-256 of a file's content, computed while it was uploaded; null if unknown
+-- (chunked and presigned uploads, files found by the reconciliation).
+ALTER TABLE resource_metadata ADD COLUMN checksum_sha256 VARCHAR(64);
+
+-- When the scrubber last read the object back, and whether it was missing or no longer matched
+ALTER TABLE resource_metadata ADD COLUMN checksum_verified_at TIMESTAMP;
+ALTER TABLE resource_metadata ADD COLUMN checksum_failed BOOLEAN NOT NULL DEFAULT FALSE;
+
+CREATE INDEX idx_resource_metadata_checksum_verified_at
+    ON resource_metadata (checksum_verified_at NULLS FIRST, id)
+    WHERE checksum_sha256 IS NOT NULL;
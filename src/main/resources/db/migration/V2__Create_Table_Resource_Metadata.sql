@@ -0,0 +1,16 @@
+CREATE TABLE resource_metadata (
+    id BIGSERIAL PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    path VARCHAR(1024) COLLATE "C" NOT NULL,
+    parent_path VARCHAR(1024) COLLATE "C" NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    directory BOOLEAN NOT NULL,
+    size BIGINT,
+    etag VARCHAR(64),
+    content_type VARCHAR(255),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_resource_metadata_user_path UNIQUE (user_id, path)
+);
+
+CREATE INDEX idx_resource_metadata_user_parent ON resource_metadata (user_id, parent_path);
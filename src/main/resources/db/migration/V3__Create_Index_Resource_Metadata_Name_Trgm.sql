@@ -0,0 +1,5 @@
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE EXTENSION IF NOT EXISTS btree_gin;
+
+CREATE INDEX idx_resource_metadata_user_name_trgm
+    ON resource_metadata USING GIN (user_id, lower(name) gin_trgm_ops);
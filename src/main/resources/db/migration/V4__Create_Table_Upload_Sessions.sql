@@ -0,0 +1,22 @@
+CREATE TABLE upload_sessions (
+    id UUID PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    path VARCHAR(1024) COLLATE "C" NOT NULL,
+    upload_id VARCHAR(255) NOT NULL,
+    content_type VARCHAR(255),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_upload_sessions_user_path UNIQUE (user_id, path)
+);
+
+CREATE INDEX idx_upload_sessions_updated_at ON upload_sessions (updated_at);
+
+CREATE TABLE upload_parts (
+    id BIGSERIAL PRIMARY KEY,
+    session_id UUID NOT NULL REFERENCES upload_sessions (id) ON DELETE CASCADE,
+    part_number INTEGER NOT NULL,
+    etag VARCHAR(64) NOT NULL,
+    size BIGINT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT uk_upload_parts_session_part UNIQUE (session_id, part_number)
+);
@@ -0,0 +1,22 @@
+CREATE TABLE jobs (
+    id UUID PRIMARY KEY,
+    user_id BIGINT NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    type VARCHAR(16) NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    source_path VARCHAR(1024) COLLATE "C" NOT NULL,
+    target_path VARCHAR(1024) COLLATE "C",
+    objects_total BIGINT,
+    objects_done BIGINT NOT NULL DEFAULT 0,
+    bytes_done BIGINT NOT NULL DEFAULT 0,
+    cancel_requested BOOLEAN NOT NULL DEFAULT FALSE,
+    result_object VARCHAR(255),
+    error TEXT,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    started_at TIMESTAMP,
+    finished_at TIMESTAMP,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Workers claim the oldest queued job; the partial index keeps that lookup small
+CREATE INDEX idx_jobs_queued ON jobs (created_at) WHERE status = 'QUEUED';
+CREATE INDEX idx_jobs_user_created ON jobs (user_id, created_at);
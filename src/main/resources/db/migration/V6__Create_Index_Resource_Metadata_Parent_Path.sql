@@ -0,0 +1,5 @@
+-- Keyset pagination of directory listings: children of a directory in path order
+CREATE INDEX idx_resource_metadata_user_parent_path ON resource_metadata (user_id, parent_path, path);
+
+-- Superseded by the index above
+DROP INDEX idx_resource_metadata_user_parent;
@@ -0,0 +1,86 @@
+-- Bytes and catalog entries (files and directories) held by each user.
+-- Maintained by statement-level triggers on resource_metadata, so every catalog change
+-- updates the counters in the same transaction, with one row update per statement and user.
+CREATE TABLE user_storage_usage (
+    user_id BIGINT PRIMARY KEY REFERENCES users (id) ON DELETE CASCADE,
+    bytes_used BIGINT NOT NULL DEFAULT 0,
+    object_count BIGINT NOT NULL DEFAULT 0,
+    updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE FUNCTION storage_usage_after_insert() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO user_storage_usage AS u (user_id, bytes_used, object_count)
+    SELECT user_id, COALESCE(SUM(size) FILTER (WHERE NOT directory), 0), COUNT(*)
+    FROM new_rows
+    GROUP BY user_id
+    ON CONFLICT (user_id) DO UPDATE
+    SET bytes_used = u.bytes_used + EXCLUDED.bytes_used,
+        object_count = u.object_count + EXCLUDED.object_count,
+        updated_at = CURRENT_TIMESTAMP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Moves and renames leave the totals unchanged and skip the counter row entirely
+CREATE FUNCTION storage_usage_after_update() RETURNS TRIGGER AS $$
+BEGIN
+    INSERT INTO user_storage_usage AS u (user_id, bytes_used, object_count)
+    SELECT user_id, SUM(bytes), SUM(objects)
+    FROM (
+        SELECT user_id, COALESCE(SUM(size) FILTER (WHERE NOT directory), 0) AS bytes, COUNT(*) AS objects
+        FROM new_rows GROUP BY user_id
+        UNION ALL
+        SELECT user_id, -COALESCE(SUM(size) FILTER (WHERE NOT directory), 0), -COUNT(*)
+        FROM old_rows GROUP BY user_id
+    ) delta
+    GROUP BY user_id
+    HAVING SUM(bytes) <> 0 OR SUM(objects) <> 0
+    ON CONFLICT (user_id) DO UPDATE
+    SET bytes_used = u.bytes_used + EXCLUDED.bytes_used,
+        object_count = u.object_count + EXCLUDED.object_count,
+        updated_at = CURRENT_TIMESTAMP;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Only updates existing rows: when a user is deleted, the cascade removes the counter row
+-- and this must not recreate it
+CREATE FUNCTION storage_usage_after_delete() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE user_storage_usage u
+    SET bytes_used = u.bytes_used - delta.bytes,
+        object_count = u.object_count - delta.objects,
+        updated_at = CURRENT_TIMESTAMP
+    FROM (
+        SELECT user_id, COALESCE(SUM(size) FILTER (WHERE NOT directory), 0) AS bytes, COUNT(*) AS objects
+        FROM old_rows
+        GROUP BY user_id
+    ) delta
+    WHERE u.user_id = delta.user_id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_storage_usage_insert
+    AFTER INSERT ON resource_metadata
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION storage_usage_after_insert();
+
+CREATE TRIGGER trg_storage_usage_update
+    AFTER UPDATE ON resource_metadata
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION storage_usage_after_update();
+
+CREATE TRIGGER trg_storage_usage_delete
+    AFTER DELETE ON resource_metadata
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION storage_usage_after_delete();
+
+INSERT INTO user_storage_usage (user_id, bytes_used, object_count)
+SELECT u.id,
+       COALESCE(SUM(m.size) FILTER (WHERE NOT m.directory), 0),
+       COUNT(m.id)
+FROM users u
+LEFT JOIN resource_metadata m ON m.user_id = u.id
+GROUP BY u.id;
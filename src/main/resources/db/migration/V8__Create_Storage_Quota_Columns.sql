@@ -0,0 +1,11 @@
+-- Per-user quotas and in-flight upload reservations.
+-- quota_bytes / quota_objects override the configured defaults for a single user (NULL = default).
+-- Uploads reserve their size before streaming with one conditional UPDATE of the counter row,
+-- so concurrent uploads of the same user cannot pass the limit together. Reservations are
+-- released once the catalog counts the file, or when the upload fails.
+ALTER TABLE user_storage_usage
+    ADD COLUMN quota_bytes BIGINT,
+    ADD COLUMN quota_objects BIGINT,
+    ADD COLUMN reserved_bytes BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN reserved_objects BIGINT NOT NULL DEFAULT 0,
+    ADD COLUMN reserved_at TIMESTAMP;
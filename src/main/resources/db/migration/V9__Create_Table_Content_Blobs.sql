@@ -0,0 +1,88 @@
+-- File bodies stored once per content hash under blobs/<sha256> (deduplication mode).
+-- Catalog entries with a content_hash point to a blob instead of an object under the user prefix,
+-- so moving or deleting them only touches the catalog.
+-- ref_count is maintained by statement-level triggers on resource_metadata;
+-- blobs without references are removed by the scheduled garbage collection.
+CREATE TABLE content_blobs (
+    hash VARCHAR(64) PRIMARY KEY,
+    size BIGINT NOT NULL,
+    etag VARCHAR(64),
+    ref_count BIGINT NOT NULL DEFAULT 0,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    last_used_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Garbage collection candidates
+CREATE INDEX idx_content_blobs_unreferenced ON content_blobs (last_used_at) WHERE ref_count = 0;
+
+-- The foreign key keeps a referenced blob from being collected even if ref_count drifts
+ALTER TABLE resource_metadata ADD COLUMN content_hash VARCHAR(64) REFERENCES content_blobs (hash);
+
+CREATE INDEX idx_resource_metadata_content_hash ON resource_metadata (content_hash) WHERE content_hash IS NOT NULL;
+
+CREATE FUNCTION content_blob_refs_after_insert() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE content_blobs b
+    SET ref_count = b.ref_count + delta.refs
+    FROM (
+        SELECT content_hash, COUNT(*) AS refs
+        FROM new_rows
+        WHERE content_hash IS NOT NULL
+        GROUP BY content_hash
+    ) delta
+    WHERE b.hash = delta.content_hash;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Moves and renames keep the hash and leave the counts unchanged
+CREATE FUNCTION content_blob_refs_after_update() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE content_blobs b
+    SET ref_count = b.ref_count + delta.refs
+    FROM (
+        SELECT content_hash, SUM(refs) AS refs
+        FROM (
+            SELECT content_hash, COUNT(*) AS refs
+            FROM new_rows WHERE content_hash IS NOT NULL GROUP BY content_hash
+            UNION ALL
+            SELECT content_hash, -COUNT(*)
+            FROM old_rows WHERE content_hash IS NOT NULL GROUP BY content_hash
+        ) changes
+        GROUP BY content_hash
+        HAVING SUM(refs) <> 0
+    ) delta
+    WHERE b.hash = delta.content_hash;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE FUNCTION content_blob_refs_after_delete() RETURNS TRIGGER AS $$
+BEGIN
+    UPDATE content_blobs b
+    SET ref_count = b.ref_count - delta.refs
+    FROM (
+        SELECT content_hash, COUNT(*) AS refs
+        FROM old_rows
+        WHERE content_hash IS NOT NULL
+        GROUP BY content_hash
+    ) delta
+    WHERE b.hash = delta.content_hash;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_content_blob_refs_insert
+    AFTER INSERT ON resource_metadata
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION content_blob_refs_after_insert();
+
+CREATE TRIGGER trg_content_blob_refs_update
+    AFTER UPDATE ON resource_metadata
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION content_blob_refs_after_update();
+
+CREATE TRIGGER trg_content_blob_refs_delete
+    AFTER DELETE ON resource_metadata
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION content_blob_refs_after_delete();
@@ -1,16 +1,38 @@
 package com.example.cloudstorage.service;
 
+import com.example.cloudstorage.config.StorageProperties;
+import com.example.cloudstorage.dto.JobInfo;
+import com.example.cloudstorage.dto.PresignedUpload;
 import com.example.cloudstorage.dto.ResourceInfo;
 import com.example.cloudstorage.dto.ResourceType;
+import com.example.cloudstorage.dto.StorageUsageInfo;
+import com.example.cloudstorage.dto.TrashEntryInfo;
+import com.example.cloudstorage.dto.UploadPartInfo;
+import com.example.cloudstorage.dto.UploadSessionInfo;
+import com.example.cloudstorage.entity.JobStatus;
+import com.example.cloudstorage.entity.JobType;
+import com.example.cloudstorage.entity.ResourceMetadata;
+import com.example.cloudstorage.entity.StorageUsage;
 import com.example.cloudstorage.entity.User;
+import com.example.cloudstorage.exception.InvalidCursorException;
+import com.example.cloudstorage.exception.InvalidPathException;
+import com.example.cloudstorage.exception.InvalidUploadException;
+import com.example.cloudstorage.exception.QuotaExceededException;
 import com.example.cloudstorage.exception.ResourceAlreadyExistsException;
 import com.example.cloudstorage.exception.ResourceNotFoundException;
+import com.example.cloudstorage.repository.ContentBlobRepository;
+import com.example.cloudstorage.repository.ResourceMetadataRepository;
+import com.example.cloudstorage.repository.StorageUsageRepository;
 import com.example.cloudstorage.repository.UserRepository;
 import com.example.cloudstorage.security.CustomUserDetails;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.minio.GetObjectArgs;
 import io.minio.ListObjectsArgs;
 import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
 import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.errors.ErrorResponseException;
 import io.minio.messages.Item;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -27,9 +49,24 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -60,6 +97,15 @@ class StorageServiceTest {
         registry.add("minio.access-key", minio::getUserName);
         registry.add("minio.secret-key", minio::getPassword);
         registry.add("minio.bucket-name", () -> "user-files");
+
+        registry.add("storage.metadata.reconcile-enabled", () -> "false");
+        registry.add("storage.metadata.reconcile-grace-period", () -> "PT0S");
+        registry.add("storage.move.delete-batch-size", () -> "10");
+        registry.add("storage.jobs.async-threshold", () -> "20");
+        registry.add("storage.jobs.poll-interval", () -> "PT0.1S");
+        registry.add("storage.cache.redis-enabled", () -> "false");
+        registry.add("storage.dedup.gc-grace-period", () -> "PT0S");
+        registry.add("storage.layout.migration-grace-period", () -> "PT0S");
     }
 
     @Autowired
@@ -74,12 +120,46 @@ class StorageServiceTest {
     @Autowired
     private MinioClient minioClient;
 
+    @Autowired
+    private MetadataReconciliationService reconciliationService;
+
+    @Autowired
+    private StorageUsageService storageUsageService;
+
+    @Autowired
+    private StorageUsageRepository storageUsageRepository;
+
+    @Autowired
+    private ResourceMetadataRepository resourceMetadataRepository;
+
+    @Autowired
+    private ContentBlobService contentBlobService;
+
+    @Autowired
+    private ContentBlobRepository contentBlobRepository;
+
+    @Autowired
+    private StorageProperties storageProperties;
+
+    @Autowired
+    private ObjectKeyMigrationService objectKeyMigrationService;
+
+    @Autowired
+    private TrashService trashService;
+
+    @Autowired
+    private ChecksumScrubService checksumScrubService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     private CustomUserDetails testUser1;
     private CustomUserDetails testUser2;
 
     @BeforeEach
     void setUp() throws Exception {
         userRepository.deleteAll();
+        contentBlobRepository.deleteAllInBatch();
         
         cleanupMinIO();
         
@@ -272,6 +352,24 @@ class StorageServiceTest {
         assertThat(stream).isNotNull();
     }
 
+    @Test
+    void moveFolder_intoItsOwnSubfolder_shouldBeRejected() {
+        storageService.upload(testUser1, "outer/inner/",
+                List.of(new MockMultipartFile("object", "file.txt", "text/plain", "stay".getBytes())));
+
+        assertThatThrownBy(() -> storageService.moveOrRenameResource(testUser1, "outer/", "outer/inner/outer/"))
+                .isInstanceOf(InvalidPathException.class);
+        assertThatThrownBy(() -> storageService.moveOrRenameResource(testUser1, "outer/", "outer/moved/"))
+                .isInstanceOf(InvalidPathException.class);
+
+        assertThat(storageService.listDirectory(testUser1, "outer/"))
+                .extracting(ResourceInfo::getName)
+                .containsExactly("inner/");
+        assertThat(storageService.listDirectory(testUser1, "outer/inner/"))
+                .extracting(ResourceInfo::getName)
+                .containsExactly("file.txt");
+    }
+
     @Test
     void createDirectory_shouldCreateEmptyFolder() throws Exception {
         ResourceInfo created = storageService.createDirectory(testUser1, "new-folder/");
@@ -355,6 +453,38 @@ class StorageServiceTest {
                 .containsExactlyInAnyOrder("readme.txt", "readme.md");
     }
 
+    @Test
+    void searchRanksExactAndPrefixMatchesFirst() {
+        storageService.upload(testUser1, "", List.of(
+                new MockMultipartFile("object", "old-notes", "text/plain", "a".getBytes()),
+                new MockMultipartFile("object", "notes-2024.txt", "text/plain", "b".getBytes()),
+                new MockMultipartFile("object", "Notes", "text/plain", "c".getBytes())
+        ));
+
+        List<ResourceInfo> results = storageService.searchUserFiles(testUser1, "notes");
+
+        assertThat(results).extracting(ResourceInfo::getName)
+                .containsExactly("Notes", "notes-2024.txt", "old-notes");
+    }
+
+    @Test
+    void searchReturnsResultsPageByPage() {
+        for (int i = 0; i < 5; i++) {
+            storageService.upload(testUser1, "", List.of(
+                    new MockMultipartFile("object", "page_" + i + ".txt", "text/plain", "x".getBytes())));
+        }
+        storageService.upload(testUser1, "", List.of(
+                new MockMultipartFile("object", "pageXtxt", "text/plain", "x".getBytes())));
+
+        List<ResourceInfo> first = storageService.searchUserFiles(testUser1, "page_", 0, 3);
+        List<ResourceInfo> second = storageService.searchUserFiles(testUser1, "page_", 1, 3);
+
+        assertThat(first).hasSize(3);
+        assertThat(second).hasSize(2);
+        assertThat(first).extracting(ResourceInfo::getName)
+                .doesNotContainAnyElementsOf(second.stream().map(ResourceInfo::getName).toList());
+    }
+
     @Test
     void listDirectory_shouldShowOnlyDirectContents() {
         storageService.createDirectory(testUser1, "parent/");
@@ -379,6 +509,474 @@ class StorageServiceTest {
                 .contains(ResourceType.DIRECTORY, ResourceType.FILE);
     }
 
+    @Test
+    void listDirectoryPages_shouldFollowCursorsToTheEnd() {
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            files.add(new MockMultipartFile("file", String.format("page-%02d.txt", i), "text/plain", "x".getBytes()));
+        }
+        storageService.upload(testUser1, "paged/", files);
+
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            DirectoryService.ListingPage page = storageService.listDirectory(testUser1, "paged/", cursor, 10);
+            page.items().forEach(item -> names.add(item.getName()));
+            cursor = page.nextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(names).hasSize(25).isSorted().doesNotHaveDuplicates();
+
+        assertThatThrownBy(() -> storageService.listDirectory(testUser1, "other/",
+                storageService.listDirectory(testUser1, "paged/", null, 10).nextCursor(), 10))
+                .isInstanceOf(InvalidCursorException.class);
+    }
+
+    @Test
+    void streamedListingAndSearch_shouldWriteOneJsonObjectPerLine() throws Exception {
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            files.add(new MockMultipartFile("file", "streamed-" + i + ".txt", "text/plain", "x".getBytes()));
+        }
+        storageService.upload(testUser1, "streamed/", files);
+        storageService.createDirectory(testUser1, "streamed/sub/");
+
+        ByteArrayOutputStream listing = new ByteArrayOutputStream();
+        storageService.streamDirectory(testUser1, "streamed/").writeTo(listing);
+        List<String> lines = listing.toString().lines().toList();
+        assertThat(lines).hasSize(6);
+        assertThat(lines.getFirst()).contains("\"name\":\"streamed-0.txt\"");
+        assertThat(lines.getLast()).contains("\"type\":\"DIRECTORY\"");
+
+        ByteArrayOutputStream search = new ByteArrayOutputStream();
+        storageService.streamSearch(testUser1, "streamed-").writeTo(search);
+        assertThat(search.toString().lines()).hasSize(5)
+                .allMatch(line -> line.startsWith("{") && line.contains("streamed-"));
+
+        assertThatThrownBy(() -> storageService.streamDirectory(testUser1, "missing/"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void storageUsage_shouldFollowUploadsMovesAndDeletes() {
+        storageService.upload(testUser1, "usage/", List.of(
+                new MockMultipartFile("file", "a.txt", "text/plain", "12345".getBytes()),
+                new MockMultipartFile("file", "b.txt", "text/plain", "123".getBytes())
+        ));
+
+        StorageUsageInfo usage = storageService.getUsage(testUser1);
+        assertThat(usage.getBytesUsed()).isEqualTo(8);
+        assertThat(usage.getObjectCount()).isEqualTo(3);
+
+        storageService.moveOrRenameResource(testUser1, "usage/", "moved-usage/");
+        assertThat(storageService.getUsage(testUser1)).isEqualTo(usage);
+
+        storageService.deleteResource(testUser1, "moved-usage/b.txt");
+        usage = storageService.getUsage(testUser1);
+        assertThat(usage.getBytesUsed()).isEqualTo(5);
+        assertThat(usage.getObjectCount()).isEqualTo(2);
+
+        assertThat(storageService.getUsage(testUser2).getObjectCount()).isZero();
+        assertThat(storageUsageService.reconcileUser(testUser1.getId())).isFalse();
+    }
+
+    @Test
+    void uploadBeyondQuota_shouldBeRejectedAndReleaseTheReservation() {
+        StorageUsage quota = new StorageUsage();
+        quota.setUserId(testUser1.getId());
+        quota.setQuotaBytes(10L);
+        storageUsageRepository.save(quota);
+
+        storageService.upload(testUser1, "quota/", List.of(
+                new MockMultipartFile("file", "a.txt", "text/plain", "12345678".getBytes())
+        ));
+
+        assertThatThrownBy(() -> storageService.upload(testUser1, "quota/", List.of(
+                new MockMultipartFile("file", "b.txt", "text/plain", "1".getBytes()),
+                new MockMultipartFile("file", "c.txt", "text/plain", "12".getBytes())
+        ))).isInstanceOf(QuotaExceededException.class);
+        assertThat(storageService.getResourceInfo(testUser1, "quota/")).isNotNull();
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "quota/b.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+
+        storageService.upload(testUser1, "quota/", List.of(
+                new MockMultipartFile("file", "b.txt", "text/plain", "12".getBytes())
+        ));
+
+        StorageUsageInfo usage = storageService.getUsage(testUser1);
+        assertThat(usage.getBytesUsed()).isEqualTo(10);
+        assertThat(usage.getBytesLimit()).isEqualTo(10);
+        StorageUsage row = storageUsageRepository.findById(testUser1.getId()).orElseThrow();
+        assertThat(row.getReservedBytes()).isZero();
+        assertThat(row.getReservedObjects()).isZero();
+    }
+
+    @Test
+    void multiFileUpload_shouldReportEachFileInRequestOrder() throws Exception {
+        storageService.upload(testUser1, "batch/",
+                List.of(new MockMultipartFile("object", "taken.txt", "text/plain", "old".getBytes())));
+
+        List<FileOperationsService.UploadOutcome> outcomes = storageService.uploadEach(testUser1, "batch/", List.of(
+                new MockMultipartFile("object", "a.txt", "text/plain", "a".getBytes()),
+                new MockMultipartFile("object", "taken.txt", "text/plain", "new".getBytes()),
+                new MockMultipartFile("object", "b.txt", "text/plain", "b".getBytes()),
+                new MockMultipartFile("object", "a.txt", "text/plain", "again".getBytes())
+        ));
+
+        assertThat(outcomes).extracting(FileOperationsService.UploadOutcome::name)
+                .containsExactly("a.txt", "taken.txt", "b.txt", "a.txt");
+        assertThat(outcomes).extracting(FileOperationsService.UploadOutcome::succeeded)
+                .containsExactly(true, false, true, false);
+        assertThat(outcomes.get(1).error()).isInstanceOf(ResourceAlreadyExistsException.class);
+        assertThat(outcomes.get(3).error()).isInstanceOf(ResourceAlreadyExistsException.class);
+
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "batch/a.txt")) {
+            assertThat(in.readAllBytes()).isEqualTo("a".getBytes());
+        }
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "batch/taken.txt")) {
+            assertThat(in.readAllBytes()).isEqualTo("old".getBytes());
+        }
+        assertThat(storageService.getUsage(testUser1).getBytesUsed()).isEqualTo(5);
+        StorageUsage row = storageUsageRepository.findById(testUser1.getId()).orElseThrow();
+        assertThat(row.getReservedBytes()).isZero();
+        assertThat(row.getReservedObjects()).isZero();
+    }
+
+    @Test
+    void streamedUpload_shouldStoreBodiesOfKnownAndUnknownLength() throws Exception {
+        byte[] large = new byte[6 * 1024 * 1024];
+        Arrays.fill(large, (byte) 'x');
+
+        storageService.uploadStream(testUser1, "streams/known.txt",
+                new ByteArrayInputStream("known".getBytes()), 5, "text/plain");
+        ResourceInfo unknown = storageService.uploadStream(testUser1, "streams/large.bin",
+                new ByteArrayInputStream(large), -1, null);
+
+        assertThat(unknown.getSize()).isEqualTo(large.length);
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "streams/known.txt")) {
+            assertThat(in.readAllBytes()).isEqualTo("known".getBytes());
+        }
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "streams/large.bin")) {
+            assertThat(in.readAllBytes()).isEqualTo(large);
+        }
+        assertThat(storageService.getFileMetadata(testUser1, "streams/large.bin").getContentType())
+                .isEqualTo("application/octet-stream");
+        assertThat(storageService.getUsage(testUser1).getBytesUsed()).isEqualTo(5 + large.length);
+        assertThatThrownBy(() -> storageService.uploadStream(testUser1, "streams/known.txt",
+                new ByteArrayInputStream("again".getBytes()), 5, "text/plain"))
+                .isInstanceOf(ResourceAlreadyExistsException.class);
+    }
+
+    @Test
+    void concurrentUploadsOfTheSameName_shouldCreateTheFileOnce() throws Exception {
+        String userPrefix = "user-" + testUser1.getId() + "-files/";
+        List<CompletableFuture<String>> uploads = IntStream.range(0, 4)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    String body = "version " + i;
+                    try {
+                        storageService.upload(testUser1, "race/",
+                                List.of(new MockMultipartFile("object", "same.txt", "text/plain", body.getBytes())));
+                        return body;
+                    } catch (ResourceAlreadyExistsException e) {
+                        return null;
+                    }
+                }))
+                .toList();
+
+        List<String> created = uploads.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList();
+        assertThat(created).hasSize(1);
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "race/same.txt")) {
+            assertThat(in.readAllBytes()).isEqualTo(created.getFirst().getBytes());
+        }
+        assertThat(objectNames(userPrefix)).containsExactly(userPrefix + "race/", userPrefix + "race/same.txt");
+        assertThat(storageService.getUsage(testUser1).getBytesUsed()).isEqualTo(created.getFirst().length());
+    }
+
+    @Test
+    void concurrentLargeUploadsOfTheSameName_shouldKeepTheWinnersObject() throws Exception {
+        String userPrefix = "user-" + testUser1.getId() + "-files/";
+        List<CompletableFuture<byte[]>> uploads = IntStream.range(0, 4)
+                .mapToObj(i -> CompletableFuture.supplyAsync(() -> {
+                    byte[] body = new byte[6 * 1024 * 1024];
+                    Arrays.fill(body, (byte) ('a' + i));
+                    try {
+                        // Known size through the multipart form, unknown size through the raw stream
+                        if (i % 2 == 0) {
+                            storageService.upload(testUser1, "race/",
+                                    List.of(new MockMultipartFile("object", "large.bin", null, body)));
+                        } else {
+                            storageService.uploadStream(testUser1, "race/large.bin",
+                                    new ByteArrayInputStream(body), -1, null);
+                        }
+                        return body;
+                    } catch (ResourceAlreadyExistsException e) {
+                        return null;
+                    }
+                }))
+                .toList();
+
+        List<byte[]> created = uploads.stream().map(CompletableFuture::join).filter(Objects::nonNull).toList();
+        assertThat(created).hasSize(1);
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "race/large.bin")) {
+            assertThat(in.readAllBytes()).isEqualTo(created.getFirst());
+        }
+        assertThat(objectNames(userPrefix)).contains(userPrefix + "race/large.bin");
+        assertThat(storageService.getUsage(testUser1).getBytesUsed()).isEqualTo(created.getFirst().length);
+    }
+
+    @Test
+    void checksums_shouldBeRecordedVerifiedAndScrubbed() throws Exception {
+        byte[] content = "checked content".getBytes();
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        String wrong = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest("other".getBytes()));
+
+        storageService.upload(testUser1, "", List.of(new MockMultipartFile("object", "form.txt", null, content)));
+        storageService.uploadStream(testUser1, "stream.txt", new ByteArrayInputStream(content), -1, null, sha256);
+        assertThatThrownBy(() -> storageService.uploadStream(testUser1, "bad.txt",
+                new ByteArrayInputStream(content), content.length, null, wrong))
+                .isInstanceOf(InvalidUploadException.class);
+
+        assertThat(storageService.getFileMetadata(testUser1, "form.txt").getChecksumSha256()).isEqualTo(sha256);
+        assertThat(storageService.getFileMetadata(testUser1, "stream.txt").getChecksumSha256()).isEqualTo(sha256);
+        assertThatThrownBy(() -> storageService.getFileMetadata(testUser1, "bad.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThat(objectNames("user-" + testUser1.getId() + "-files/bad")).isEmpty();
+        assertThat(Checksums.fromDigestHeader("md5=x, sha-256=:" + Base64.getEncoder()
+                .encodeToString(HexFormat.of().parseHex(sha256)) + ":")).isEqualTo(sha256);
+
+        assertThat(checksumScrubService.scrub(LocalDateTime.now()).verified()).isEqualTo(2);
+        assertThat(storageService.getFileMetadata(testUser1, "form.txt").getChecksumVerifiedAt()).isNotNull();
+
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket("user-files")
+                .object("user-" + testUser1.getId() + "-files/form.txt")
+                .stream(new ByteArrayInputStream("bit rot".getBytes()), 7, -1)
+                .build());
+        ChecksumScrubService.ScrubReport report = checksumScrubService.scrub(LocalDateTime.now());
+        assertThat(report.verified()).isEqualTo(1);
+        assertThat(report.failed()).isEqualTo(1);
+        assertThat(storageService.getFileMetadata(testUser1, "form.txt").isChecksumFailed()).isTrue();
+        assertThat(storageService.getFileMetadata(testUser1, "stream.txt").isChecksumFailed()).isFalse();
+    }
+
+    @Test
+    void smallFileDownloads_shouldBeServedFromTheContentCacheUntilTheFileChanges() throws Exception {
+        byte[] large = new byte[512 * 1024];
+        storageService.upload(testUser1, "", List.of(
+                new MockMultipartFile("object", "avatar.png", "image/png", "avatar v1".getBytes()),
+                new MockMultipartFile("object", "large.bin", null, large)));
+        double hits = contentCacheRequests("hit");
+        double misses = contentCacheRequests("miss");
+
+        for (int i = 0; i < 3; i++) {
+            try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "avatar.png")) {
+                assertThat(in.readAllBytes()).isEqualTo("avatar v1".getBytes());
+            }
+        }
+        try (InputStream in = storageService.downloadFileRange(testUser1, "avatar.png", 7, 2)) {
+            assertThat(in.readAllBytes()).isEqualTo("v1".getBytes());
+        }
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "large.bin")) {
+            assertThat(in.readAllBytes()).hasSize(large.length);
+        }
+        assertThat(contentCacheRequests("miss") - misses).isEqualTo(1);
+        assertThat(contentCacheRequests("hit") - hits).isEqualTo(3);
+
+        storageService.deleteResource(testUser1, "avatar.png");
+        storageService.upload(testUser1, "", List.of(
+                new MockMultipartFile("object", "avatar.png", "image/png", "avatar v2".getBytes())));
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "avatar.png")) {
+            assertThat(in.readAllBytes()).isEqualTo("avatar v2".getBytes());
+        }
+    }
+
+    @Test
+    void dedupUploads_shouldShareOneBlobAndCollectItOnceUnreferenced() throws Exception {
+        storageProperties.getDedup().setEnabled(true);
+        try {
+            byte[] content = "the same installer".getBytes();
+            storageService.upload(testUser1, "", List.of(new MockMultipartFile("object", "a.bin", null, content)));
+            storageService.upload(testUser1, "copies/", List.of(new MockMultipartFile("object", "b.bin", null, content)));
+            storageService.upload(testUser2, "", List.of(new MockMultipartFile("object", "c.bin", null, content)));
+        } finally {
+            storageProperties.getDedup().setEnabled(false);
+        }
+
+        assertThat(contentBlobRepository.findAll()).singleElement()
+                .satisfies(blob -> assertThat(blob.getRefCount()).isEqualTo(3));
+        assertThatThrownBy(() -> minioClient.statObject(StatObjectArgs.builder()
+                .bucket("user-files")
+                .object("user-" + testUser1.getId() + "-files/a.bin")
+                .build())).isInstanceOf(ErrorResponseException.class);
+
+        storageService.moveOrRenameResource(testUser1, "a.bin", "moved/a.bin");
+        storageService.moveOrRenameResource(testUser1, "copies/", "renamed/");
+        try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "renamed/b.bin")) {
+            assertThat(in.readAllBytes()).isEqualTo("the same installer".getBytes());
+        }
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(zipOf(testUser1, "moved/")))) {
+            assertThat(zip.getNextEntry().getName()).isEqualTo("moved/");
+            assertThat(zip.getNextEntry().getName()).isEqualTo("moved/a.bin");
+            assertThat(zip.readAllBytes()).isEqualTo("the same installer".getBytes());
+        }
+        assertThat(reconciliationService.reconcileUser(testUser1.getId()).removed()).isZero();
+
+        storageService.deleteResource(testUser1, "moved/a.bin");
+        storageService.deleteResource(testUser1, "renamed/");
+        assertThat(contentBlobService.collectGarbage()).isZero();
+
+        storageService.deleteResource(testUser2, "c.bin");
+        assertThat(contentBlobService.collectGarbage()).isEqualTo(1);
+        assertThat(contentBlobRepository.count()).isZero();
+    }
+
+    @Test
+    void objectIdLayout_shouldMoveFoldersInTheCatalogOnlyAndMigrateLegacyFiles() throws Exception {
+        String userPrefix = "user-" + testUser1.getId() + "-files/";
+        storageService.upload(testUser1, "legacy/",
+                List.of(new MockMultipartFile("object", "old.txt", "text/plain", "before".getBytes())));
+
+        storageProperties.getLayout().setObjectIds(true);
+        try {
+            storageService.upload(testUser1, "docs/2024/",
+                    List.of(new MockMultipartFile("object", "report.txt", "text/plain", "report".getBytes())));
+            assertThat(objectNames(userPrefix)).containsExactly(userPrefix + "legacy/", userPrefix + "legacy/old.txt");
+            assertThat(objectNames("objects/")).hasSize(1);
+
+            storageService.moveOrRenameResource(testUser1, "docs/", "archive/");
+            try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "archive/2024/report.txt")) {
+                assertThat(in.readAllBytes()).isEqualTo("report".getBytes());
+            }
+            assertThat(reconciliationService.reconcileUser(testUser1.getId()))
+                    .isEqualTo(new MetadataReconciliationService.ReconciliationReport(0, 0, 0));
+
+            assertThat(objectKeyMigrationService.migrateUser(testUser1.getId()))
+                    .isEqualTo(new ObjectKeyMigrationService.MigrationReport(1, 0, 1));
+            assertThat(objectNames(userPrefix)).isEmpty();
+            assertThat(objectNames("objects/")).hasSize(2);
+
+            storageService.moveOrRenameResource(testUser1, "legacy/old.txt", "archive/old.txt");
+            try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "archive/old.txt")) {
+                assertThat(in.readAllBytes()).isEqualTo("before".getBytes());
+            }
+
+            // A path-keyed copy the migration failed to remove must not hide the file's object from the delete
+            minioClient.putObject(PutObjectArgs.builder()
+                    .bucket("user-files")
+                    .object(userPrefix + "archive/old.txt")
+                    .stream(new ByteArrayInputStream("before".getBytes()), 6, -1)
+                    .build());
+
+            storageService.deleteResource(testUser1, "archive/");
+            assertThat(objectNames("objects/")).isEmpty();
+            assertThat(objectNames(userPrefix)).isEmpty();
+            assertThat(storageService.listDirectory(testUser1, "/"))
+                    .extracting(ResourceInfo::getName)
+                    .containsExactly("legacy/");
+        } finally {
+            storageProperties.getLayout().setObjectIds(false);
+        }
+    }
+
+    @Test
+    void trashedFolder_shouldBeHiddenRestorableAndPurged() throws Exception {
+        String userPrefix = "user-" + testUser1.getId() + "-files/";
+        storageService.upload(testUser1, "photos/2024/",
+                List.of(new MockMultipartFile("object", "beach.jpg", "image/jpeg", "sand".getBytes())));
+
+        // Uploads started before the folder is trashed must not land in it
+        UploadSessionInfo session = storageService.initiateUpload(testUser1, "photos/2024/late.bin", "application/octet-stream");
+        storageService.uploadPart(testUser1, session.getId(), 1, new ByteArrayInputStream("late".getBytes()), 4);
+        PresignedUpload upload = storageService.presignUpload(testUser1, "photos/2024/direct.txt");
+
+        storageProperties.getTrash().setEnabled(true);
+        try {
+            storageService.deleteResource(testUser1, "photos/");
+            assertThat(storageService.listDirectory(testUser1, "/")).isEmpty();
+            assertThat(storageService.searchUserFiles(testUser1, "beach")).isEmpty();
+            assertThatThrownBy(() -> storageService.createDirectory(testUser1, "photos/2024/"))
+                    .isInstanceOf(ResourceAlreadyExistsException.class);
+            assertThat(objectNames(userPrefix)).contains(userPrefix + "photos/2024/beach.jpg");
+
+            assertThat(postPresigned(upload, "direct")).isEqualTo(204);
+            assertThatThrownBy(() -> storageService.confirmPresignedUpload(testUser1, "photos/2024/direct.txt"))
+                    .isInstanceOf(ResourceAlreadyExistsException.class);
+            assertThat(objectNames(userPrefix)).doesNotContain(userPrefix + "photos/2024/direct.txt");
+            assertThatThrownBy(() -> storageService.completeUpload(testUser1, session.getId()))
+                    .isInstanceOf(ResourceAlreadyExistsException.class);
+
+            TrashEntryInfo entry = storageService.listTrash(testUser1).getFirst();
+            assertThat(entry.getPath()).isEqualTo("photos/");
+            assertThat(storageService.listTrash(testUser2)).isEmpty();
+            assertThatThrownBy(() -> storageService.restoreFromTrash(testUser2, entry.getId()))
+                    .isInstanceOf(ResourceNotFoundException.class);
+
+            storageService.restoreFromTrash(testUser1, entry.getId());
+            try (InputStream in = (InputStream) storageService.downloadResource(testUser1, "photos/2024/beach.jpg")) {
+                assertThat(in.readAllBytes()).isEqualTo("sand".getBytes());
+            }
+            assertThat(storageService.listTrash(testUser1)).isEmpty();
+            assertThat(storageService.completeUpload(testUser1, session.getId()).getSize()).isEqualTo(4L);
+
+            storageService.deleteResource(testUser1, "photos/");
+            storageService.purgeTrash(testUser1, storageService.listTrash(testUser1).getFirst().getId());
+            assertThat(trashService.purgeExpired()).isEqualTo(1);
+            assertThat(objectNames(userPrefix)).isEmpty();
+            assertThat(storageService.getUsage(testUser1).getBytesUsed()).isZero();
+
+            storageService.createDirectory(testUser1, "photos/");
+        } finally {
+            storageProperties.getTrash().setEnabled(false);
+        }
+    }
+
+    /**
+     * Uploads content through a presigned POST form, as a browser would.
+     */
+    private int postPresigned(PresignedUpload upload, String content) throws Exception {
+        String boundary = UUID.randomUUID().toString();
+        StringBuilder body = new StringBuilder();
+        upload.getFields().forEach((name, value) -> body.append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"").append(name).append("\"\r\n\r\n")
+                .append(value).append("\r\n"));
+        body.append("--").append(boundary).append("\r\n")
+                .append("Content-Disposition: form-data; name=\"file\"; filename=\"upload\"\r\n")
+                .append("Content-Type: application/octet-stream\r\n\r\n")
+                .append(content).append("\r\n--").append(boundary).append("--\r\n");
+
+        return HttpClient.newHttpClient().send(
+                HttpRequest.newBuilder(URI.create(upload.getUrl()))
+                        .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                        .POST(HttpRequest.BodyPublishers.ofString(body.toString()))
+                        .build(),
+                HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private double contentCacheRequests(String result) {
+        return meterRegistry.counter("storage.cache.content.requests", "result", result).count();
+    }
+
+    private List<String> objectNames(String prefix) throws Exception {
+        List<String> names = new ArrayList<>();
+        for (io.minio.Result<Item> result : minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket("user-files")
+                .prefix(prefix)
+                .recursive(true)
+                .build())) {
+            names.add(result.get().objectName());
+        }
+        return names;
+    }
+
+    private byte[] zipOf(CustomUserDetails user, String path) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingResponseBody) storageService.downloadResource(user, path)).writeTo(out);
+        return out.toByteArray();
+    }
+
     @Test
     void uploadDuplicateFile_shouldThrowException() {
         MockMultipartFile file = new MockMultipartFile(
@@ -426,6 +1024,84 @@ class StorageServiceTest {
                 .isInstanceOf(ResourceNotFoundException.class);
     }
 
+    @Test
+    void renameLargeFolder_shouldMoveEveryObjectAcrossDeleteBatches() throws Exception {
+        storageService.createDirectory(testUser1, "bulk/");
+        storageService.createDirectory(testUser1, "bulk/nested/");
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            files.add(new MockMultipartFile("object", "file-" + i + ".txt", "text/plain", ("content " + i).getBytes()));
+        }
+        storageService.upload(testUser1, "bulk/nested/", files);
+
+        storageService.moveOrRenameResource(testUser1, "bulk/", "moved/");
+
+        assertThat(storageService.listDirectory(testUser1, "moved/nested/")).hasSize(25);
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "bulk/"))
+                .isInstanceOf(ResourceNotFoundException.class);
+
+        Iterable<io.minio.Result<Item>> leftovers = minioClient.listObjects(ListObjectsArgs.builder()
+                .bucket("user-files")
+                .prefix("user-" + testUser1.getId() + "-files/bulk/")
+                .recursive(true)
+                .build());
+        assertThat(leftovers.iterator().hasNext()).isFalse();
+        assertThat(reconciliationService.reconcileUser(testUser1.getId()))
+                .isEqualTo(new MetadataReconciliationService.ReconciliationReport(0, 0, 0));
+    }
+
+    @Test
+    void largeFolderOperations_shouldRunAsBackgroundJobs() throws Exception {
+        storageService.createDirectory(testUser1, "small/");
+        assertThat(storageService.submitJobIfLarge(testUser1, JobType.MOVE, "small/", "other/")).isEmpty();
+
+        storageService.createDirectory(testUser1, "large/");
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            files.add(new MockMultipartFile("object", "file-" + i + ".txt", "text/plain", ("content " + i).getBytes()));
+        }
+        storageService.upload(testUser1, "large/", files);
+
+        assertThatThrownBy(() -> storageService.submitJobIfLarge(testUser1, JobType.MOVE, "large/", "large/nested/"))
+                .isInstanceOf(InvalidPathException.class);
+
+        JobInfo archive = storageService.submitJobIfLarge(testUser1, JobType.ARCHIVE, "large/", null).orElseThrow();
+        assertThat(awaitJob(archive).getStatus()).isEqualTo(JobStatus.SUCCEEDED);
+        try (ZipInputStream zip = new ZipInputStream(storageService.openJobResult(testUser1, archive.getId()))) {
+            int entries = 0;
+            while (zip.getNextEntry() != null) {
+                entries++;
+            }
+            assertThat(entries).isEqualTo(26);
+        }
+
+        JobInfo move = storageService.submitJobIfLarge(testUser1, JobType.MOVE, "large/", "renamed/").orElseThrow();
+        assertThat(move.getStatus()).isEqualTo(JobStatus.QUEUED);
+        JobInfo moved = awaitJob(move);
+        assertThat(moved.getStatus()).isEqualTo(JobStatus.SUCCEEDED);
+        assertThat(moved.getObjectsDone()).isEqualTo(26);
+        assertThat(storageService.listDirectory(testUser1, "renamed/")).hasSize(25);
+
+        JobInfo delete = storageService.submitJobIfLarge(testUser1, JobType.DELETE, "renamed/", null).orElseThrow();
+        assertThat(awaitJob(delete).getStatus()).isEqualTo(JobStatus.SUCCEEDED);
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "renamed/"))
+                .isInstanceOf(ResourceNotFoundException.class);
+
+        assertThatThrownBy(() -> storageService.getJob(testUser2, delete.getId()))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    private JobInfo awaitJob(JobInfo job) throws InterruptedException {
+        for (int i = 0; i < 300; i++) {
+            JobInfo current = storageService.getJob(testUser1, job.getId());
+            if (current.getStatus().isFinished()) {
+                return current;
+            }
+            Thread.sleep(100);
+        }
+        throw new AssertionError("Job did not finish: " + job.getId());
+    }
+
     @Test
     void getResourceInfo_shouldReturnCorrectMetadata() {
         MockMultipartFile file = new MockMultipartFile(
@@ -485,6 +1161,31 @@ class StorageServiceTest {
         }
     }
 
+    @Test
+    void asyncFileOperations_shouldCompleteLikeTheBlockingOnes() throws Exception {
+        MockMultipartFile file = new MockMultipartFile(
+                "file", "async.txt", "text/plain", "async content".getBytes()
+        );
+        storageService.upload(testUser1, "", List.of(file));
+
+        try (InputStream stream = storageService.downloadFileAsync(testUser1, "async.txt").get()) {
+            assertThat(new String(stream.readAllBytes())).isEqualTo("async content");
+        }
+
+        ResourceInfo moved = storageService.moveOrRenameResourceAsync(testUser1, "async.txt", "async/moved.txt").get();
+        assertThat(moved.getPath()).isEqualTo("async/");
+        assertThat(storageService.listDirectory(testUser1, "async/"))
+                .extracting(ResourceInfo::getName)
+                .containsExactly("moved.txt");
+
+        assertThatThrownBy(() -> storageService.moveOrRenameResourceAsync(testUser1, "async.txt", "other.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+
+        storageService.deleteResourceAsync(testUser1, "async/moved.txt").get();
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "async/moved.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
     @Test
     void downloadNonExistentFile_shouldThrowException() {
         assertThatThrownBy(() -> storageService.downloadResource(testUser1, "nonexistent.txt"))
@@ -535,6 +1236,63 @@ class StorageServiceTest {
         }
     }
 
+    @Test
+    void downloadDirectory_shouldKeepEntryOrderAndContentWithReadAhead() throws Exception {
+        List<MultipartFile> files = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            files.add(new MockMultipartFile("object", String.format("f%02d.txt", i), "text/plain",
+                    ("content-" + i).getBytes()));
+        }
+        storageService.upload(testUser1, "many/", files);
+
+        StreamingResponseBody body = (StreamingResponseBody) storageService.downloadResource(testUser1, "many/");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        body.writeTo(outputStream);
+
+        List<String> contents = new ArrayList<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(
+                new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    contents.add(entry.getName() + "=" + new String(zipInputStream.readAllBytes()));
+                }
+            }
+        }
+
+        assertThat(contents).hasSize(50);
+        for (int i = 0; i < 50; i++) {
+            assertThat(contents.get(i)).isEqualTo(String.format("many/f%02d.txt=content-%d", i, i));
+        }
+    }
+
+    @Test
+    void downloadDirectory_shouldStoreAlreadyCompressedEntries() throws Exception {
+        byte[] text = "compressible ".repeat(200).getBytes();
+        storageService.upload(testUser1, "mixed/", List.of(
+                new MockMultipartFile("object", "photo.jpg", "image/jpeg", new byte[]{1, 2, 3, 4}),
+                new MockMultipartFile("object", "notes.txt", "text/plain", text)
+        ));
+
+        StreamingResponseBody body = (StreamingResponseBody) storageService.downloadResource(testUser1, "mixed/");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        body.writeTo(outputStream);
+
+        try (ZipInputStream zipInputStream = new ZipInputStream(
+                new ByteArrayInputStream(outputStream.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                if (entry.getName().endsWith("photo.jpg")) {
+                    assertThat(entry.getMethod()).isEqualTo(ZipEntry.STORED);
+                    assertThat(zipInputStream.readAllBytes()).containsExactly(1, 2, 3, 4);
+                } else if (entry.getName().endsWith("notes.txt")) {
+                    assertThat(entry.getMethod()).isEqualTo(ZipEntry.DEFLATED);
+                    assertThat(zipInputStream.readAllBytes()).isEqualTo(text);
+                }
+            }
+        }
+    }
+
     @Test
     void downloadEmptyDirectory_shouldReturnEmptyZip() throws Exception {
         String dirPath = "empty-dir/";
@@ -643,4 +1401,215 @@ class StorageServiceTest {
         assertThat(new String(user1MinioStream.readAllBytes())).isEqualTo("User1 content");
         assertThat(new String(user2MinioStream.readAllBytes())).isEqualTo("User2 content");
     }
+
+    @Test
+    void listDirectory_shouldBeServedFromMetadataCatalog() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("object", "catalog.txt", "text/plain", "content".getBytes());
+        storageService.upload(testUser1, "catalog/", List.of(file));
+
+        minioClient.removeObject(RemoveObjectArgs.builder()
+                .bucket("user-files")
+                .object("user-" + testUser1.getId() + "-files/catalog/catalog.txt")
+                .build());
+
+        assertThat(storageService.listDirectory(testUser1, "catalog/"))
+                .extracting(ResourceInfo::getName)
+                .containsExactly("catalog.txt");
+
+        reconciliationService.reconcileUser(testUser1.getId());
+
+        assertThat(storageService.listDirectory(testUser1, "catalog/")).isEmpty();
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "catalog/catalog.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void cachedLookups_shouldBeInvalidatedByMutations() {
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "cached/"))
+                .isInstanceOf(ResourceNotFoundException.class);
+
+        storageService.createDirectory(testUser1, "cached/");
+        storageService.upload(testUser1, "cached/", List.of(
+                new MockMultipartFile("file", "inner.txt", "text/plain", "inner".getBytes())
+        ));
+        assertThat(storageService.getResourceInfo(testUser1, "cached/inner.txt").getSize()).isEqualTo(5);
+
+        storageService.moveOrRenameResource(testUser1, "cached/", "renamed/");
+
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "cached/inner.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThat(storageService.getResourceInfo(testUser1, "renamed/inner.txt").getName()).isEqualTo("inner.txt");
+
+        storageService.deleteResource(testUser1, "renamed/");
+
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "renamed/inner.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void reconcile_shouldIndexObjectsWrittenOutsideTheApplication() throws Exception {
+        byte[] content = "external".getBytes();
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket("user-files")
+                .object("user-" + testUser1.getId() + "-files/external/nested/file.txt")
+                .stream(new ByteArrayInputStream(content), content.length, -1)
+                .build());
+
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "external/nested/file.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+
+        reconciliationService.reconcileUser(testUser1.getId());
+
+        ResourceInfo info = storageService.getResourceInfo(testUser1, "external/nested/file.txt");
+        assertThat(info.getSize()).isEqualTo(8L);
+        assertThat(storageService.listDirectory(testUser1, "external/"))
+                .extracting(ResourceInfo::getName)
+                .containsExactly("nested/");
+    }
+
+    @Test
+    void reconcile_shouldMergeInUtf8ByteOrder() throws Exception {
+        // U+FF01 sorts after U+1F600 by UTF-16 code units, but before it by UTF-8 bytes like MinIO and the catalog
+        String userPrefix = "user-" + testUser1.getId() + "-files/";
+        byte[] content = "external".getBytes();
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket("user-files")
+                .object(userPrefix + "\uD83D\uDE00.txt")
+                .stream(new ByteArrayInputStream(content), content.length, -1)
+                .build());
+        assertThat(reconciliationService.reconcileUser(testUser1.getId()))
+                .isEqualTo(new MetadataReconciliationService.ReconciliationReport(1, 0, 0));
+        Long id = resourceMetadataRepository.findByUserIdAndPath(testUser1.getId(), "\uD83D\uDE00.txt")
+                .orElseThrow().getId();
+
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket("user-files")
+                .object(userPrefix + "\uFF01.txt")
+                .stream(new ByteArrayInputStream(content), content.length, -1)
+                .build());
+
+        assertThat(reconciliationService.reconcileUser(testUser1.getId()))
+                .isEqualTo(new MetadataReconciliationService.ReconciliationReport(1, 0, 0));
+        assertThat(resourceMetadataRepository.findByUserIdAndPath(testUser1.getId(), "\uD83D\uDE00.txt"))
+                .get().extracting(ResourceMetadata::getId).isEqualTo(id);
+        assertThat(resourceMetadataRepository.findByUserIdAndPath(testUser1.getId(), "\uFF01.txt")).isPresent();
+    }
+
+    @Test
+    void chunkedUpload_shouldAssemblePartsIntoFile() throws Exception {
+        byte[] first = new byte[5 * 1024 * 1024];
+        byte[] second = "tail".getBytes();
+
+        UploadSessionInfo session = storageService.initiateUpload(testUser1, "big/video.bin", "application/octet-stream");
+
+        storageService.uploadPart(testUser1, session.getId(), 2, new ByteArrayInputStream(second), second.length);
+        storageService.uploadPart(testUser1, session.getId(), 1, new ByteArrayInputStream(first), first.length);
+
+        assertThat(storageService.getUploadSession(testUser1, session.getId()).getParts())
+                .extracting(UploadPartInfo::getPartNumber)
+                .containsExactly(1, 2);
+
+        ResourceInfo info = storageService.completeUpload(testUser1, session.getId());
+
+        assertThat(info.getSize()).isEqualTo(first.length + second.length);
+        assertThat(storageService.getResourceInfo(testUser1, "big/").getType()).isEqualTo(ResourceType.DIRECTORY);
+        assertThatThrownBy(() -> storageService.getUploadSession(testUser1, session.getId()))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void chunkedUpload_shouldRejectSmallNonLastPart() {
+        UploadSessionInfo session = storageService.initiateUpload(testUser1, "small.bin", null);
+        byte[] part = "tiny".getBytes();
+
+        storageService.uploadPart(testUser1, session.getId(), 1, new ByteArrayInputStream(part), part.length);
+        storageService.uploadPart(testUser1, session.getId(), 2, new ByteArrayInputStream(part), part.length);
+
+        assertThatThrownBy(() -> storageService.completeUpload(testUser1, session.getId()))
+                .isInstanceOf(InvalidUploadException.class);
+    }
+
+    @Test
+    void chunkedUpload_shouldBeIsolatedAndAbortable() {
+        UploadSessionInfo session = storageService.initiateUpload(testUser1, "aborted.bin", null);
+
+        assertThatThrownBy(() -> storageService.initiateUpload(testUser1, "aborted.bin", null))
+                .isInstanceOf(ResourceAlreadyExistsException.class);
+        assertThatThrownBy(() -> storageService.getUploadSession(testUser2, session.getId()))
+                .isInstanceOf(ResourceNotFoundException.class);
+
+        storageService.abortUpload(testUser1, session.getId());
+
+        assertThat(storageService.listUploadSessions(testUser1)).isEmpty();
+        assertThatThrownBy(() -> storageService.getResourceInfo(testUser1, "aborted.bin"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    @Test
+    void downloadFileRange_shouldReturnOnlyRequestedBytes() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("object", "range.txt", "text/plain", "0123456789".getBytes());
+        storageService.upload(testUser1, "", List.of(file));
+
+        ResourceMetadata metadata = storageService.getFileMetadata(testUser1, "range.txt");
+        assertThat(metadata.getSize()).isEqualTo(10L);
+        assertThat(metadata.getEtag()).isNotBlank().doesNotContain("\"");
+
+        try (InputStream is = storageService.downloadFileRange(testUser1, "range.txt", 3, 4)) {
+            assertThat(new String(is.readAllBytes())).isEqualTo("3456");
+        }
+    }
+
+    @Test
+    void presignedUpload_shouldBeRecordedAfterConfirm() throws Exception {
+        PresignedUpload upload = storageService.presignUpload(testUser1, "direct/file.txt");
+
+        assertThat(postPresigned(upload, "direct upload")).isEqualTo(204);
+
+        ResourceInfo info = storageService.confirmPresignedUpload(testUser1, "direct/file.txt");
+
+        assertThat(info.getSize()).isEqualTo(13L);
+        assertThat(storageService.listDirectory(testUser1, "direct/"))
+                .extracting(ResourceInfo::getName)
+                .containsExactly("file.txt");
+        assertThatThrownBy(() -> storageService.presignUpload(testUser1, "direct/file.txt"))
+                .isInstanceOf(ResourceAlreadyExistsException.class);
+        assertThat(storageService.confirmPresignedUpload(testUser1, "direct/file.txt").getSize()).isEqualTo(13L);
+        assertThat(storageService.getUsage(testUser1).getBytesUsed()).isEqualTo(13);
+
+        // The URL stays valid after the confirmation; new content through it is charged when confirmed
+        assertThat(postPresigned(upload, "direct upload, again")).isEqualTo(204);
+
+        assertThat(storageService.confirmPresignedUpload(testUser1, "direct/file.txt").getSize()).isEqualTo(20L);
+        assertThat(storageService.getFileMetadata(testUser1, "direct/file.txt").getSize()).isEqualTo(20L);
+        assertThat(storageService.getUsage(testUser1).getBytesUsed()).isEqualTo(20);
+    }
+
+    @Test
+    void presignedUpload_shouldBeLimitedToTheRemainingQuota() throws Exception {
+        StorageUsage quota = new StorageUsage();
+        quota.setUserId(testUser1.getId());
+        quota.setQuotaBytes(10L);
+        storageUsageRepository.save(quota);
+        storageService.upload(testUser1, "", List.of(new MockMultipartFile("object", "a.txt", "text/plain", "1234".getBytes())));
+
+        PresignedUpload upload = storageService.presignUpload(testUser1, "direct/big.txt");
+
+        assertThat(upload.getMaxSize()).isEqualTo(6L);
+        assertThat(postPresigned(upload, "1234567")).isEqualTo(400);
+        assertThatThrownBy(() -> storageService.confirmPresignedUpload(testUser1, "direct/big.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThat(postPresigned(upload, "123456")).isEqualTo(204);
+        assertThat(storageService.confirmPresignedUpload(testUser1, "direct/big.txt").getSize()).isEqualTo(6L);
+    }
+
+    @Test
+    void presignDownload_shouldRequireExistingOwnFile() {
+        MockMultipartFile file = new MockMultipartFile("object", "own.txt", "text/plain", "mine".getBytes());
+        storageService.upload(testUser1, "", List.of(file));
+
+        assertThat(storageService.presignDownload(testUser1, "own.txt"))
+                .contains("user-" + testUser1.getId() + "-files/own.txt");
+        assertThatThrownBy(() -> storageService.presignDownload(testUser2, "own.txt"))
+                .isInstanceOf(ResourceNotFoundException.class);
+    }
 }